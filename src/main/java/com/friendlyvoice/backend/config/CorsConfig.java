@@ -22,6 +22,8 @@ public class CorsConfig {
         config.setAllowedOrigins(Arrays.asList(allowedOrigins.split(",")));
         config.addAllowedHeader("*");
         config.addAllowedMethod("*");
+        // Cursor de la búsqueda sin paginación explícita
+        config.addExposedHeader("X-Next-Cursor");
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
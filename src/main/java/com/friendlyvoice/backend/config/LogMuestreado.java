@@ -0,0 +1,29 @@
+package com.friendlyvoice.backend.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Muestreo para eventos de log de alta frecuencia: solo uno de cada N llega al appender
+// Sin bloqueos: un contador atómico por evento muestreado
+public final class LogMuestreado {
+
+    private final long cadaN;
+    private final AtomicLong contador = new AtomicLong();
+
+    public LogMuestreado(long cadaN) {
+        if (cadaN <= 0) {
+            throw new IllegalArgumentException("cadaN debe ser mayor que 0");
+        }
+        this.cadaN = cadaN;
+    }
+
+    // true para el primer evento y luego uno de cada N
+    public boolean registrar() {
+        return contador.getAndIncrement() % cadaN == 0;
+    }
+
+    // Eventos descartados desde el último registrado (aproximado bajo concurrencia)
+    public long omitidos() {
+        long total = contador.get();
+        return total == 0 ? 0 : (total - 1) % cadaN;
+    }
+}
@@ -1,6 +1,17 @@
 package com.friendlyvoice.backend.controlador;
 
+import com.friendlyvoice.backend.servicio.CacheUsuarios;
+import com.friendlyvoice.backend.servicio.CanalMensajes;
+import com.friendlyvoice.backend.servicio.CuentasBloqueadas;
+import com.friendlyvoice.backend.servicio.FiltroEmails;
+import com.friendlyvoice.backend.servicio.GrafoSocial;
+import com.friendlyvoice.backend.servicio.IndiceBusquedaUsuarios;
+import com.friendlyvoice.backend.servicio.IndiceIntereses;
+import com.friendlyvoice.backend.servicio.LimitadorIntentosLogin;
+import com.friendlyvoice.backend.servicio.ListenerUsuarios;
+import com.friendlyvoice.backend.servicio.PlanificadorConsultas;
 import com.google.firebase.FirebaseApp;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,6 +24,36 @@ import java.util.Map;
 @RequestMapping("/api/diagnostico")
 public class DiagnosticoControlador {
 
+    @Autowired
+    private CacheUsuarios cacheUsuarios;
+
+    @Autowired
+    private IndiceBusquedaUsuarios indiceBusqueda;
+
+    @Autowired
+    private LimitadorIntentosLogin limitadorIntentos;
+
+    @Autowired
+    private CuentasBloqueadas cuentasBloqueadas;
+
+    @Autowired
+    private FiltroEmails filtroEmails;
+
+    @Autowired
+    private IndiceIntereses indiceIntereses;
+
+    @Autowired
+    private ListenerUsuarios listenerUsuarios;
+
+    @Autowired
+    private GrafoSocial grafoSocial;
+
+    @Autowired
+    private CanalMensajes canalMensajes;
+
+    @Autowired
+    private PlanificadorConsultas planificadorConsultas;
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> health = new HashMap<>();
@@ -26,7 +67,7 @@ public class DiagnosticoControlador {
     public ResponseEntity<Map<String, String>> root() {
         Map<String, String> response = new HashMap<>();
         response.put("message", "Diagnóstico API disponible");
-        response.put("endpoints", "/health, /firebase");
+        response.put("endpoints", "/health, /firebase, /cache, /busqueda, /login, /bloqueados, /filtro-emails, /descubrir, /grafo");
         return ResponseEntity.ok(response);
     }
 
@@ -84,5 +125,59 @@ public class DiagnosticoControlador {
         
         return ResponseEntity.ok(diagnostico);
     }
-}
 
+    // Estadísticas de la cache de perfiles (aciertos, fallos, expulsiones)
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> estadisticasCache() {
+        return ResponseEntity.ok(cacheUsuarios.estadisticas());
+    }
+
+    @GetMapping("/busqueda")
+    public ResponseEntity<Map<String, Object>> estadisticasBusqueda() {
+        return ResponseEntity.ok(indiceBusqueda.estadisticas());
+    }
+
+    @GetMapping("/login")
+    public ResponseEntity<Map<String, Object>> estadisticasLogin() {
+        return ResponseEntity.ok(limitadorIntentos.estadisticas());
+    }
+
+    @GetMapping("/bloqueados")
+    public ResponseEntity<Map<String, Object>> estadisticasBloqueados() {
+        return ResponseEntity.ok(cuentasBloqueadas.estadisticas());
+    }
+
+    @GetMapping("/filtro-emails")
+    public ResponseEntity<Map<String, Object>> estadisticasFiltroEmails() {
+        return ResponseEntity.ok(filtroEmails.estadisticas());
+    }
+
+    @GetMapping("/descubrir")
+    public ResponseEntity<Map<String, Object>> estadisticasDescubrir() {
+        return ResponseEntity.ok(indiceIntereses.estadisticas());
+    }
+
+    // Listener de users compartido por los índices de búsqueda y de intereses
+    @GetMapping("/listener-usuarios")
+    public ResponseEntity<Map<String, Object>> estadisticasListenerUsuarios() {
+        return ResponseEntity.ok(listenerUsuarios.estadisticas());
+    }
+
+    // Tamaño del grafo social en memoria (usuarios, aristas, bytes estimados)
+    @GetMapping("/grafo")
+    public ResponseEntity<Map<String, Object>> estadisticasGrafo() {
+        return ResponseEntity.ok(grafoSocial.estadisticas());
+    }
+
+    // Conexiones en tiempo real abiertas, colas pendientes y desbordamientos
+    @GetMapping("/tiempo-real")
+    public ResponseEntity<Map<String, Object>> estadisticasTiempoReal() {
+        return ResponseEntity.ok(canalMensajes.estadisticas());
+    }
+
+    // Índices de Firestore por forma de consulta (disponible, falta o sin comprobar)
+    @GetMapping("/indices")
+    public ResponseEntity<Map<String, Object>> estadisticasIndices() {
+        return ResponseEntity.ok(planificadorConsultas.estadisticas());
+    }
+}
@@ -0,0 +1,42 @@
+package com.friendlyvoice.backend.controlador;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+// Peticiones condicionales (ETag / If-None-Match) a partir de versiones de Firestore
+final class Etags {
+
+    private Etags() {
+    }
+
+    // ETag fuerte: la versión deriva de updateTime, que cambia con cada escritura
+    static String etag(String version) {
+        return "\"" + version + "\"";
+    }
+
+    // If-None-Match puede traer varias etiquetas separadas por comas o "*"
+    // En GET la comparación es débil: W/"x" coincide con "x"
+    static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidata : ifNoneMatch.split(",")) {
+            String valor = candidata.trim();
+            if (valor.equals("*")) {
+                return true;
+            }
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 304 sin cuerpo: no se serializa nada
+    static ResponseEntity<?> noModificado(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+}
@@ -0,0 +1,125 @@
+package com.friendlyvoice.backend.controlador;
+
+import com.friendlyvoice.backend.servicio.IndiceEmails;
+import com.friendlyvoice.backend.servicio.MigracionServicio;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/mantenimiento")
+public class MantenimientoControlador {
+
+    @Autowired
+    private IndiceEmails indiceEmails;
+
+    @Autowired
+    private MigracionServicio migracionServicio;
+
+    // Backfill del índice email -> userId para usuarios existentes (solo admin)
+    @PostMapping("/indice-emails/backfill")
+    public ResponseEntity<?> backfillIndiceEmails() {
+        try {
+            Map<String, Object> resultado = indiceEmails.backfill();
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Verificar consistencia entre users.email y el índice (solo admin)
+    @GetMapping("/indice-emails/verificar")
+    public ResponseEntity<?> verificarIndiceEmails() {
+        try {
+            Map<String, Object> resultado = indiceEmails.verificarConsistencia();
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Backfill de campos por defecto en users (loginAttempts, isBlocked, onboardingComplete)
+    // Se ejecuta en segundo plano; el progreso se consulta con GET /usuarios/backfill
+    @PostMapping("/usuarios/backfill")
+    public ResponseEntity<?> iniciarBackfillUsuarios(
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            @RequestParam(defaultValue = "true") boolean reanudar) {
+        try {
+            Map<String, Object> resultado = migracionServicio.iniciarBackfillEsquema(dryRun, reanudar);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(resultado);
+        } catch (IllegalStateException e) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Progreso del backfill de users
+    @GetMapping("/usuarios/backfill")
+    public ResponseEntity<?> progresoBackfillUsuarios() {
+        try {
+            return ResponseEntity.ok(migracionServicio.obtenerProgresoBackfill());
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Migrar arrays followers/following a aristas en subcolecciones (solo admin)
+    // Se ejecuta en segundo plano; el progreso se consulta con GET /grafo-social/migrar
+    @PostMapping("/grafo-social/migrar")
+    public ResponseEntity<?> migrarGrafoSocial(
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            @RequestParam(defaultValue = "true") boolean reanudar) {
+        try {
+            Map<String, Object> resultado = migracionServicio.iniciarMigracionGrafoSocial(dryRun, reanudar);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(resultado);
+        } catch (IllegalStateException e) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Progreso de la migración del grafo social
+    @GetMapping("/grafo-social/migrar")
+    public ResponseEntity<?> progresoMigracionGrafoSocial() {
+        try {
+            return ResponseEntity.ok(migracionServicio.obtenerProgresoMigracionGrafoSocial());
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Crear los resúmenes chats/{chatId} a partir de los mensajes existentes (solo admin)
+    // Migra también isRead a cursores de lectura por participante
+    @PostMapping("/chats/backfill")
+    public ResponseEntity<?> backfillResumenesChat(@RequestParam(defaultValue = "false") boolean dryRun) {
+        try {
+            Map<String, Object> resultado = migracionServicio.backfillResumenesChat(dryRun);
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+}
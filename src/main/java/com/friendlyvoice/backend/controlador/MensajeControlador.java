@@ -1,15 +1,23 @@
 package com.friendlyvoice.backend.controlador;
 
+import com.friendlyvoice.backend.dto.ConversacionDTO;
 import com.friendlyvoice.backend.dto.MensajeDTO;
+import com.friendlyvoice.backend.dto.PaginaDTO;
 import com.friendlyvoice.backend.modelo.Mensaje;
+import com.friendlyvoice.backend.servicio.CanalMensajes;
+import com.friendlyvoice.backend.servicio.Futuros;
 import com.friendlyvoice.backend.servicio.MensajeServicio;
+import com.friendlyvoice.backend.servicio.Versionado;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/mensajes")
@@ -18,6 +26,9 @@ public class MensajeControlador {
     @Autowired
     private MensajeServicio mensajeServicio;
 
+    @Autowired
+    private CanalMensajes canalMensajes;
+
     // Enviar mensaje directo
     @PostMapping("/enviar/{senderId}")
     public ResponseEntity<?> enviarMensaje(
@@ -40,13 +51,40 @@ public class MensajeControlador {
     }
 
     // Obtener mensajes de un chat
+    // Con limit/before/after devuelve una página { items, beforeCursor, afterCursor } en orden cronológico:
+    // sin cursores los más recientes, con before los anteriores y con after los posteriores
+    // ETag = mayor updateTime de los mensajes + número de mensajes; con If-None-Match se responde 304
+    // sin consultar Firestore mientras el sello de versión del chat (o de la página) siga vigente
     @GetMapping("/chat/{userId}/{chatPartnerId}")
     public ResponseEntity<?> obtenerMensajesDeChat(
             @PathVariable String userId,
-            @PathVariable String chatPartnerId) {
+            @PathVariable String chatPartnerId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            List<Mensaje> mensajes = mensajeServicio.obtenerMensajesDeChat(userId, chatPartnerId);
-            return ResponseEntity.ok(mensajes);
+            boolean paginado = limit != null || before != null || after != null;
+            if (ifNoneMatch != null) {
+                String version = paginado
+                        ? mensajeServicio.versionPaginaEnCache(userId, chatPartnerId, limit, before, after)
+                        : mensajeServicio.versionChatEnCache(userId, chatPartnerId);
+                if (version != null && Etags.coincide(ifNoneMatch, Etags.etag(version))) {
+                    return Etags.noModificado(Etags.etag(version));
+                }
+            }
+            Versionado<?> mensajes = paginado
+                    ? mensajeServicio.obtenerPaginaDeChatVersionado(userId, chatPartnerId, limit, before, after)
+                    : mensajeServicio.obtenerMensajesDeChatVersionado(userId, chatPartnerId);
+            String etag = Etags.etag(mensajes.getVersion());
+            if (Etags.coincide(ifNoneMatch, etag)) {
+                return Etags.noModificado(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(mensajes.getValor());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -54,6 +92,21 @@ public class MensajeControlador {
         }
     }
 
+    // Marcar como leída toda la conversación (avanza el cursor de lectura de userId en una escritura)
+    @PostMapping("/chat/{userId}/{chatPartnerId}/leido")
+    public ResponseEntity<?> marcarChatComoLeido(
+            @PathVariable String userId,
+            @PathVariable String chatPartnerId) {
+        try {
+            int marcados = mensajeServicio.marcarChatComoLeido(userId, chatPartnerId);
+            return ResponseEntity.ok(Map.of("message", "Chat marcado como leído", "markedCount", marcados));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // Marcar mensaje como leído
     @PutMapping("/{messageId}/leido")
     public ResponseEntity<?> marcarComoLeido(@PathVariable String messageId) {
@@ -69,10 +122,20 @@ public class MensajeControlador {
 
     // Obtener mensajes no leídos
     @GetMapping("/no-leidos/{userId}")
-    public ResponseEntity<?> obtenerMensajesNoLeidos(@PathVariable String userId) {
+    public CompletableFuture<ResponseEntity<?>> obtenerMensajesNoLeidos(@PathVariable String userId) {
+        return mensajeServicio.obtenerMensajesNoLeidosAsync(userId)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity
+                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("error", String.valueOf(Futuros.causa(e).getMessage()))));
+    }
+
+    // Número de mensajes no leídos (badge), sin descargar los mensajes
+    @GetMapping("/no-leidos/{userId}/count")
+    public ResponseEntity<?> contarMensajesNoLeidos(@PathVariable String userId) {
         try {
-            List<Mensaje> mensajes = mensajeServicio.obtenerMensajesNoLeidos(userId);
-            return ResponseEntity.ok(mensajes);
+            long total = mensajeServicio.contarNoLeidos(userId);
+            return ResponseEntity.ok(Map.of("userId", userId, "unreadCount", total));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -80,18 +143,66 @@ public class MensajeControlador {
         }
     }
 
-    // Obtener resumen de un chat (último mensaje y contador sin leer) - OPTIMIZADO
-    @GetMapping("/resumen/{userId}/{chatPartnerId}")
-    public ResponseEntity<?> obtenerResumenChat(
-            @PathVariable String userId,
-            @PathVariable String chatPartnerId) {
+    // Reconciliar el contador de no leídos con una agregación count() sobre los mensajes
+    @PostMapping("/no-leidos/{userId}/count/reconciliar")
+    public ResponseEntity<?> reconciliarMensajesNoLeidos(@PathVariable String userId) {
         try {
-            Map<String, Object> resumen = mensajeServicio.obtenerResumenChat(userId, chatPartnerId);
-            return ResponseEntity.ok(resumen);
+            long total = mensajeServicio.reconciliarNoLeidos(userId);
+            return ResponseEntity.ok(Map.of("userId", userId, "unreadCount", total));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", e.getMessage()));
         }
     }
+
+    // Canal en tiempo real (Server-Sent Events) con los mensajes nuevos del usuario
+    // Eventos: "conectado", "mensaje" (id = ID del mensaje) y "resync" si la conexión se quedó atrás;
+    // tras reconectar o recibir "resync" el cliente recarga por REST lo que falte
+    @GetMapping(value = "/stream/{userId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> abrirCanal(@PathVariable String userId) {
+        try {
+            return ResponseEntity.ok(canalMensajes.abrir(userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (IllegalStateException e) {
+            // Límite de conexiones alcanzado: el cliente vuelve a consultar por REST
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    // Bandeja de entrada: conversaciones del usuario, la más reciente primero (paginado)
+    @GetMapping("/inbox/{userId}")
+    public CompletableFuture<ResponseEntity<?>> obtenerBandeja(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter) {
+        CompletableFuture<PaginaDTO<ConversacionDTO>> pagina;
+        try {
+            pagina = mensajeServicio.obtenerBandejaAsync(userId, limit, startAfter);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage())));
+        }
+        return pagina
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity
+                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("error", String.valueOf(Futuros.causa(e).getMessage()))));
+    }
+
+    // Obtener resumen de un chat (último mensaje y contador sin leer) - OPTIMIZADO
+    // Respuesta asíncrona (igual que inbox y no-leidos): el hilo de la petición se libera
+    // mientras Firestore responde
+    @GetMapping("/resumen/{userId}/{chatPartnerId}")
+    public CompletableFuture<ResponseEntity<?>> obtenerResumenChat(
+            @PathVariable String userId,
+            @PathVariable String chatPartnerId) {
+        return mensajeServicio.obtenerResumenChatAsync(userId, chatPartnerId)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity
+                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("error", String.valueOf(Futuros.causa(e).getMessage()))));
+    }
 }
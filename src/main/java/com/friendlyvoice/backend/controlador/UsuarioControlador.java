@@ -1,13 +1,26 @@
 package com.friendlyvoice.backend.controlador;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.friendlyvoice.backend.dto.ActualizarPerfilDTO;
+import com.friendlyvoice.backend.dto.CuentaBloqueadaDTO;
+import com.friendlyvoice.backend.dto.PaginaDTO;
 import com.friendlyvoice.backend.dto.UsuarioDTO;
+import com.friendlyvoice.backend.dto.UsuarioSugeridoDTO;
+import com.friendlyvoice.backend.dto.VistaUsuario;
 import com.friendlyvoice.backend.servicio.UsuarioServicio;
+import com.friendlyvoice.backend.servicio.Versionado;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 
@@ -15,9 +28,17 @@ import java.util.Map;
 @RequestMapping("/api/usuarios")
 public class UsuarioControlador {
 
+    private static final Logger log = LoggerFactory.getLogger(UsuarioControlador.class);
+
+    // Cursor de la siguiente página en las respuestas que devuelven una lista acotada
+    private static final String CABECERA_SIGUIENTE_CURSOR = "X-Next-Cursor";
+
     @Autowired
     private UsuarioServicio usuarioServicio;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // Crear usuario (upsert)
     @PostMapping("/{userId}")
     public ResponseEntity<?> crearUsuario(
@@ -34,11 +55,25 @@ public class UsuarioControlador {
     }
 
     // Obtener todos los usuarios
+    // Con limit/startAfter devuelve una página { items, nextCursor }; sin parámetros, la lista completa
+    // view=summary devuelve solo id, name y avatarUrl (view=full por defecto)
     @GetMapping
-    public ResponseEntity<?> obtenerTodosLosUsuarios() {
+    public ResponseEntity<?> obtenerTodosLosUsuarios(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter,
+            @RequestParam(required = false) String view) {
         try {
-            List<UsuarioDTO> usuarios = usuarioServicio.obtenerTodosLosUsuarios();
+            VistaUsuario vista = VistaUsuario.desde(view);
+            if (limit != null || startAfter != null) {
+                PaginaDTO<?> pagina = usuarioServicio.obtenerUsuariosPaginados(limit, startAfter, vista);
+                return ResponseEntity.ok(pagina);
+            }
+            List<?> usuarios = usuarioServicio.obtenerTodosLosUsuarios(vista);
             return ResponseEntity.ok(usuarios);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -46,6 +81,44 @@ public class UsuarioControlador {
         }
     }
 
+    // Obtener todos los usuarios en streaming NDJSON (un usuario por línea)
+    @GetMapping(params = "formato=ndjson")
+    public ResponseEntity<StreamingResponseBody> transmitirUsuarios(@RequestParam(required = false) String view) {
+        final VistaUsuario vista;
+        try {
+            vista = VistaUsuario.desde(view);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = Map.of("error", e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(salida -> objectMapper.writeValue(salida, error));
+        }
+        StreamingResponseBody cuerpo = salida -> {
+            try {
+                usuarioServicio.recorrerUsuarios(vista, usuario -> {
+                    try {
+                        salida.write(objectMapper.writeValueAsBytes(usuario));
+                        salida.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                salida.flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Streaming de usuarios interrumpido", e);
+            } catch (Exception e) {
+                throw new IOException("Error en streaming de usuarios: " + e.getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     // Obtener usuario por email
     @GetMapping("/email/{email}")
     public ResponseEntity<?> obtenerUsuarioPorEmail(@PathVariable String email) {
@@ -76,8 +149,10 @@ public class UsuarioControlador {
     @GetMapping("/email/{email}/bloqueada")
     public ResponseEntity<?> verificarBloqueoPorEmail(@PathVariable String email) {
         try {
-            UsuarioDTO usuario = usuarioServicio.obtenerUsuarioPorEmail(email);
-            boolean bloqueada = usuario.getIsBlocked() != null && usuario.getIsBlocked();
+            Boolean bloqueada = usuarioServicio.estaBloqueadaPorEmail(email);
+            if (bloqueada == null) {
+                return ResponseEntity.ok(Map.of("isBlocked", false, "message", "Usuario no encontrado"));
+            }
             return ResponseEntity.ok(Map.of("isBlocked", bloqueada, "message", bloqueada 
                     ? "Tu cuenta ha sido bloqueada por demasiados intentos fallidos. Por favor, reporta este bloqueo a juandi23154@gmail.com para recibir asistencia."
                     : "Cuenta activa"));
@@ -88,11 +163,28 @@ public class UsuarioControlador {
     }
 
     // Obtener usuario por ID
+    // Con If-None-Match se responde 304 si el perfil no cambió; si la versión está en cache
+    // no se lee Firestore ni se serializa el perfil
     @GetMapping("/{userId}")
-    public ResponseEntity<?> obtenerUsuarioPorId(@PathVariable String userId) {
+    public ResponseEntity<?> obtenerUsuarioPorId(
+            @PathVariable String userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            UsuarioDTO usuario = usuarioServicio.obtenerUsuarioPorId(userId);
-            return ResponseEntity.ok(usuario);
+            if (ifNoneMatch != null) {
+                String version = usuarioServicio.versionUsuarioEnCache(userId);
+                if (version != null && Etags.coincide(ifNoneMatch, Etags.etag(version))) {
+                    return Etags.noModificado(Etags.etag(version));
+                }
+            }
+            Versionado<UsuarioDTO> usuario = usuarioServicio.obtenerUsuarioVersionado(userId);
+            if (usuario.getVersion() == null) {
+                return ResponseEntity.ok(usuario.getValor());
+            }
+            String etag = Etags.etag(usuario.getVersion());
+            if (Etags.coincide(ifNoneMatch, etag)) {
+                return Etags.noModificado(etag);
+            }
+            return ResponseEntity.ok().eTag(etag).body(usuario.getValor());
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
@@ -102,10 +194,28 @@ public class UsuarioControlador {
 
     // Buscar usuarios por nombre
     @GetMapping("/buscar/{nombre}")
-    public ResponseEntity<?> buscarUsuariosPorNombre(@PathVariable String nombre) {
+    public ResponseEntity<?> buscarUsuariosPorNombre(
+            @PathVariable String nombre,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter,
+            @RequestParam(required = false) String view) {
         try {
-            List<UsuarioDTO> usuarios = usuarioServicio.buscarUsuariosPorNombre(nombre);
-            return ResponseEntity.ok(usuarios);
+            VistaUsuario vista = VistaUsuario.desde(view);
+            // Con limit o startAfter se devuelve una página { items, nextCursor } ordenada por relevancia
+            if (limit != null || startAfter != null) {
+                return ResponseEntity.ok(usuarioServicio.buscarUsuariosPaginados(nombre, limit, startAfter, vista));
+            }
+            // Sin ellos, la lista de siempre (acotada); si hay más resultados, el cursor va en X-Next-Cursor
+            PaginaDTO<?> pagina = usuarioServicio.buscarUsuariosPorNombre(nombre, vista);
+            ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+            if (pagina.getNextCursor() != null) {
+                respuesta.header(CABECERA_SIGUIENTE_CURSOR, pagina.getNextCursor());
+            }
+            return respuesta.body(pagina.getItems());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -158,12 +268,102 @@ public class UsuarioControlador {
         }
     }
 
+    // Listar seguidores (paginado)
+    @GetMapping("/{userId}/seguidores")
+    public ResponseEntity<?> obtenerSeguidores(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter,
+            @RequestParam(required = false) String view) {
+        try {
+            PaginaDTO<?> pagina = usuarioServicio.obtenerSeguidores(userId, limit, startAfter, VistaUsuario.desde(view));
+            return ResponseEntity.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Listar usuarios seguidos (paginado)
+    @GetMapping("/{userId}/siguiendo")
+    public ResponseEntity<?> obtenerSiguiendo(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter,
+            @RequestParam(required = false) String view) {
+        try {
+            PaginaDTO<?> pagina = usuarioServicio.obtenerSiguiendo(userId, limit, startAfter, VistaUsuario.desde(view));
+            return ResponseEntity.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Verificar si un usuario sigue a otro
+    @GetMapping("/{userId}/seguir/{otroUserId}")
+    public ResponseEntity<?> verificarSeguimiento(
+            @PathVariable String userId,
+            @PathVariable String otroUserId) {
+        try {
+            boolean sigue = usuarioServicio.sigueA(userId, otroUserId);
+            return ResponseEntity.ok(Map.of("isFollowing", sigue));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // Obtener seguidores mutuos
+    // Con limit/startAfter devuelve una página { items, nextCursor }
     @GetMapping("/{userId}/mutuos")
-    public ResponseEntity<?> obtenerSeguidoresMutuos(@PathVariable String userId) {
+    public ResponseEntity<?> obtenerSeguidoresMutuos(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter,
+            @RequestParam(required = false) String view) {
         try {
-            List<UsuarioDTO> mutuos = usuarioServicio.obtenerSeguidoresMutuos(userId);
+            VistaUsuario vista = VistaUsuario.desde(view);
+            if (limit != null || startAfter != null) {
+                PaginaDTO<?> pagina = usuarioServicio.obtenerSeguidoresMutuosPaginados(userId, limit, startAfter, vista);
+                return ResponseEntity.ok(pagina);
+            }
+            List<?> mutuos = usuarioServicio.obtenerSeguidoresMutuos(userId, vista);
             return ResponseEntity.ok(mutuos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Descubrir usuarios con intereses y hobbies en común (ordenados por afinidad)
+    @GetMapping("/{userId}/descubrir")
+    public ResponseEntity<?> descubrirUsuarios(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            List<UsuarioSugeridoDTO> sugeridos = usuarioServicio.descubrirUsuarios(userId, limit);
+            return ResponseEntity.ok(sugeridos);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -186,6 +386,25 @@ public class UsuarioControlador {
         }
     }
 
+    // Listar cuentas bloqueadas, paginado por ID (solo admin)
+    @GetMapping("/bloqueados")
+    public ResponseEntity<?> obtenerCuentasBloqueadas(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String startAfter) {
+        try {
+            PaginaDTO<CuentaBloqueadaDTO> pagina = usuarioServicio.obtenerCuentasBloqueadas(limit, startAfter);
+            return ResponseEntity.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // Desbloquear cuenta de usuario (solo admin)
     @PostMapping("/{userId}/desbloquear")
     public ResponseEntity<?> desbloquearCuenta(@PathVariable String userId) {
@@ -215,47 +434,18 @@ public class UsuarioControlador {
     // Incrementar intentos fallidos por email
     @PostMapping("/email/{email}/incrementar-intentos")
     public ResponseEntity<?> incrementarIntentosPorEmail(@PathVariable String email) {
-        System.out.println("╔══════════════════════════════════════════════════════════════╗");
-        System.out.println("║ === ENDPOINT: Incrementar Intentos por Email ===            ║");
-        System.out.println("╚══════════════════════════════════════════════════════════════╝");
-        System.out.println("Email recibido: " + email);
-        
         try {
-            System.out.println("Llamando a usuarioServicio.incrementarIntentosLoginPorEmail(" + email + ")...");
             usuarioServicio.incrementarIntentosLoginPorEmail(email);
-            System.out.println("✅ Servicio completado exitosamente - Intentos incrementados");
             return ResponseEntity.ok(Map.of("message", "Intentos incrementados", "success", true));
         } catch (RuntimeException e) {
             // CRÍTICO: Capturar RuntimeException explícitamente (puede venir de la transacción)
-            System.err.println("╔══════════════════════════════════════════════════════════════╗");
-            System.err.println("║ ❌ RUNTIME EXCEPTION en endpoint incrementarIntentosPorEmail  ║");
-            System.err.println("╠══════════════════════════════════════════════════════════════╣");
-            System.err.println("║ Email: " + email);
-            System.err.println("║ Tipo: " + e.getClass().getName());
-            System.err.println("║ Mensaje: " + e.getMessage());
-            if (e.getCause() != null) {
-                System.err.println("║ Causa: " + e.getCause().getClass().getName());
-                System.err.println("║ Mensaje de causa: " + e.getCause().getMessage());
-            }
-            System.err.println("╚══════════════════════════════════════════════════════════════╝");
-            e.printStackTrace();
+            log.error("Error al incrementar intentos para {}", email, e);
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Error al incrementar intentos: " + e.getMessage(), "success", false));
         } catch (Exception e) {
             // Capturar cualquier otra excepción (ExecutionException, InterruptedException, etc.)
-            System.err.println("╔══════════════════════════════════════════════════════════════╗");
-            System.err.println("║ ❌ EXCEPTION en endpoint incrementarIntentosPorEmail          ║");
-            System.err.println("╠══════════════════════════════════════════════════════════════╣");
-            System.err.println("║ Email: " + email);
-            System.err.println("║ Tipo: " + e.getClass().getName());
-            System.err.println("║ Mensaje: " + e.getMessage());
-            if (e.getCause() != null) {
-                System.err.println("║ Causa: " + e.getCause().getClass().getName());
-                System.err.println("║ Mensaje de causa: " + e.getCause().getMessage());
-            }
-            System.err.println("╚══════════════════════════════════════════════════════════════╝");
-            e.printStackTrace();
+            log.warn("No se pudieron incrementar los intentos para {}", email, e);
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", e.getMessage(), "success", false));
@@ -0,0 +1,17 @@
+package com.friendlyvoice.backend.dto;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Conversación de la bandeja de entrada (desde el resumen chats/{chatId})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversacionDTO {
+    private String chatId;
+    private String partnerId;
+    private Mensaje lastMessage;
+    private int unreadCount;
+}
@@ -0,0 +1,15 @@
+package com.friendlyvoice.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Cuenta bloqueada (listado de administración)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CuentaBloqueadaDTO {
+    private String id;
+    private String email;
+    private String name;
+}
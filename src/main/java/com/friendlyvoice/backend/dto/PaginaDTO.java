@@ -0,0 +1,15 @@
+package com.friendlyvoice.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaDTO<T> {
+    private List<T> items;
+    private String nextCursor; // Cursor opaco para la siguiente página (null si no hay más)
+}
@@ -0,0 +1,18 @@
+package com.friendlyvoice.backend.dto;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Página del historial de un chat, en orden cronológico
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaMensajesDTO {
+    private List<Mensaje> items;
+    private String beforeCursor; // Cursor opaco para cargar mensajes anteriores (null si no hay más)
+    private String afterCursor;  // Cursor opaco para pedir mensajes posteriores (nuevos)
+}
@@ -15,8 +15,8 @@ public class UsuarioDTO {
     private String name;
     private String avatarUrl;
     private String bio;
-    private List<String> followers;
-    private List<String> following;
+    private Integer followerCount; // Seguidores (users/{id}/followers)
+    private Integer followingCount; // Seguidos (users/{id}/following)
     private List<String> interests;
     private List<String> hobbies;
     private String bioSoundUrl;
@@ -0,0 +1,15 @@
+package com.friendlyvoice.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Vista resumida de usuario para listas (view=summary)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsuarioResumenDTO {
+    private String id;
+    private String name;
+    private String avatarUrl;
+}
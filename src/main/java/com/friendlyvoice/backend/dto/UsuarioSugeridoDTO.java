@@ -0,0 +1,20 @@
+package com.friendlyvoice.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Usuario sugerido por afinidad de intereses y hobbies (/descubrir)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsuarioSugeridoDTO {
+    private String id;
+    private String name;
+    private String avatarUrl;
+    private double score;
+    private List<String> sharedInterests;
+    private List<String> sharedHobbies;
+}
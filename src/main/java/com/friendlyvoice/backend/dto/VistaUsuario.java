@@ -0,0 +1,19 @@
+package com.friendlyvoice.backend.dto;
+
+// Vista solicitada en los endpoints de listas de usuarios (?view=summary|full)
+public enum VistaUsuario {
+    FULL,
+    SUMMARY;
+
+    public static VistaUsuario desde(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return FULL;
+        }
+        for (VistaUsuario vista : values()) {
+            if (vista.name().equalsIgnoreCase(valor.trim())) {
+                return vista;
+            }
+        }
+        throw new IllegalArgumentException("Vista inválida: " + valor + " (use summary o full)");
+    }
+}
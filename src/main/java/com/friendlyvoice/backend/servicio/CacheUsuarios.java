@@ -0,0 +1,258 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.UsuarioDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cache en memoria de perfiles de usuario (LRU acotado con TTL por entrada)
+// Los campos de seguridad (isBlocked, loginAttempts) tienen un TTL propio más corto:
+// las verificaciones de bloqueo y el perfil individual (con su versión) solo aceptan entradas
+// cuya parte de seguridad siga vigente; los listados hidratados aceptan el TTL general
+@Component
+public class CacheUsuarios {
+
+    @Value("${usuarios.cache.max-entradas:10000}")
+    private int maxEntradas;
+
+    @Value("${usuarios.cache.ttl-segundos:300}")
+    private long ttlSegundos;
+
+    @Value("${usuarios.cache.ttl-seguridad-segundos:5}")
+    private long ttlSeguridadSegundos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // accessOrder = true: el orden de iteración es de menos a más recientemente usado
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+            if (size() > maxEntradas) {
+                expulsiones.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+    private final AtomicLong expiraciones = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    private static class Entrada {
+        final UsuarioDTO usuario;
+        // updateTime del documento leído (null si no se conoce)
+        final String version;
+        final long expiraEn;
+        final long expiraSeguridadEn;
+
+        Entrada(UsuarioDTO usuario, String version, long expiraEn, long expiraSeguridadEn) {
+            this.usuario = usuario;
+            this.version = version;
+            this.expiraEn = expiraEn;
+            this.expiraSeguridadEn = expiraSeguridadEn;
+        }
+    }
+
+    // Obtener perfil (acepta campos de seguridad dentro del TTL general)
+    public UsuarioDTO obtener(String userId) {
+        return obtener(userId, false);
+    }
+
+    // Obtener perfil solo si isBlocked/loginAttempts siguen dentro del TTL de seguridad
+    public UsuarioDTO obtenerVerificado(String userId) {
+        return obtener(userId, true);
+    }
+
+    // Perfil con la versión con la que se guardó (null si no está en cache)
+    // Como el perfil expone isBlocked/loginAttempts, solo se devuelve dentro del TTL de seguridad
+    public Versionado<UsuarioDTO> obtenerVersionado(String userId) {
+        lock.lock();
+        try {
+            Entrada entrada = vigente(userId, true);
+            return entrada == null ? null : new Versionado<>(copiar(entrada.usuario), entrada.version);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Solo la versión, sin copiar el perfil (peticiones condicionales If-None-Match)
+    // Mismo criterio que obtenerVersionado: un 304 también confirma isBlocked/loginAttempts
+    public String obtenerVersion(String userId) {
+        return version(userId, true);
+    }
+
+    // Versión aunque los campos de seguridad hayan caducado (para revalidarlos con una lectura ligera)
+    public String obtenerVersionSinVerificar(String userId) {
+        return version(userId, false);
+    }
+
+    private String version(String userId, boolean requiereSeguridad) {
+        lock.lock();
+        try {
+            Entrada entrada = vigente(userId, requiereSeguridad);
+            return entrada == null ? null : entrada.version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // El documento no ha cambiado desde que se guardó (mismo updateTime): isBlocked/loginAttempts
+    // vuelven a ser válidos otro TTL de seguridad. Si la entrada cambió entretanto, no se toca
+    public void renovarSeguridad(String userId, String version) {
+        if (version == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            Entrada entrada = entradas.get(userId);
+            if (entrada != null && version.equals(entrada.version)) {
+                entradas.put(userId, new Entrada(entrada.usuario, entrada.version, entrada.expiraEn,
+                        System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeguridadSegundos)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private UsuarioDTO obtener(String userId, boolean requiereSeguridad) {
+        lock.lock();
+        try {
+            Entrada entrada = vigente(userId, requiereSeguridad);
+            return entrada == null ? null : copiar(entrada.usuario);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Requiere el lock
+    private Entrada vigente(String userId, boolean requiereSeguridad) {
+        long ahora = System.nanoTime();
+        Entrada entrada = entradas.get(userId);
+        if (entrada == null) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        if (ahora - entrada.expiraEn >= 0) {
+            entradas.remove(userId);
+            expiraciones.incrementAndGet();
+            fallos.incrementAndGet();
+            return null;
+        }
+        if (requiereSeguridad && ahora - entrada.expiraSeguridadEn >= 0) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        aciertos.incrementAndGet();
+        return entrada;
+    }
+
+    // Guardar (o reemplazar) un perfil recién leído de Firestore
+    public void guardar(UsuarioDTO usuario) {
+        guardar(usuario, null);
+    }
+
+    public void guardar(UsuarioDTO usuario, String version) {
+        if (usuario == null || usuario.getId() == null || maxEntradas <= 0) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        Entrada entrada = new Entrada(
+                copiar(usuario),
+                version,
+                ahora + TimeUnit.SECONDS.toNanos(ttlSegundos),
+                ahora + TimeUnit.SECONDS.toNanos(ttlSeguridadSegundos));
+        lock.lock();
+        try {
+            Entrada actual = entradas.get(usuario.getId());
+            // Una lectura que llega tarde no pisa una versión más reciente del mismo documento
+            if (actual != null && Versionado.esAnterior(version, actual.version)) {
+                return;
+            }
+            entradas.put(usuario.getId(), entrada);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Invalidar perfiles tras cualquier escritura sobre ellos
+    public void invalidar(String... userIds) {
+        lock.lock();
+        try {
+            for (String userId : userIds) {
+                if (userId != null && entradas.remove(userId) != null) {
+                    invalidaciones.incrementAndGet();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Vaciar la cache (tras migraciones masivas)
+    public void invalidarTodo() {
+        lock.lock();
+        try {
+            invalidaciones.addAndGet(entradas.size());
+            entradas.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        int tamaño;
+        lock.lock();
+        try {
+            tamaño = entradas.size();
+        } finally {
+            lock.unlock();
+        }
+        long totalAciertos = aciertos.get();
+        long totalFallos = fallos.get();
+        long total = totalAciertos + totalFallos;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tamaño", tamaño);
+        stats.put("maxEntradas", maxEntradas);
+        stats.put("ttlSegundos", ttlSegundos);
+        stats.put("ttlSeguridadSegundos", ttlSeguridadSegundos);
+        stats.put("aciertos", totalAciertos);
+        stats.put("fallos", totalFallos);
+        stats.put("tasaAciertos", total == 0 ? 0.0 : (double) totalAciertos / total);
+        stats.put("expulsiones", expulsiones.get());
+        stats.put("expiraciones", expiraciones.get());
+        stats.put("invalidaciones", invalidaciones.get());
+        return stats;
+    }
+
+    // Copia defensiva: los llamadores modifican el DTO (p.ej. setIsBlocked)
+    private UsuarioDTO copiar(UsuarioDTO origen) {
+        UsuarioDTO copia = new UsuarioDTO();
+        copia.setId(origen.getId());
+        copia.setEmail(origen.getEmail());
+        copia.setName(origen.getName());
+        copia.setAvatarUrl(origen.getAvatarUrl());
+        copia.setBio(origen.getBio());
+        copia.setFollowerCount(origen.getFollowerCount());
+        copia.setFollowingCount(origen.getFollowingCount());
+        copia.setInterests(copiarLista(origen.getInterests()));
+        copia.setHobbies(copiarLista(origen.getHobbies()));
+        copia.setBioSoundUrl(origen.getBioSoundUrl());
+        copia.setOnboardingComplete(origen.getOnboardingComplete());
+        copia.setRole(origen.getRole());
+        copia.setIsBlocked(origen.getIsBlocked());
+        copia.setLoginAttempts(origen.getLoginAttempts());
+        return copia;
+    }
+
+    private List<String> copiarLista(List<String> lista) {
+        return lista != null ? new ArrayList<>(lista) : null;
+    }
+}
@@ -0,0 +1,327 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Entrega de mensajes en tiempo real por Server-Sent Events
+// Un único snapshot listener por destinatario con conexiones abiertas (messages con su recipientId
+// y createdAt posterior a la suscripción) alimenta todas sus conexiones, también los mensajes
+// enviados desde otras instancias. Cada conexión tiene una cola acotada que vacía un pool pequeño:
+// si un cliente no consume y la cola se llena, se descarta lo pendiente y se le envía "resync"
+// para que recargue por REST. Un heartbeat periódico mantiene viva la conexión a través de proxies
+@Component
+public class CanalMensajes {
+
+    private static final Logger log = LoggerFactory.getLogger(CanalMensajes.class);
+
+    private static final String COLLECTION_NAME = "messages";
+    private static final long REINTENTO_SEGUNDOS = 30;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${mensajes.tiempo-real.max-conexiones:10000}")
+    private int maxConexiones;
+
+    @Value("${mensajes.tiempo-real.max-conexiones-por-usuario:5}")
+    private int maxConexionesPorUsuario;
+
+    @Value("${mensajes.tiempo-real.tamano-cola:64}")
+    private int tamanoCola;
+
+    @Value("${mensajes.tiempo-real.heartbeat-segundos:25}")
+    private long heartbeatSegundos;
+
+    @Value("${mensajes.tiempo-real.timeout-minutos:30}")
+    private long timeoutMinutos;
+
+    @Value("${mensajes.tiempo-real.hilos-envio:4}")
+    private int hilosEnvio;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean hilosVirtuales;
+
+    // userId -> listener compartido y conexiones abiertas
+    private final Map<String, Suscripcion> suscripciones = new ConcurrentHashMap<>();
+    private final AtomicInteger conexiones = new AtomicInteger();
+    private final AtomicLong eventosEnviados = new AtomicLong();
+    private final AtomicLong desbordamientos = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+
+    // Listeners y heartbeat (un hilo) y envío a las conexiones (pool acotado, o un hilo virtual
+    // por vaciado con hilos virtuales: un cliente lento deja de ocupar uno de los pocos hilos del pool)
+    private ScheduledExecutorService ejecutor;
+    private Executor envio;
+
+    private final class Suscripcion {
+        final String userId;
+        final List<Conexion> conexiones = new CopyOnWriteArrayList<>();
+        // {createdAt, id} del último mensaje entregado; al reintentar el listener se continúa desde aquí
+        volatile String[] cursor;
+        volatile ListenerRegistration registro;
+
+        Suscripcion(String userId) {
+            this.userId = userId;
+            this.cursor = new String[]{ResumenesChat.marcaDeTiempo(Instant.now()), ""};
+        }
+    }
+
+    private final class Conexion {
+        final String userId;
+        final SseEmitter emisor;
+        final BlockingQueue<SseEmitter.SseEventBuilder> cola = new ArrayBlockingQueue<>(Math.max(2, tamanoCola));
+        final AtomicBoolean enviando = new AtomicBoolean();
+        volatile boolean cerrada = false;
+
+        Conexion(String userId, SseEmitter emisor) {
+            this.userId = userId;
+            this.emisor = emisor;
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        ejecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "canal-mensajes");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        if (hilosVirtuales && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor("canal-mensajes-envio-");
+            virtual.setVirtualThreads(true);
+            envio = virtual;
+        } else {
+            envio = crearPoolEnvio();
+        }
+        if (heartbeatSegundos > 0) {
+            ejecutor.scheduleAtFixedRate(this::enviarHeartbeat, heartbeatSegundos, heartbeatSegundos, TimeUnit.SECONDS);
+        }
+    }
+
+    private ExecutorService crearPoolEnvio() {
+        AtomicInteger numero = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, hilosEnvio), r -> {
+            Thread hilo = new Thread(r, "canal-mensajes-envio-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        for (Suscripcion suscripcion : suscripciones.values()) {
+            ListenerRegistration registro = suscripcion.registro;
+            if (registro != null) {
+                registro.remove();
+            }
+            for (Conexion conexion : suscripcion.conexiones) {
+                conexion.cerrada = true;
+                conexion.emisor.complete();
+            }
+        }
+        suscripciones.clear();
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+        if (envio instanceof ExecutorService) {
+            ((ExecutorService) envio).shutdownNow();
+        } else if (envio instanceof SimpleAsyncTaskExecutor) {
+            ((SimpleAsyncTaskExecutor) envio).close();
+        }
+    }
+
+    // Abre una conexión SSE para el usuario (IllegalStateException si se supera algún límite)
+    public SseEmitter abrir(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("userId es obligatorio");
+        }
+        if (conexiones.incrementAndGet() > maxConexiones) {
+            conexiones.decrementAndGet();
+            rechazadas.incrementAndGet();
+            throw new IllegalStateException("Se ha alcanzado el máximo de conexiones en tiempo real");
+        }
+        Conexion conexion = new Conexion(userId, new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutos)));
+        String[] desde = {null};
+        suscripciones.compute(userId, (id, suscripcion) -> {
+            if (suscripcion == null) {
+                suscripcion = new Suscripcion(id);
+                registrarListener(suscripcion);
+            }
+            if (suscripcion.conexiones.size() < maxConexionesPorUsuario) {
+                suscripcion.conexiones.add(conexion);
+                desde[0] = suscripcion.cursor[0];
+            }
+            return suscripcion;
+        });
+        if (desde[0] == null) {
+            conexiones.decrementAndGet();
+            rechazadas.incrementAndGet();
+            throw new IllegalStateException("Demasiadas conexiones en tiempo real abiertas para este usuario");
+        }
+
+        conexion.emisor.onCompletion(() -> cerrar(conexion));
+        conexion.emisor.onTimeout(() -> cerrar(conexion));
+        conexion.emisor.onError(error -> cerrar(conexion));
+        // Primer evento: confirma la suscripción y fija desde cuándo llegan mensajes
+        encolar(conexion, SseEmitter.event().name("conectado").data(Map.of("since", desde[0])));
+        return conexion.emisor;
+    }
+
+    // Idempotente: se llama desde los callbacks del emisor y al fallar un envío
+    private void cerrar(Conexion conexion) {
+        conexion.cerrada = true;
+        conexion.cola.clear();
+        suscripciones.computeIfPresent(conexion.userId, (id, suscripcion) -> {
+            if (suscripcion.conexiones.remove(conexion)) {
+                conexiones.decrementAndGet();
+            }
+            if (!suscripcion.conexiones.isEmpty()) {
+                return suscripcion;
+            }
+            // Última conexión del usuario: se deja de escuchar
+            ListenerRegistration registro = suscripcion.registro;
+            if (registro != null) {
+                registro.remove();
+            }
+            return null;
+        });
+    }
+
+    // createdAt es texto de ancho variable ("...05Z" frente a "...05.120Z"): como texto no se puede
+    // comparar con el cursor. La consulta pide desde el segundo del cursor (prefijo de ancho fijo,
+    // menor que cualquier createdAt de ese segundo) y los ya entregados se descartan comparando instantes
+    private void registrarListener(Suscripcion suscripcion) {
+        suscripcion.registro = firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("recipientId", suscripcion.userId)
+                .whereGreaterThan("createdAt", limiteConsulta(suscripcion.cursor[0]))
+                .addSnapshotListener(ejecutor, (snapshot, error) -> {
+                    if (suscripciones.get(suscripcion.userId) != suscripcion) {
+                        return; // Suscripción cerrada mientras llegaba el evento
+                    }
+                    if (error != null) {
+                        log.warn("Listener en tiempo real de {} detenido; se reintenta en {} s",
+                                suscripcion.userId, REINTENTO_SEGUNDOS, error);
+                        ejecutor.schedule(() -> {
+                            if (suscripciones.get(suscripcion.userId) == suscripcion) {
+                                registrarListener(suscripcion);
+                            }
+                        }, REINTENTO_SEGUNDOS, TimeUnit.SECONDS);
+                        return;
+                    }
+                    if (snapshot == null) {
+                        return;
+                    }
+                    for (DocumentChange cambio : snapshot.getDocumentChanges()) {
+                        if (cambio.getType() != DocumentChange.Type.ADDED) {
+                            continue;
+                        }
+                        Mensaje mensaje = MensajeServicio.convertirAMensaje(cambio.getDocument());
+                        if (ResumenesChat.cubiertoPorCursor(mensaje, suscripcion.cursor)) {
+                            continue; // Anterior a la suscripción o ya entregado antes de reintentar
+                        }
+                        suscripcion.cursor = new String[]{mensaje.getCreatedAt(), mensaje.getId()};
+                        for (Conexion conexion : suscripcion.conexiones) {
+                            encolar(conexion, SseEmitter.event()
+                                    .id(mensaje.getId())
+                                    .name("mensaje")
+                                    .data(mensaje, MediaType.APPLICATION_JSON));
+                        }
+                    }
+                });
+    }
+
+    private static String limiteConsulta(String createdAt) {
+        Instant instante = ResumenesChat.instante(createdAt);
+        return instante != null ? ResumenesChat.prefijoSegundo(instante) : createdAt;
+    }
+
+    // Back-pressure: la cola de cada conexión está acotada; al llenarse se vacía y queda solo "resync"
+    private void encolar(Conexion conexion, SseEmitter.SseEventBuilder evento) {
+        if (conexion.cerrada) {
+            return;
+        }
+        if (!conexion.cola.offer(evento)) {
+            desbordamientos.incrementAndGet();
+            conexion.cola.clear();
+            conexion.cola.offer(SseEmitter.event().name("resync").data(Map.of("reason", "buffer-overflow")));
+        }
+        programarEnvio(conexion);
+    }
+
+    private void programarEnvio(Conexion conexion) {
+        if (conexion.enviando.compareAndSet(false, true)) {
+            try {
+                envio.execute(() -> vaciar(conexion));
+            } catch (RejectedExecutionException e) {
+                conexion.enviando.set(false);
+            }
+        }
+    }
+
+    private void vaciar(Conexion conexion) {
+        try {
+            SseEmitter.SseEventBuilder evento;
+            while (!conexion.cerrada && (evento = conexion.cola.poll()) != null) {
+                conexion.emisor.send(evento);
+                eventosEnviados.incrementAndGet();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado
+            cerrar(conexion);
+            conexion.emisor.completeWithError(e);
+        } finally {
+            conexion.enviando.set(false);
+        }
+        // Un evento encolado justo después del último poll no debe quedarse sin enviar
+        if (!conexion.cerrada && !conexion.cola.isEmpty()) {
+            programarEnvio(conexion);
+        }
+    }
+
+    // Solo a conexiones sin eventos pendientes: las que están enviando ya muestran actividad
+    private void enviarHeartbeat() {
+        for (Suscripcion suscripcion : suscripciones.values()) {
+            for (Conexion conexion : suscripcion.conexiones) {
+                if (conexion.cola.isEmpty()) {
+                    encolar(conexion, SseEmitter.event().comment("ping"));
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        int pendientes = 0;
+        for (Suscripcion suscripcion : suscripciones.values()) {
+            for (Conexion conexion : suscripcion.conexiones) {
+                pendientes += conexion.cola.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("conexiones", conexiones.get());
+        stats.put("usuariosConListener", suscripciones.size());
+        stats.put("maxConexiones", maxConexiones);
+        stats.put("eventosPendientes", pendientes);
+        stats.put("eventosEnviados", eventosEnviados.get());
+        stats.put("desbordamientos", desbordamientos.get());
+        stats.put("conexionesRechazadas", rechazadas.get());
+        return stats;
+    }
+}
@@ -0,0 +1,216 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Contador total de mensajes no leídos por usuario, repartido en shards
+// unreadCounters/{userId}/shards/{n} { count }: cada mensaje suma 1 en un shard al azar,
+// así un destinatario muy activo no concentra todas las escrituras en un documento.
+// El total es la suma de los shards (una consulta pequeña); count() sobre messages, descontando
+// lo que cubren los cursores de lectura, es la fuente de verdad para inicializar y reconciliar
+// (en segundo plano o desde el endpoint de mantenimiento, nunca al leer el total)
+@Component
+public class ContadoresNoLeidos {
+
+    private static final Logger log = LoggerFactory.getLogger(ContadoresNoLeidos.class);
+
+    private static final String COLLECTION_NAME = "unreadCounters";
+    private static final String SHARDS = "shards";
+    private static final String MESSAGES_COLLECTION = "messages";
+    private static final int MAX_PENDIENTES = 10_000;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${mensajes.no-leidos.shards:10}")
+    private int numeroShards;
+
+    @Value("${mensajes.no-leidos.reconciliaciones-por-ciclo:20}")
+    private int reconciliacionesPorCiclo;
+
+    @Value("${mensajes.no-leidos.consultas-en-paralelo:10}")
+    private int consultasEnParalelo;
+
+    // Usuarios con el contador sin inicializar, pendientes de reconciliar
+    private final Set<String> pendientes = ConcurrentHashMap.newKeySet();
+
+    // Shard al azar del usuario (para incluir el incremento en el batch o transacción del llamador)
+    public DocumentReference shardAleatorio(String userId) {
+        return shards(userId).document(String.valueOf(ThreadLocalRandom.current().nextInt(Math.max(1, numeroShards))));
+    }
+
+    // Para set(..., SetOptions.merge()): crea el shard si no existe
+    public static Map<String, Object> incremento(long delta) {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("count", FieldValue.increment(delta));
+        return datos;
+    }
+
+    // Total de no leídos: la suma de los shards, siempre dos lecturas
+    // Con el contador sin inicializar (primera lectura, o tras la migración de resúmenes) el valor es
+    // aproximado: el usuario se encola y la reconciliación se hace en segundo plano, nunca en la petición
+    public long total(String userId) throws ExecutionException, InterruptedException {
+        ApiFuture<DocumentSnapshot> marca = firestore.collection(COLLECTION_NAME).document(userId).get();
+        ApiFuture<QuerySnapshot> partes = shards(userId).get();
+        DocumentSnapshot estado = marca.get();
+        if (!estado.exists() || !Boolean.TRUE.equals(estado.getBoolean("inicializado"))) {
+            // Cola llena: se volverá a encolar en una lectura posterior
+            if (pendientes.size() < MAX_PENDIENTES) {
+                pendientes.add(userId);
+            }
+        }
+        // Un desajuste puntual puede dejar la suma negativa hasta la siguiente reconciliación
+        return Math.max(0, sumar(partes.get().getDocuments()));
+    }
+
+    // Reconciliación en segundo plano de los contadores sin inicializar, unos pocos usuarios por ciclo
+    @Scheduled(fixedDelayString = "${mensajes.no-leidos.reconciliacion-ms:10000}")
+    public void reconciliarPendientes() {
+        Iterator<String> iterador = pendientes.iterator();
+        int procesados = 0;
+        while (iterador.hasNext() && procesados < reconciliacionesPorCiclo) {
+            String userId = iterador.next();
+            iterador.remove();
+            procesados++;
+            try {
+                reconciliar(userId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Sigue sin inicializar: se vuelve a encolar en su próxima lectura
+                log.warn("No se pudo reconciliar el contador de no leídos de {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    int pendientes() {
+        return pendientes.size();
+    }
+
+    // Ajusta los shards al valor real (count() sobre messages) sumando la diferencia en el shard 0
+    // Valor real: mensajes con isRead = false menos los que ya cubre el cursor de lectura de su chat
+    // (se compara solo createdAt: un empate exacto con el cursor cuenta como leído).
+    // Todo se lee y se corrige en una transacción: un mensaje nuevo (batch mensaje + shard) o una
+    // lectura (cursor + shard) que llegue entre el count() y la lectura de los shards haría que la
+    // diferencia no fuera exacta, y con el contador marcado como inicializado ya no se corregiría.
+    // Si se cruza una escritura, la transacción se reintenta con los valores nuevos
+    public long reconciliar(String userId) throws ExecutionException, InterruptedException {
+        DocumentReference marcaRef = firestore.collection(COLLECTION_NAME).document(userId);
+        long[] resultado = firestore.runTransaction(transaction -> {
+            ApiFuture<AggregateQuerySnapshot> conteo = transaction.get(consultaNoLeidos(userId).count());
+            ApiFuture<QuerySnapshot> partes = transaction.get(shards(userId));
+            // {chatId, leidoHasta} de los chats con cursor de lectura
+            List<String[]> cursores = new ArrayList<>();
+            for (QueryDocumentSnapshot resumen : transaction.get(firestore.collection(ResumenesChat.COLLECTION_NAME)
+                    .whereArrayContains("participants", userId)
+                    .select("readCursors")).get().getDocuments()) {
+                String[] cursor = ResumenesChat.cursorDeLectura(resumen, userId);
+                if (cursor != null) {
+                    cursores.add(new String[]{resumen.getId(), cursor[0]});
+                }
+            }
+            long real = conteo.get().getCount();
+            // Por tandas: como mucho consultasEnParalelo chats consultándose a la vez
+            int tanda = Math.max(1, consultasEnParalelo);
+            for (int inicio = 0; inicio < cursores.size(); inicio += tanda) {
+                List<ApiFuture<Long>> cubiertos = new ArrayList<>();
+                for (String[] cursor : cursores.subList(inicio, Math.min(cursores.size(), inicio + tanda))) {
+                    cubiertos.add(contarCubiertos(transaction, userId, cursor[0], cursor[1]));
+                }
+                for (Long cubierto : ApiFutures.allAsList(cubiertos).get()) {
+                    real -= cubierto;
+                }
+            }
+            long actual = sumar(partes.get().getDocuments());
+
+            if (real != actual) {
+                transaction.set(shards(userId).document("0"), incremento(real - actual), SetOptions.merge());
+            }
+            Map<String, Object> marca = new HashMap<>();
+            marca.put("inicializado", true);
+            marca.put("reconciliadoEn", new Date());
+            transaction.set(marcaRef, marca, SetOptions.merge());
+            return new long[]{actual, real};
+        }).get();
+
+        if (resultado[0] != resultado[1]) {
+            log.info("Contador de no leídos de {} reconciliado: {} -> {}", userId, resultado[0], resultado[1]);
+        }
+        return resultado[1];
+    }
+
+    // No leídos del chat con createdAt <= leidoHasta, comparando instantes y no textos:
+    // count() de los segundos anteriores (el prefijo de segundos acota bien como texto) y,
+    // del mismo segundo, solo los createdAt, comparados en memoria
+    private ApiFuture<Long> contarCubiertos(Transaction transaction, String userId, String chatId, String leidoHasta) {
+        Query delChat = consultaNoLeidos(userId).whereEqualTo("chatId", chatId);
+        Instant hasta = ResumenesChat.instante(leidoHasta);
+        if (hasta == null) {
+            // Cursor heredado que no es un instante: comparación de texto
+            return ApiFutures.transform(transaction.get(delChat.whereLessThanOrEqualTo("createdAt", leidoHasta).count()),
+                    AggregateQuerySnapshot::getCount, MoreExecutors.directExecutor());
+        }
+        String segundo = ResumenesChat.prefijoSegundo(hasta);
+        String siguienteSegundo = ResumenesChat.prefijoSegundo(hasta.plusSeconds(1));
+        ApiFuture<Long> anteriores = ApiFutures.transform(transaction.get(delChat.whereLessThan("createdAt", segundo).count()),
+                AggregateQuerySnapshot::getCount, MoreExecutors.directExecutor());
+        ApiFuture<Long> mismoSegundo = ApiFutures.transform(transaction.get(delChat
+                        .whereGreaterThanOrEqualTo("createdAt", segundo)
+                        .whereLessThan("createdAt", siguienteSegundo)
+                        .select("createdAt")),
+                snapshot -> {
+                    long cubiertos = 0;
+                    for (QueryDocumentSnapshot mensaje : snapshot.getDocuments()) {
+                        Instant creado = ResumenesChat.instante(mensaje.getString("createdAt"));
+                        if (creado != null && !creado.isAfter(hasta)) {
+                            cubiertos++;
+                        }
+                    }
+                    return cubiertos;
+                }, MoreExecutors.directExecutor());
+        return ApiFutures.transform(ApiFutures.allAsList(List.of(anteriores, mismoSegundo)),
+                partes -> partes.get(0) + partes.get(1), MoreExecutors.directExecutor());
+    }
+
+    private Query consultaNoLeidos(String userId) {
+        return firestore.collection(MESSAGES_COLLECTION)
+                .whereEqualTo("recipientId", userId)
+                .whereEqualTo("isRead", false);
+    }
+
+    private CollectionReference shards(String userId) {
+        return firestore.collection(COLLECTION_NAME).document(userId).collection(SHARDS);
+    }
+
+    private static long sumar(List<QueryDocumentSnapshot> shards) {
+        long total = 0;
+        for (QueryDocumentSnapshot shard : shards) {
+            Long count = shard.getLong("count");
+            if (count != null) {
+                total += count;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,179 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.CuentaBloqueadaDTO;
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Conjunto en memoria de cuentas bloqueadas (users con isBlocked == true)
+// Un snapshot listener sobre esa consulta lo mantiene al día, así que comprobar un bloqueo
+// es una búsqueda en memoria en lugar de leer el documento del usuario.
+// Mientras no esté listo (arranque o listener caído) los llamadores consultan Firestore
+@Component
+public class CuentasBloqueadas {
+
+    private static final Logger log = LoggerFactory.getLogger(CuentasBloqueadas.class);
+
+    private static final String COLLECTION_NAME = "users";
+    private static final long REINTENTO_SEGUNDOS = 30;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private LimitadorIntentosLogin limitadorIntentos;
+
+    @Value("${usuarios.bloqueados.listener-habilitado:true}")
+    private boolean habilitado;
+
+    // Ordenado por ID para paginar el listado de administración por keyset
+    private final ConcurrentSkipListMap<String, CuentaBloqueadaDTO> porId = new ConcurrentSkipListMap<>();
+    // email normalizado -> userId
+    private final Map<String, String> porEmail = new ConcurrentHashMap<>();
+
+    private volatile boolean listo = false;
+    private volatile boolean reconstruir = true;
+    private volatile long sincronizadoEn = 0;
+
+    private ScheduledExecutorService ejecutor;
+    private volatile ListenerRegistration registro;
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            log.info("Listener de cuentas bloqueadas deshabilitado");
+            return;
+        }
+        ejecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cuentas-bloqueadas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        registrarListener();
+    }
+
+    @PreDestroy
+    public void detener() {
+        ListenerRegistration actual = registro;
+        if (actual != null) {
+            actual.remove();
+        }
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    private void registrarListener() {
+        reconstruir = true;
+        registro = firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("isBlocked", true)
+                .addSnapshotListener(ejecutor, (snapshot, error) -> {
+                    if (error != null) {
+                        listo = false;
+                        log.error("Listener de cuentas bloqueadas detenido; se reintenta en {} s", REINTENTO_SEGUNDOS, error);
+                        ejecutor.schedule(this::registrarListener, REINTENTO_SEGUNDOS, TimeUnit.SECONDS);
+                        return;
+                    }
+                    if (snapshot == null) {
+                        return;
+                    }
+                    if (reconstruir) {
+                        // Las que estaban bloqueadas y ya no aparecen se desbloquearon mientras el listener no estaba
+                        Set<String> anteriores = new HashSet<>(porId.keySet());
+                        porId.clear();
+                        porEmail.clear();
+                        for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                            agregar(doc);
+                            anteriores.remove(doc.getId());
+                        }
+                        anteriores.forEach(limitadorIntentos::olvidar);
+                        reconstruir = false;
+                        listo = true;
+                        log.info("Cuentas bloqueadas sincronizadas: {}", porId.size());
+                    } else {
+                        for (DocumentChange cambio : snapshot.getDocumentChanges()) {
+                            // REMOVED: el documento dejó de cumplir isBlocked == true (o se borró)
+                            // Puede ser un desbloqueo hecho en otra instancia: el limitador local
+                            // seguiría dando la cuenta por bloqueada
+                            if (cambio.getType() == DocumentChange.Type.REMOVED) {
+                                quitar(cambio.getDocument().getId());
+                                limitadorIntentos.olvidar(cambio.getDocument().getId());
+                            } else {
+                                agregar(cambio.getDocument());
+                            }
+                        }
+                    }
+                    sincronizadoEn = System.currentTimeMillis();
+                });
+    }
+
+    private void agregar(DocumentSnapshot doc) {
+        String email = doc.getString("email");
+        CuentaBloqueadaDTO anterior = porId.put(doc.getId(), new CuentaBloqueadaDTO(doc.getId(), email, doc.getString("name")));
+        if (anterior != null && anterior.getEmail() != null && !IndiceEmails.coincide(anterior.getEmail(), email)) {
+            porEmail.remove(IndiceEmails.normalizar(anterior.getEmail()));
+        }
+        if (email != null) {
+            porEmail.put(IndiceEmails.normalizar(email), doc.getId());
+        }
+    }
+
+    // También se usa al desbloquear, para no esperar al evento del listener
+    public void quitar(String userId) {
+        CuentaBloqueadaDTO anterior = porId.remove(userId);
+        if (anterior != null && anterior.getEmail() != null) {
+            porEmail.remove(IndiceEmails.normalizar(anterior.getEmail()), userId);
+        }
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    // Solo es fiable si estaListo()
+    public boolean contiene(String userId) {
+        return userId != null && porId.containsKey(userId);
+    }
+
+    public boolean contieneEmail(String email) {
+        return email != null && porEmail.containsKey(IndiceEmails.normalizar(email));
+    }
+
+    // Página del listado ordenado por ID
+    public PaginaDTO<CuentaBloqueadaDTO> pagina(int limite, String cursor) {
+        String ultimoId = Cursores.decodificar(cursor);
+        NavigableMap<String, CuentaBloqueadaDTO> restantes = ultimoId == null ? porId : porId.tailMap(ultimoId, false);
+        List<CuentaBloqueadaDTO> items = new ArrayList<>(limite);
+        String siguiente = null;
+        for (CuentaBloqueadaDTO cuenta : restantes.values()) {
+            if (items.size() == limite) {
+                siguiente = Cursores.codificar(items.get(limite - 1).getId());
+                break;
+            }
+            items.add(cuenta);
+        }
+        return new PaginaDTO<>(items, siguiente);
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("habilitado", habilitado);
+        stats.put("listo", listo);
+        stats.put("cuentasBloqueadas", porId.size());
+        stats.put("sincronizadoEn", sincronizadoEn);
+        return stats;
+    }
+}
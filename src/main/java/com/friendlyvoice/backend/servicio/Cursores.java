@@ -0,0 +1,29 @@
+package com.friendlyvoice.backend.servicio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Cursores opacos de paginación (Base64 URL-safe del valor de la última clave)
+public final class Cursores {
+
+    private Cursores() {
+    }
+
+    public static String codificar(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodificar(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Filtro de Bloom de emails conocidos (caché negativa)
+// Si el filtro dice que un email no existe, es seguro: se responde sin tocar Firestore.
+// Si dice que puede existir, se resuelve por el índice como siempre (puede ser un falso positivo).
+// Se reconstruye periódicamente desde users; crearUsuario añade el email al momento
+@Component
+public class FiltroEmails {
+
+    private static final Logger log = LoggerFactory.getLogger(FiltroEmails.class);
+
+    private static final String USERS_COLLECTION = "users";
+    private static final int TAMANO_PAGINA = 1000;
+    private static final int MIN_CAPACIDAD = 10_000;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${usuarios.filtro-emails.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${usuarios.filtro-emails.fpp:0.01}")
+    private double fppObjetivo;
+
+    private volatile BloomFilter<CharSequence> filtro;
+    private volatile long reconstruidoEn = 0;
+    private volatile int emailsCargados = 0;
+
+    // Altas ocurridas durante una reconstrucción: se vuelcan en el filtro nuevo antes de publicarlo
+    private final ReentrantLock lock = new ReentrantLock();
+    private Set<String> altasDuranteReconstruccion = null;
+
+    private final AtomicLong consultas = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong falsosPositivos = new AtomicLong();
+
+    public boolean estaListo() {
+        return habilitado && filtro != null;
+    }
+
+    // false = el email seguro que no existe
+    public boolean podriaExistir(String email) {
+        BloomFilter<CharSequence> actual = filtro;
+        if (!habilitado || actual == null || email == null) {
+            return true;
+        }
+        consultas.incrementAndGet();
+        if (actual.mightContain(IndiceEmails.normalizar(email))) {
+            return true;
+        }
+        descartados.incrementAndGet();
+        return false;
+    }
+
+    // El filtro dijo "puede existir" pero la resolución no encontró usuario
+    public void registrarFalsoPositivo() {
+        falsosPositivos.incrementAndGet();
+    }
+
+    // Llamar antes de escribir el usuario: un alta fallida solo deja un falso positivo
+    public void agregar(String email) {
+        if (email == null || email.isBlank()) {
+            return;
+        }
+        String normalizado = IndiceEmails.normalizar(email);
+        lock.lock();
+        try {
+            BloomFilter<CharSequence> actual = filtro;
+            if (actual != null) {
+                actual.put(normalizado);
+            }
+            if (altasDuranteReconstruccion != null) {
+                altasDuranteReconstruccion.add(normalizado);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${usuarios.filtro-emails.retraso-inicial-ms:0}",
+            fixedDelayString = "${usuarios.filtro-emails.reconstruccion-ms:300000}")
+    public void reconstruir() {
+        if (!habilitado) {
+            return;
+        }
+        lock.lock();
+        try {
+            altasDuranteReconstruccion = ConcurrentHashMap.newKeySet();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            List<String> emails = cargarEmails();
+            BloomFilter<CharSequence> nuevo = BloomFilter.create(
+                    Funnels.stringFunnel(StandardCharsets.UTF_8),
+                    Math.max(MIN_CAPACIDAD, emails.size() * 2L),
+                    fppObjetivo);
+            for (String email : emails) {
+                nuevo.put(email);
+            }
+            lock.lock();
+            try {
+                for (String email : altasDuranteReconstruccion) {
+                    nuevo.put(email);
+                }
+                filtro = nuevo;
+            } finally {
+                lock.unlock();
+            }
+            emailsCargados = emails.size();
+            reconstruidoEn = System.currentTimeMillis();
+            log.info("Filtro de emails reconstruido con {} emails", emails.size());
+        } catch (Exception e) {
+            // Se conserva el filtro anterior (si lo hay); sin filtro, todas las consultas van a Firestore
+            log.error("No se pudo reconstruir el filtro de emails", e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            lock.lock();
+            try {
+                altasDuranteReconstruccion = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Emails normalizados de todos los usuarios, paginando por ID y transfiriendo solo el campo email
+    private List<String> cargarEmails() throws Exception {
+        List<String> emails = new ArrayList<>();
+        String ultimoId = null;
+        while (true) {
+            Query query = firestore.collection(USERS_COLLECTION)
+                    .select("email")
+                    .orderBy(FieldPath.documentId())
+                    .limit(TAMANO_PAGINA);
+            if (ultimoId != null) {
+                query = query.startAfter(ultimoId);
+            }
+            List<QueryDocumentSnapshot> pagina = query.get().get().getDocuments();
+            for (QueryDocumentSnapshot doc : pagina) {
+                String email = doc.getString("email");
+                if (email != null && !email.isBlank()) {
+                    emails.add(IndiceEmails.normalizar(email));
+                }
+            }
+            if (pagina.size() < TAMANO_PAGINA) {
+                return emails;
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        BloomFilter<CharSequence> actual = filtro;
+        long totalConsultas = consultas.get();
+        long totalDescartados = descartados.get();
+        long totalFalsosPositivos = falsosPositivos.get();
+        // Todos los descartes son verdaderos negativos: FPR = FP / (FP + VN)
+        long negativosReales = totalFalsosPositivos + totalDescartados;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("habilitado", habilitado);
+        stats.put("listo", actual != null);
+        stats.put("emailsCargados", emailsCargados);
+        stats.put("reconstruidoEn", reconstruidoEn);
+        stats.put("fppObjetivo", fppObjetivo);
+        stats.put("fppEstimada", actual != null ? actual.expectedFpp() : 0.0);
+        stats.put("consultas", totalConsultas);
+        stats.put("descartadosSinFirestore", totalDescartados);
+        stats.put("tasaAciertos", totalConsultas == 0 ? 0.0 : (double) totalDescartados / totalConsultas);
+        stats.put("falsosPositivos", totalFalsosPositivos);
+        stats.put("tasaFalsosPositivos", negativosReales == 0 ? 0.0 : (double) totalFalsosPositivos / negativosReales);
+        return stats;
+    }
+}
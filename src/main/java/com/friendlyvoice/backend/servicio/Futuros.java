@@ -0,0 +1,63 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+// Puente entre los ApiFuture del SDK de Firestore y CompletableFuture
+// Las continuaciones se ejecutan en el hilo del cliente gRPC que completa la llamada:
+// deben ser trabajo en memoria, nunca un .get() bloqueante
+public final class Futuros {
+
+    private Futuros() {
+    }
+
+    public static <T> CompletableFuture<T> completable(ApiFuture<T> future) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T valor) {
+                resultado.complete(valor);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                resultado.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return resultado;
+    }
+
+    // Espera bloqueante para las variantes síncronas: los errores de validación y de estado
+    // (IllegalArgumentException, IllegalStateException...) se relanzan tal cual
+    public static <T> T esperar(CompletableFuture<T> future) throws ExecutionException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Excepción original sin los envoltorios CompletionException/ExecutionException
+    public static Throwable causa(Throwable t) {
+        Throwable actual = t;
+        while ((actual instanceof CompletionException || actual instanceof ExecutionException) && actual.getCause() != null) {
+            actual = actual.getCause();
+        }
+        return actual;
+    }
+
+    // Consulta rechazada por Firestore por falta de un índice compuesto
+    static boolean esFaltaDeIndice(Throwable t) {
+        String errorMessage = causa(t).getMessage();
+        return errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"));
+    }
+}
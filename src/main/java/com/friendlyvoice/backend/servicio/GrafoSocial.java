@@ -0,0 +1,413 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Grafo social en memoria (quién sigue a quién)
+// Los userId se internan como enteros y cada nodo guarda sus vecinos en un int[] ordenado,
+// en ambas direcciones: comprobar un seguimiento es una búsqueda binaria, los mutuos una
+// intersección de dos arrays ordenados y los contadores una longitud, sin objetos por arista.
+// Se carga desde las aristas users/{id}/following/{otro} (collectionGroup) y se recarga
+// periódicamente; seguir/dejar de seguir desde este backend lo actualiza al momento
+@Component
+public class GrafoSocial {
+
+    private static final Logger log = LoggerFactory.getLogger(GrafoSocial.class);
+
+    private static final String FOLLOWING = "following";
+    private static final int TAMANO_PAGINA = 1000;
+    private static final long REINTENTO_SEGUNDOS = 30;
+    private static final int[] VACIO = new int[0];
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${usuarios.grafo.habilitado:true}")
+    private boolean habilitado;
+
+    // 0 = solo la carga inicial
+    @Value("${usuarios.grafo.recarga-minutos:15}")
+    private long recargaMinutos;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Estado protegido por lock
+    private Map<String, Integer> numeros = new HashMap<>();
+    private String[] userIds = new String[0];
+    private int[][] siguiendo = new int[0][];
+    private int[][] seguidores = new int[0][];
+    private int nodos = 0;
+    private long aristas = 0;
+    // Cambios ocurridos durante una recarga: se reaplican sobre el grafo nuevo antes de publicarlo
+    private List<Cambio> cambiosDuranteRecarga = null;
+
+    private volatile boolean listo = false;
+    private volatile long cargadoEn = 0;
+    private volatile long duracionCargaMs = 0;
+
+    private ScheduledExecutorService ejecutor;
+
+    private static final class Cambio {
+        final String origen;
+        final String destino;
+        final boolean alta;
+
+        Cambio(String origen, String destino, boolean alta) {
+            this.origen = origen;
+            this.destino = destino;
+            this.alta = alta;
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            log.info("Grafo social en memoria deshabilitado");
+            return;
+        }
+        ejecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "grafo-social");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        ejecutor.execute(this::recargar);
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    private void recargar() {
+        lock.writeLock().lock();
+        try {
+            cambiosDuranteRecarga = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long inicio = System.currentTimeMillis();
+        try {
+            cargar();
+            duracionCargaMs = System.currentTimeMillis() - inicio;
+            cargadoEn = System.currentTimeMillis();
+            listo = true;
+            log.info("Grafo social cargado: {} usuarios, {} aristas en {} ms", nodos, aristas, duracionCargaMs);
+            if (recargaMinutos > 0) {
+                ejecutor.schedule(this::recargar, recargaMinutos, TimeUnit.MINUTES);
+            }
+        } catch (Exception e) {
+            // Se conserva el grafo anterior (si lo hay); sin grafo, los llamadores consultan Firestore
+            log.error("No se pudo cargar el grafo social; se reintenta en {} s", REINTENTO_SEGUNDOS, e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            ejecutor.schedule(this::recargar, REINTENTO_SEGUNDOS, TimeUnit.SECONDS);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                cambiosDuranteRecarga = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Recorre todas las aristas de following (solo rutas, sin datos) y construye las listas en bloque
+    private void cargar() throws Exception {
+        Map<String, Integer> nuevosNumeros = new HashMap<>();
+        List<String> nuevosIds = new ArrayList<>();
+        ListaEnteros origenes = new ListaEnteros(TAMANO_PAGINA);
+        ListaEnteros destinos = new ListaEnteros(TAMANO_PAGINA);
+
+        DocumentSnapshot ultimo = null;
+        while (true) {
+            Query query = firestore.collectionGroup(FOLLOWING)
+                    .select(FieldPath.documentId())
+                    .orderBy(FieldPath.documentId())
+                    .limit(TAMANO_PAGINA);
+            if (ultimo != null) {
+                query = query.startAfter(ultimo);
+            }
+            List<QueryDocumentSnapshot> pagina = query.get().get().getDocuments();
+            for (QueryDocumentSnapshot arista : pagina) {
+                // users/{origen}/following/{destino}
+                DocumentReference usuario = arista.getReference().getParent().getParent();
+                if (usuario == null) {
+                    continue;
+                }
+                origenes.agregar(internar(usuario.getId(), nuevosNumeros, nuevosIds));
+                destinos.agregar(internar(arista.getId(), nuevosNumeros, nuevosIds));
+            }
+            if (pagina.size() < TAMANO_PAGINA) {
+                break;
+            }
+            ultimo = pagina.get(pagina.size() - 1);
+        }
+
+        int total = nuevosIds.size();
+        int[][] nuevosSiguiendo = agrupar(origenes, destinos, total);
+        int[][] nuevosSeguidores = agrupar(destinos, origenes, total);
+
+        lock.writeLock().lock();
+        try {
+            numeros = nuevosNumeros;
+            userIds = nuevosIds.toArray(new String[0]);
+            siguiendo = nuevosSiguiendo;
+            seguidores = nuevosSeguidores;
+            nodos = total;
+            aristas = contarAristas(nuevosSiguiendo, total);
+            for (Cambio cambio : cambiosDuranteRecarga) {
+                aplicar(cambio.origen, cambio.destino, cambio.alta);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int internar(String userId, Map<String, Integer> numeros, List<String> ids) {
+        Integer numero = numeros.get(userId);
+        if (numero == null) {
+            numero = ids.size();
+            numeros.put(userId, numero);
+            ids.add(userId);
+        }
+        return numero;
+    }
+
+    // Listas de adyacencia a partir de pares (desde[i] -> hacia[i]): contar grados, repartir y ordenar
+    private static int[][] agrupar(ListaEnteros desde, ListaEnteros hacia, int total) {
+        int[] grados = new int[total];
+        for (int i = 0; i < desde.tamano; i++) {
+            grados[desde.valores[i]]++;
+        }
+        int[][] listas = new int[total][];
+        for (int nodo = 0; nodo < total; nodo++) {
+            listas[nodo] = grados[nodo] == 0 ? VACIO : new int[grados[nodo]];
+        }
+        int[] llenos = new int[total];
+        for (int i = 0; i < desde.tamano; i++) {
+            int nodo = desde.valores[i];
+            listas[nodo][llenos[nodo]++] = hacia.valores[i];
+        }
+        for (int[] lista : listas) {
+            Arrays.sort(lista);
+        }
+        return listas;
+    }
+
+    private static long contarAristas(int[][] listas, int total) {
+        long suma = 0;
+        for (int nodo = 0; nodo < total; nodo++) {
+            suma += listas[nodo].length;
+        }
+        return suma;
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    // Seguimiento confirmado en Firestore por este backend
+    public void registrarSeguimiento(String userId, String otroUserId) {
+        registrar(userId, otroUserId, true);
+    }
+
+    public void registrarDejarDeSeguir(String userId, String otroUserId) {
+        registrar(userId, otroUserId, false);
+    }
+
+    private void registrar(String origen, String destino, boolean alta) {
+        if (!habilitado) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            aplicar(origen, destino, alta);
+            if (cambiosDuranteRecarga != null) {
+                cambiosDuranteRecarga.add(new Cambio(origen, destino, alta));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Con el lock de escritura tomado
+    private void aplicar(String origen, String destino, boolean alta) {
+        if (alta) {
+            int a = internarEnGrafo(origen);
+            int b = internarEnGrafo(destino);
+            int[] nuevos = insertarOrdenado(siguiendo[a], b);
+            if (nuevos != siguiendo[a]) {
+                siguiendo[a] = nuevos;
+                seguidores[b] = insertarOrdenado(seguidores[b], a);
+                aristas++;
+            }
+        } else {
+            Integer a = numeros.get(origen);
+            Integer b = numeros.get(destino);
+            if (a == null || b == null) {
+                return;
+            }
+            int[] nuevos = quitarOrdenado(siguiendo[a], b);
+            if (nuevos != siguiendo[a]) {
+                siguiendo[a] = nuevos;
+                seguidores[b] = quitarOrdenado(seguidores[b], a);
+                aristas--;
+            }
+        }
+    }
+
+    private int internarEnGrafo(String userId) {
+        Integer numero = numeros.get(userId);
+        if (numero != null) {
+            return numero;
+        }
+        if (nodos == userIds.length) {
+            int capacidad = Math.max(16, nodos * 2);
+            userIds = Arrays.copyOf(userIds, capacidad);
+            siguiendo = Arrays.copyOf(siguiendo, capacidad);
+            seguidores = Arrays.copyOf(seguidores, capacidad);
+        }
+        userIds[nodos] = userId;
+        siguiendo[nodos] = VACIO;
+        seguidores[nodos] = VACIO;
+        numeros.put(userId, nodos);
+        return nodos++;
+    }
+
+    private static int[] insertarOrdenado(int[] lista, int valor) {
+        int posicion = Arrays.binarySearch(lista, valor);
+        if (posicion >= 0) {
+            return lista;
+        }
+        posicion = -posicion - 1;
+        int[] resultado = new int[lista.length + 1];
+        System.arraycopy(lista, 0, resultado, 0, posicion);
+        resultado[posicion] = valor;
+        System.arraycopy(lista, posicion, resultado, posicion + 1, lista.length - posicion);
+        return resultado;
+    }
+
+    private static int[] quitarOrdenado(int[] lista, int valor) {
+        int posicion = Arrays.binarySearch(lista, valor);
+        if (posicion < 0) {
+            return lista;
+        }
+        if (lista.length == 1) {
+            return VACIO;
+        }
+        int[] resultado = new int[lista.length - 1];
+        System.arraycopy(lista, 0, resultado, 0, posicion);
+        System.arraycopy(lista, posicion + 1, resultado, posicion, lista.length - posicion - 1);
+        return resultado;
+    }
+
+    // Solo es fiable si estaListo()
+    public boolean sigueA(String userId, String otroUserId) {
+        lock.readLock().lock();
+        try {
+            Integer a = numeros.get(userId);
+            Integer b = numeros.get(otroUserId);
+            return a != null && b != null && Arrays.binarySearch(siguiendo[a], b) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int contarSeguidores(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer numero = numeros.get(userId);
+            return numero == null ? 0 : seguidores[numero].length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int contarSiguiendo(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer numero = numeros.get(userId);
+            return numero == null ? 0 : siguiendo[numero].length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // IDs de los seguidores mutuos en orden de ID (el mismo orden que la consulta en Firestore),
+    // los limite primeros tras despuesDe
+    public List<String> mutuos(String userId, String despuesDe, int limite) {
+        List<String> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Integer numero = numeros.get(userId);
+            if (numero == null) {
+                return ids;
+            }
+            int[] a = siguiendo[numero];
+            int[] b = seguidores[numero];
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    String id = userIds[a[i]];
+                    if (despuesDe == null || id.compareTo(despuesDe) > 0) {
+                        ids.add(id);
+                    }
+                    i++;
+                    j++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Los números internos no siguen el orden de los IDs: se ordena solo la intersección
+        Collections.sort(ids);
+        return ids.size() > limite ? new ArrayList<>(ids.subList(0, limite)) : ids;
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            // Estimación: 4 bytes por arista en cada dirección + cabecera de 16 bytes por int[] no vacío
+            // + referencia de 4 bytes por nodo en cada tabla (sin contar los String de los IDs)
+            long cabeceras = 0;
+            for (int nodo = 0; nodo < nodos; nodo++) {
+                cabeceras += (siguiendo[nodo].length > 0 ? 16 : 0) + (seguidores[nodo].length > 0 ? 16 : 0);
+            }
+            long bytes = aristas * 2 * Integer.BYTES + cabeceras + (long) userIds.length * 3 * 4;
+            stats.put("habilitado", habilitado);
+            stats.put("listo", listo);
+            stats.put("usuarios", nodos);
+            stats.put("aristas", aristas);
+            stats.put("bytesEstimados", bytes);
+            stats.put("bytesPorMillonDeAristas", aristas == 0 ? 0 : bytes * 1_000_000L / aristas);
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("recargaMinutos", recargaMinutos);
+        stats.put("cargadoEn", cargadoEn);
+        stats.put("duracionCargaMs", duracionCargaMs);
+        return stats;
+    }
+}
@@ -0,0 +1,263 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.friendlyvoice.backend.dto.UsuarioResumenDTO;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Índice de búsqueda de usuarios por nombre, en memoria
+// Tokens normalizados (sin tildes ni mayúsculas) -> IDs de usuario en un mapa ordenado,
+// de modo que una búsqueda por prefijo es un recorrido de subMap, sin consultar Firestore.
+// Se mantiene al día con el listener compartido sobre users (ListenerUsuarios); mientras no esté listo,
+// UsuarioServicio recurre a la consulta por rango en Firestore
+@Component
+public class IndiceBusquedaUsuarios implements ListenerUsuarios.Suscriptor {
+
+    private static final Logger log = LoggerFactory.getLogger(IndiceBusquedaUsuarios.class);
+
+    // Puntuaciones (menor es mejor)
+    private static final int NOMBRE_EXACTO = 0;
+    private static final int NOMBRE_PREFIJO = 1;
+    private static final int TOKENS_EXACTOS = 2;
+    private static final int TOKENS_PREFIJO = 3;
+
+    @Autowired
+    private ListenerUsuarios listenerUsuarios;
+
+    @Value("${usuarios.busqueda.indice-habilitado:true}")
+    private boolean habilitado;
+
+    // token -> IDs de usuarios cuyo nombre contiene el token
+    private final ConcurrentSkipListMap<String, Set<String>> tokens = new ConcurrentSkipListMap<>();
+    private final Map<String, Entrada> usuarios = new ConcurrentHashMap<>();
+
+    private final AtomicLong actualizaciones = new AtomicLong();
+    private volatile boolean listo = false;
+    private volatile long ultimaActualizacion = 0;
+
+    static final class Entrada {
+        final String id;
+        final String name;
+        final String avatarUrl;
+        final String nombreNormalizado;
+        final List<String> tokens;
+
+        Entrada(String id, String name, String avatarUrl) {
+            this.id = id;
+            this.name = name;
+            this.avatarUrl = avatarUrl;
+            this.tokens = NormalizadorTexto.tokenizar(name);
+            this.nombreNormalizado = String.join(" ", this.tokens);
+        }
+    }
+
+    private static final class Resultado {
+        final Entrada entrada;
+        final String clave;
+
+        Resultado(Entrada entrada, String clave) {
+            this.entrada = entrada;
+            this.clave = clave;
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            log.info("Índice de búsqueda de usuarios deshabilitado");
+            return;
+        }
+        listenerUsuarios.suscribir(this);
+    }
+
+    // Las callbacks llegan desde el hilo de ListenerUsuarios: un solo escritor sobre el índice
+    @Override
+    public void reconstruir(List<QueryDocumentSnapshot> documentos) {
+        tokens.clear();
+        usuarios.clear();
+        for (QueryDocumentSnapshot doc : documentos) {
+            indexar(doc);
+        }
+        listo = true;
+        registrarActualizacion();
+        log.info("Índice de búsqueda construido: {} usuarios, {} tokens", usuarios.size(), tokens.size());
+    }
+
+    @Override
+    public void aplicar(List<DocumentChange> cambios) {
+        for (DocumentChange cambio : cambios) {
+            if (cambio.getType() == DocumentChange.Type.REMOVED) {
+                eliminar(cambio.getDocument().getId());
+            } else {
+                indexar(cambio.getDocument());
+            }
+        }
+        registrarActualizacion();
+    }
+
+    @Override
+    public void detenido() {
+        listo = false;
+    }
+
+    private void registrarActualizacion() {
+        actualizaciones.incrementAndGet();
+        ultimaActualizacion = System.currentTimeMillis();
+    }
+
+    private void indexar(DocumentSnapshot doc) {
+        indexar(doc.getId(), doc.getString("name"), doc.getString("avatarUrl"));
+    }
+
+    // Visible para las mediciones: cargar el índice sin instantáneas de Firestore
+    void indexar(String id, String name, String avatarUrl) {
+        Entrada nueva = new Entrada(id, name, avatarUrl);
+        Entrada anterior = usuarios.put(nueva.id, nueva);
+        if (anterior != null) {
+            for (String token : anterior.tokens) {
+                if (!nueva.tokens.contains(token)) {
+                    quitarDePostings(token, nueva.id);
+                }
+            }
+        }
+        for (String token : nueva.tokens) {
+            tokens.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(nueva.id);
+        }
+    }
+
+    private void eliminar(String userId) {
+        Entrada anterior = usuarios.remove(userId);
+        if (anterior != null) {
+            for (String token : anterior.tokens) {
+                quitarDePostings(token, userId);
+            }
+        }
+    }
+
+    private void quitarDePostings(String token, String userId) {
+        tokens.computeIfPresent(token, (t, ids) -> {
+            ids.remove(userId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    // Página de resultados ordenados por relevancia; el cursor es la clave de orden del último elemento
+    public PaginaDTO<UsuarioResumenDTO> buscar(String consulta, int limite, String cursor) {
+        return paginar(candidatos(NormalizadorTexto.tokenizar(consulta)), consulta, limite, cursor);
+    }
+
+    // Ordenar y paginar documentos obtenidos de Firestore (consulta de respaldo mientras el índice no está listo)
+    public PaginaDTO<UsuarioResumenDTO> paginarDocumentos(List<? extends DocumentSnapshot> documentos, String consulta, int limite, String cursor) {
+        List<Entrada> entradas = new ArrayList<>(documentos.size());
+        for (DocumentSnapshot doc : documentos) {
+            entradas.add(new Entrada(doc.getId(), doc.getString("name"), doc.getString("avatarUrl")));
+        }
+        return paginar(entradas, consulta, limite, cursor);
+    }
+
+    // Selección de los primeros limite+1 resultados tras el cursor con un heap acotado (sin ordenar todo)
+    private PaginaDTO<UsuarioResumenDTO> paginar(Collection<Entrada> candidatos, String consulta, int limite, String cursor) {
+        String despuesDe = Cursores.decodificar(cursor);
+        PriorityQueue<Resultado> mejores = new PriorityQueue<>(limite + 1, (a, b) -> b.clave.compareTo(a.clave));
+        for (Resultado resultado : clasificar(candidatos, consulta, despuesDe)) {
+            mejores.offer(resultado);
+            if (mejores.size() > limite + 1) {
+                mejores.poll();
+            }
+        }
+        List<Resultado> ordenados = new ArrayList<>(mejores);
+        ordenados.sort(Comparator.comparing(r -> r.clave));
+
+        boolean hayMas = ordenados.size() > limite;
+        List<UsuarioResumenDTO> items = new ArrayList<>(Math.min(limite, ordenados.size()));
+        for (int i = 0; i < ordenados.size() && i < limite; i++) {
+            items.add(aResumen(ordenados.get(i).entrada));
+        }
+        String siguiente = hayMas ? Cursores.codificar(ordenados.get(limite - 1).clave) : null;
+        return new PaginaDTO<>(items, siguiente);
+    }
+
+    // Usuarios que contienen todos los tokens de la consulta como prefijo de alguno de sus tokens
+    private Collection<Entrada> candidatos(List<String> tokensConsulta) {
+        if (tokensConsulta.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> ids = null;
+        for (String prefijo : tokensConsulta) {
+            Set<String> coincidentes = new HashSet<>();
+            for (Set<String> postings : tokens.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false).values()) {
+                coincidentes.addAll(postings);
+            }
+            if (ids == null) {
+                ids = coincidentes;
+            } else {
+                ids.retainAll(coincidentes);
+            }
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        List<Entrada> entradas = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Entrada entrada = usuarios.get(id);
+            if (entrada != null) {
+                entradas.add(entrada);
+            }
+        }
+        return entradas;
+    }
+
+    // Clave de orden: puntuación, nombre normalizado e ID (total y estable entre páginas)
+    private List<Resultado> clasificar(Collection<Entrada> candidatos, String consulta, String despuesDe) {
+        List<String> tokensConsulta = NormalizadorTexto.tokenizar(consulta);
+        String consultaNormalizada = String.join(" ", tokensConsulta);
+        List<Resultado> resultados = new ArrayList<>();
+        for (Entrada entrada : candidatos) {
+            String clave = puntuar(entrada, consultaNormalizada, tokensConsulta) + "\u0000"
+                    + entrada.nombreNormalizado + "\u0000" + entrada.id;
+            if (despuesDe == null || clave.compareTo(despuesDe) > 0) {
+                resultados.add(new Resultado(entrada, clave));
+            }
+        }
+        return resultados;
+    }
+
+    private int puntuar(Entrada entrada, String consultaNormalizada, List<String> tokensConsulta) {
+        if (entrada.nombreNormalizado.equals(consultaNormalizada)) {
+            return NOMBRE_EXACTO;
+        }
+        if (entrada.nombreNormalizado.startsWith(consultaNormalizada)) {
+            return NOMBRE_PREFIJO;
+        }
+        return entrada.tokens.containsAll(tokensConsulta) ? TOKENS_EXACTOS : TOKENS_PREFIJO;
+    }
+
+    private UsuarioResumenDTO aResumen(Entrada entrada) {
+        return new UsuarioResumenDTO(entrada.id, entrada.name, entrada.avatarUrl);
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("habilitado", habilitado);
+        stats.put("listo", listo);
+        stats.put("usuarios", usuarios.size());
+        stats.put("tokens", tokens.size());
+        stats.put("actualizaciones", actualizaciones.get());
+        stats.put("ultimaActualizacion", ultimaActualizacion);
+        return stats;
+    }
+}
@@ -0,0 +1,316 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Índice secundario email -> userId
+// Cada email normalizado tiene un documento emails/{email} con el userId, de modo que
+// resolver un email es un acierto en memoria o una lectura puntual, nunca una consulta
+@Component
+public class IndiceEmails {
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private FiltroEmails filtroEmails;
+
+    @Value("${usuarios.emails.ttl-segundos:60}")
+    private long ttlSegundos;
+
+    private static final String COLLECTION_NAME = "emails";
+    private static final String USERS_COLLECTION = "users";
+    private static final int TAMAÑO_PAGINA = 400;
+    private static final int MAX_MUESTRAS = 50;
+
+    // Emails ya resueltos (email normalizado -> userId), con caducidad: un cambio de email hecho
+    // en otra instancia no pasa por aquí, y el login por email (intentos, bloqueo) no relee el usuario
+    private final Map<String, Resolucion> resueltos = new ConcurrentHashMap<>();
+
+    private static final class Resolucion {
+        final String userId;
+        final long caducaEn;
+
+        Resolucion(String userId, long caducaEn) {
+            this.userId = userId;
+            this.caducaEn = caducaEn;
+        }
+    }
+
+    // Normalizar email (sin espacios y en minúsculas)
+    public static String normalizar(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean coincide(String email, String otroEmail) {
+        return email != null && otroEmail != null && normalizar(email).equals(normalizar(otroEmail));
+    }
+
+    // Referencia al documento del índice ('/' no es válido en IDs de documento)
+    public DocumentReference referencia(String email) {
+        String id = normalizar(email).replace("/", "%2F");
+        return firestore.collection(COLLECTION_NAME).document(id);
+    }
+
+    // Datos del documento del índice
+    public Map<String, Object> datosIndice(String userId, String email) {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("userId", userId);
+        datos.put("email", normalizar(email));
+        return datos;
+    }
+
+    // Resolver userId por email: memoria -> filtro de Bloom -> emails/{email} -> consulta (usuarios sin índice)
+    // Devuelve null si no existe ningún usuario con ese email
+    // El filtro se reconstruye cada pocos minutos: un alta o un cambio de email en otra instancia
+    // no está en él hasta entonces, así que su "no existe" solo es definitivo si confiarEnFiltro
+    public String resolverUserId(String email) throws ExecutionException, InterruptedException {
+        return resolverUserId(email, true);
+    }
+
+    public String resolverUserId(String email, boolean confiarEnFiltro) throws ExecutionException, InterruptedException {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        String normalizado = normalizar(email);
+        Resolucion resolucion = resueltos.get(normalizado);
+        if (resolucion != null) {
+            if (resolucion.caducaEn - System.nanoTime() > 0) {
+                return resolucion.userId;
+            }
+            resueltos.remove(normalizado, resolucion);
+        }
+
+        // Caché negativa: un email descartado por el filtro no existe (bots probando emails al azar)
+        boolean conFiltro = filtroEmails.estaListo();
+        boolean descartado = conFiltro && !filtroEmails.podriaExistir(normalizado);
+        if (descartado && confiarEnFiltro) {
+            return null;
+        }
+
+        String userId;
+        DocumentSnapshot indice = referencia(email).get().get();
+        if (indice.exists() && indice.getString("userId") != null) {
+            userId = indice.getString("userId");
+        } else {
+            // Usuario anterior al índice: buscar por consulta y reparar el índice
+            userId = buscarPorConsulta(email);
+            if (userId != null) {
+                referencia(email).set(datosIndice(userId, email)).get();
+            }
+        }
+        if (userId != null) {
+            if (descartado) {
+                filtroEmails.agregar(normalizado); // Aún no estaba en el filtro de esta instancia
+            }
+            guardar(normalizado, userId);
+        } else if (conFiltro && !descartado) {
+            filtroEmails.registrarFalsoPositivo();
+        }
+        return userId;
+    }
+
+    // Registrar tras una escritura confirmada en Firestore
+    public void recordar(String email, String userId) {
+        if (email != null && userId != null) {
+            guardar(normalizar(email), userId);
+        }
+    }
+
+    private void guardar(String normalizado, String userId) {
+        resueltos.put(normalizado, new Resolucion(userId, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSegundos)));
+    }
+
+    // Las resoluciones caducadas que no se vuelven a consultar no deben quedarse en memoria
+    @Scheduled(fixedDelayString = "${usuarios.emails.purga-ms:60000}")
+    public void purgarCaducadas() {
+        long ahora = System.nanoTime();
+        resueltos.values().removeIf(resolucion -> resolucion.caducaEn - ahora <= 0);
+    }
+
+    // Olvidar solo la resolución en memoria (el documento del índice ya se actualizó)
+    public void olvidar(String email) {
+        if (email != null) {
+            resueltos.remove(normalizar(email));
+        }
+    }
+
+    // Descartar una resolución que ya no coincide con el documento del usuario
+    // La de memoria puede estar obsoleta aunque emails/{email} ya sea correcto: se olvida sin más.
+    // El documento del índice solo se borra si, releído en una transacción, sigue apuntando a ese
+    // usuario y el usuario ya no tiene ese email (otra escritura puede haberlo corregido entretanto)
+    public void descartar(String email, String userId) throws ExecutionException, InterruptedException {
+        if (email == null || userId == null) {
+            return;
+        }
+        resueltos.computeIfPresent(normalizar(email), (e, resolucion) -> resolucion.userId.equals(userId) ? null : resolucion);
+
+        DocumentReference entrada = referencia(email);
+        DocumentReference usuario = firestore.collection(USERS_COLLECTION).document(userId);
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot indice = transaction.get(entrada).get();
+            if (!indice.exists() || !userId.equals(indice.getString("userId"))) {
+                return false;
+            }
+            DocumentSnapshot doc = transaction.get(usuario).get();
+            if (doc.exists() && coincide(email, doc.getString("email"))) {
+                return false;
+            }
+            transaction.delete(entrada);
+            return true;
+        }).get();
+    }
+
+    private String buscarPorConsulta(String email) throws ExecutionException, InterruptedException {
+        List<QueryDocumentSnapshot> documents = firestore.collection(USERS_COLLECTION)
+                .whereEqualTo("email", email)
+                .limit(1)
+                .get().get().getDocuments();
+        if (documents.isEmpty() && !email.equals(normalizar(email))) {
+            documents = firestore.collection(USERS_COLLECTION)
+                    .whereEqualTo("email", normalizar(email))
+                    .limit(1)
+                    .get().get().getDocuments();
+        }
+        return documents.isEmpty() ? null : documents.get(0).getId();
+    }
+
+    // Backfill: crear emails/{email} para todos los usuarios existentes
+    public Map<String, Object> backfill() throws ExecutionException, InterruptedException {
+        int procesados = 0;
+        int escritos = 0;
+        int sinEmail = 0;
+        String ultimoId = null;
+
+        while (true) {
+            List<QueryDocumentSnapshot> pagina = paginaDeUsuarios(ultimoId);
+            if (pagina.isEmpty()) {
+                break;
+            }
+            WriteBatch batch = firestore.batch();
+            int enBatch = 0;
+            for (QueryDocumentSnapshot doc : pagina) {
+                procesados++;
+                String email = doc.getString("email");
+                if (email == null || email.isBlank()) {
+                    sinEmail++;
+                    continue;
+                }
+                batch.set(referencia(email), datosIndice(doc.getId(), email));
+                recordar(email, doc.getId());
+                enBatch++;
+            }
+            if (enBatch > 0) {
+                batch.commit().get();
+                escritos += enBatch;
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("usuariosProcesados", procesados);
+        resultado.put("entradasEscritas", escritos);
+        resultado.put("usuariosSinEmail", sinEmail);
+        return resultado;
+    }
+
+    // Verificar consistencia entre users.email y la colección emails
+    public Map<String, Object> verificarConsistencia() throws ExecutionException, InterruptedException {
+        Map<String, String> esperado = new HashMap<>();
+        List<String> duplicados = new ArrayList<>();
+        String ultimoId = null;
+        while (true) {
+            List<QueryDocumentSnapshot> pagina = paginaDeUsuarios(ultimoId);
+            if (pagina.isEmpty()) {
+                break;
+            }
+            for (QueryDocumentSnapshot doc : pagina) {
+                String email = doc.getString("email");
+                if (email == null || email.isBlank()) {
+                    continue;
+                }
+                String anterior = esperado.put(normalizar(email), doc.getId());
+                if (anterior != null && duplicados.size() < MAX_MUESTRAS) {
+                    duplicados.add(normalizar(email));
+                }
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+        }
+
+        List<String> faltantes = new ArrayList<>();
+        List<String> incorrectos = new ArrayList<>();
+        List<String> huerfanos = new ArrayList<>();
+        int totalFaltantes = 0;
+        int totalIncorrectos = 0;
+        int totalHuerfanos = 0;
+        Set<String> vistos = new HashSet<>();
+
+        ultimoId = null;
+        while (true) {
+            Query query = firestore.collection(COLLECTION_NAME)
+                    .orderBy(FieldPath.documentId())
+                    .limit(TAMAÑO_PAGINA);
+            if (ultimoId != null) {
+                query = query.startAfter(ultimoId);
+            }
+            List<QueryDocumentSnapshot> pagina = query.get().get().getDocuments();
+            if (pagina.isEmpty()) {
+                break;
+            }
+            for (QueryDocumentSnapshot doc : pagina) {
+                String email = doc.getString("email");
+                String userId = doc.getString("userId");
+                String esperadoId = email != null ? esperado.get(email) : null;
+                if (esperadoId == null) {
+                    totalHuerfanos++;
+                    if (huerfanos.size() < MAX_MUESTRAS) huerfanos.add(doc.getId());
+                } else {
+                    vistos.add(email);
+                    if (!esperadoId.equals(userId)) {
+                        totalIncorrectos++;
+                        if (incorrectos.size() < MAX_MUESTRAS) incorrectos.add(email);
+                    }
+                }
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+        }
+
+        for (String email : esperado.keySet()) {
+            if (!vistos.contains(email)) {
+                totalFaltantes++;
+                if (faltantes.size() < MAX_MUESTRAS) faltantes.add(email);
+            }
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("consistente", totalFaltantes == 0 && totalIncorrectos == 0 && totalHuerfanos == 0 && duplicados.isEmpty());
+        resultado.put("usuariosConEmail", esperado.size());
+        resultado.put("faltantes", totalFaltantes);
+        resultado.put("incorrectos", totalIncorrectos);
+        resultado.put("huerfanos", totalHuerfanos);
+        resultado.put("muestraFaltantes", faltantes);
+        resultado.put("muestraIncorrectos", incorrectos);
+        resultado.put("muestraHuerfanos", huerfanos);
+        resultado.put("muestraEmailsDuplicados", duplicados);
+        return resultado;
+    }
+
+    private List<QueryDocumentSnapshot> paginaDeUsuarios(String ultimoId) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(USERS_COLLECTION)
+                .select("email")
+                .orderBy(FieldPath.documentId())
+                .limit(TAMAÑO_PAGINA);
+        if (ultimoId != null) {
+            query = query.startAfter(ultimoId);
+        }
+        return query.get().get().getDocuments();
+    }
+}
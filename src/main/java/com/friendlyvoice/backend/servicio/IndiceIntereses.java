@@ -0,0 +1,388 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.UsuarioDTO;
+import com.friendlyvoice.backend.dto.UsuarioSugeridoDTO;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Índice invertido de intereses y hobbies para /descubrir ("gente como tú")
+// Cada usuario se interna una vez como entero y cada etiqueta normalizada apunta a un int[]
+// ordenado de esos enteros: una consulta solo recorre las listas de las etiquetas del usuario,
+// sin consultas array-contains-any a Firestore (limitadas a unos pocos valores).
+// Un único hilo escribe (el de ListenerUsuarios, compartido con el índice de búsqueda, también
+// para las escrituras de perfil); las listas se reemplazan por copias,
+// así que las consultas leen sin locks
+@Component
+public class IndiceIntereses implements ListenerUsuarios.Suscriptor {
+
+    private static final Logger log = LoggerFactory.getLogger(IndiceIntereses.class);
+
+    @Autowired
+    private ListenerUsuarios listenerUsuarios;
+
+    @Value("${usuarios.descubrir.indice-habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${usuarios.descubrir.peso-interes:2.0}")
+    private double pesoInteres;
+
+    @Value("${usuarios.descubrir.peso-hobby:1.0}")
+    private double pesoHobby;
+
+    // userId <-> número interno; los números no se reutilizan aunque el usuario se borre
+    private final Map<String, Integer> numeros = new ConcurrentHashMap<>();
+    private volatile String[] userIds = new String[1024];
+    private volatile int siguienteNumero = 0;
+
+    // Se sustituyen enteros al reconstruir, para no servir un índice a medio llenar
+    private volatile Map<String, Perfil> perfiles = new ConcurrentHashMap<>();
+    // etiqueta normalizada -> números de usuario ordenados
+    private volatile Map<String, int[]> intereses = new ConcurrentHashMap<>();
+    private volatile Map<String, int[]> hobbies = new ConcurrentHashMap<>();
+
+    private final AtomicLong consultas = new AtomicLong();
+    private final AtomicLong actualizaciones = new AtomicLong();
+    private volatile boolean listo = false;
+    private volatile long ultimaActualizacion = 0;
+
+    static final class Perfil {
+        final int numero;
+        final String name;
+        final String avatarUrl;
+        final List<String> intereses;
+        final List<String> hobbies;
+
+        Perfil(int numero, String name, String avatarUrl, Object intereses, Object hobbies) {
+            this.numero = numero;
+            this.name = name;
+            this.avatarUrl = avatarUrl;
+            this.intereses = etiquetas(intereses);
+            this.hobbies = etiquetas(hobbies);
+        }
+    }
+
+    private static final class Candidato {
+        final int numero;
+        final double puntos;
+
+        Candidato(int numero, double puntos) {
+            this.numero = numero;
+            this.puntos = puntos;
+        }
+    }
+
+    // Mejor puntuación primero; a igualdad, el número interno más bajo (orden estable)
+    private static final Comparator<Candidato> MEJOR_PRIMERO =
+            Comparator.comparingDouble((Candidato c) -> -c.puntos).thenComparingInt(c -> c.numero);
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            log.info("Índice de intereses deshabilitado");
+            return;
+        }
+        listenerUsuarios.suscribir(this);
+    }
+
+    @Override
+    public void reconstruir(List<QueryDocumentSnapshot> documentos) {
+        construir(documentos);
+        listo = true;
+        registrarActualizacion();
+        log.info("Índice de intereses construido: {} usuarios, {} intereses, {} hobbies",
+                perfiles.size(), intereses.size(), hobbies.size());
+    }
+
+    @Override
+    public void aplicar(List<DocumentChange> cambios) {
+        for (DocumentChange cambio : cambios) {
+            if (cambio.getType() == DocumentChange.Type.REMOVED) {
+                eliminar(cambio.getDocument().getId());
+            } else {
+                DocumentSnapshot doc = cambio.getDocument();
+                indexar(doc.getId(), doc.getString("name"), doc.getString("avatarUrl"), doc.get("interests"), doc.get("hobbies"));
+            }
+        }
+        registrarActualizacion();
+    }
+
+    @Override
+    public void detenido() {
+        listo = false;
+    }
+
+    private void registrarActualizacion() {
+        actualizaciones.incrementAndGet();
+        ultimaActualizacion = System.currentTimeMillis();
+    }
+
+    // Construcción en bloque: insertar uno a uno en arrays ordenados sería cuadrático en las etiquetas populares
+    private void construir(List<QueryDocumentSnapshot> documentos) {
+        Map<String, Perfil> nuevosPerfiles = new ConcurrentHashMap<>(documentos.size() * 2);
+        Map<String, ListaEnteros> porInteres = new HashMap<>();
+        Map<String, ListaEnteros> porHobby = new HashMap<>();
+        for (QueryDocumentSnapshot doc : documentos) {
+            Perfil perfil = new Perfil(internar(doc.getId()), doc.getString("name"), doc.getString("avatarUrl"),
+                    doc.get("interests"), doc.get("hobbies"));
+            nuevosPerfiles.put(doc.getId(), perfil);
+            for (String etiqueta : perfil.intereses) {
+                porInteres.computeIfAbsent(etiqueta, e -> new ListaEnteros()).agregar(perfil.numero);
+            }
+            for (String etiqueta : perfil.hobbies) {
+                porHobby.computeIfAbsent(etiqueta, e -> new ListaEnteros()).agregar(perfil.numero);
+            }
+        }
+        intereses = compactar(porInteres);
+        hobbies = compactar(porHobby);
+        perfiles = nuevosPerfiles;
+    }
+
+    private static Map<String, int[]> compactar(Map<String, ListaEnteros> listas) {
+        Map<String, int[]> resultado = new ConcurrentHashMap<>(listas.size() * 2);
+        for (Map.Entry<String, ListaEnteros> entrada : listas.entrySet()) {
+            resultado.put(entrada.getKey(), entrada.getValue().ordenado());
+        }
+        return resultado;
+    }
+
+    // Escritura de perfil hecha por este backend: se indexa sin esperar al evento del listener
+    public void actualizar(UsuarioDTO usuario) {
+        if (!habilitado || usuario == null) {
+            return;
+        }
+        listenerUsuarios.ejecutar(() -> indexar(usuario.getId(), usuario.getName(), usuario.getAvatarUrl(),
+                usuario.getInterests(), usuario.getHobbies()));
+    }
+
+    private void indexar(String userId, String name, String avatarUrl, Object listaIntereses, Object listaHobbies) {
+        Perfil nuevo = new Perfil(internar(userId), name, avatarUrl, listaIntereses, listaHobbies);
+        Perfil anterior = perfiles.put(userId, nuevo);
+        List<String> interesesAnteriores = anterior != null ? anterior.intereses : Collections.emptyList();
+        List<String> hobbiesAnteriores = anterior != null ? anterior.hobbies : Collections.emptyList();
+        sincronizarListas(intereses, interesesAnteriores, nuevo.intereses, nuevo.numero);
+        sincronizarListas(hobbies, hobbiesAnteriores, nuevo.hobbies, nuevo.numero);
+    }
+
+    private void eliminar(String userId) {
+        Perfil anterior = perfiles.remove(userId);
+        if (anterior != null) {
+            sincronizarListas(intereses, anterior.intereses, Collections.emptyList(), anterior.numero);
+            sincronizarListas(hobbies, anterior.hobbies, Collections.emptyList(), anterior.numero);
+        }
+    }
+
+    // Solo se tocan las etiquetas que cambian
+    private static void sincronizarListas(Map<String, int[]> listas, List<String> antes, List<String> despues, int numero) {
+        for (String etiqueta : antes) {
+            if (!despues.contains(etiqueta)) {
+                listas.computeIfPresent(etiqueta, (e, lista) -> {
+                    int[] resultado = quitarOrdenado(lista, numero);
+                    return resultado.length == 0 ? null : resultado;
+                });
+            }
+        }
+        for (String etiqueta : despues) {
+            if (!antes.contains(etiqueta)) {
+                listas.compute(etiqueta, (e, lista) -> lista == null ? new int[]{numero} : insertarOrdenado(lista, numero));
+            }
+        }
+    }
+
+    private static int[] insertarOrdenado(int[] lista, int numero) {
+        int posicion = Arrays.binarySearch(lista, numero);
+        if (posicion >= 0) {
+            return lista;
+        }
+        posicion = -posicion - 1;
+        int[] resultado = new int[lista.length + 1];
+        System.arraycopy(lista, 0, resultado, 0, posicion);
+        resultado[posicion] = numero;
+        System.arraycopy(lista, posicion, resultado, posicion + 1, lista.length - posicion);
+        return resultado;
+    }
+
+    private static int[] quitarOrdenado(int[] lista, int numero) {
+        int posicion = Arrays.binarySearch(lista, numero);
+        if (posicion < 0) {
+            return lista;
+        }
+        int[] resultado = new int[lista.length - 1];
+        System.arraycopy(lista, 0, resultado, 0, posicion);
+        System.arraycopy(lista, posicion + 1, resultado, posicion, lista.length - posicion - 1);
+        return resultado;
+    }
+
+    // Solo desde el hilo del índice; el ID se publica antes que cualquier lista que contenga su número
+    private int internar(String userId) {
+        Integer existente = numeros.get(userId);
+        if (existente != null) {
+            return existente;
+        }
+        int numero = siguienteNumero;
+        String[] actuales = userIds;
+        if (numero == actuales.length) {
+            actuales = Arrays.copyOf(actuales, actuales.length * 2);
+        }
+        actuales[numero] = userId;
+        userIds = actuales;
+        numeros.put(userId, numero);
+        siguienteNumero = numero + 1;
+        return numero;
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    // Los K usuarios con más afinidad: suma de pesos de las etiquetas compartidas,
+    // ponderadas por rareza (compartir una etiqueta poco común cuenta más).
+    // excluir se evalúa solo para los candidatos que entrarían en el top-K
+    public List<UsuarioSugeridoDTO> sugerir(String userId, int limite, Predicate<String> excluir) {
+        consultas.incrementAndGet();
+        Map<String, Perfil> perfilesActuales = perfiles;
+        Perfil propio = perfilesActuales.get(userId);
+        if (propio == null || limite <= 0) {
+            return Collections.emptyList();
+        }
+        // Se leen antes que las listas: cualquier número que aparezca en ellas ya tiene ID publicado
+        String[] ids = userIds;
+        // Solo los candidatos que comparten alguna etiqueta: memoria proporcional a ellos, no al total de usuarios
+        Map<Integer, Double> puntos = new HashMap<>();
+        int total = Math.max(1, perfilesActuales.size());
+        acumular(propio.intereses, intereses, pesoInteres, total, ids.length, puntos);
+        acumular(propio.hobbies, hobbies, pesoHobby, total, ids.length, puntos);
+
+        // Heap acotado con el peor candidato en la cima
+        PriorityQueue<Candidato> mejores = new PriorityQueue<>(limite + 1, MEJOR_PRIMERO.reversed());
+        for (Map.Entry<Integer, Double> entrada : puntos.entrySet()) {
+            int numero = entrada.getKey();
+            if (numero == propio.numero) {
+                continue;
+            }
+            Candidato candidato = new Candidato(numero, entrada.getValue());
+            if (mejores.size() == limite && MEJOR_PRIMERO.compare(candidato, mejores.peek()) >= 0) {
+                continue;
+            }
+            if (excluir.test(ids[numero])) {
+                continue;
+            }
+            mejores.offer(candidato);
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        }
+
+        List<Candidato> ordenados = new ArrayList<>(mejores);
+        ordenados.sort(MEJOR_PRIMERO);
+        List<UsuarioSugeridoDTO> sugeridos = new ArrayList<>(ordenados.size());
+        for (Candidato candidato : ordenados) {
+            Perfil perfil = perfilesActuales.get(ids[candidato.numero]);
+            if (perfil != null) {
+                sugeridos.add(aSugerido(ids[candidato.numero], perfil, propio, candidato.puntos));
+            }
+        }
+        return sugeridos;
+    }
+
+    private static void acumular(List<String> etiquetas, Map<String, int[]> listas, double peso, int total,
+                                 int publicados, Map<Integer, Double> puntos) {
+        for (String etiqueta : etiquetas) {
+            int[] lista = listas.get(etiqueta);
+            if (lista == null) {
+                continue;
+            }
+            double valor = peso * Math.log(1.0 + (double) total / lista.length);
+            for (int numero : lista) {
+                if (numero >= publicados) {
+                    continue; // Internado después de leer userIds: entrará en la siguiente consulta
+                }
+                puntos.merge(numero, valor, Double::sum);
+            }
+        }
+    }
+
+    // Respaldo mientras el índice no está listo: documentos candidatos traídos de Firestore
+    // Sin frecuencias globales, cada etiqueta compartida suma solo su peso
+    public List<UsuarioSugeridoDTO> sugerirDesdeDocumentos(DocumentSnapshot propioDoc, Collection<? extends DocumentSnapshot> documentos,
+                                                          int limite, Predicate<String> excluir) {
+        Perfil propio = new Perfil(-1, propioDoc.getString("name"), propioDoc.getString("avatarUrl"),
+                propioDoc.get("interests"), propioDoc.get("hobbies"));
+        List<UsuarioSugeridoDTO> sugeridos = new ArrayList<>();
+        Set<String> vistos = new HashSet<>();
+        for (DocumentSnapshot doc : documentos) {
+            if (doc.getId().equals(propioDoc.getId()) || !vistos.add(doc.getId()) || excluir.test(doc.getId())) {
+                continue;
+            }
+            Perfil perfil = new Perfil(-1, doc.getString("name"), doc.getString("avatarUrl"), doc.get("interests"), doc.get("hobbies"));
+            UsuarioSugeridoDTO sugerido = aSugerido(doc.getId(), perfil, propio, 0);
+            sugerido.setScore(sugerido.getSharedInterests().size() * pesoInteres + sugerido.getSharedHobbies().size() * pesoHobby);
+            if (sugerido.getScore() > 0) {
+                sugeridos.add(sugerido);
+            }
+        }
+        sugeridos.sort(Comparator.comparingDouble(UsuarioSugeridoDTO::getScore).reversed()
+                .thenComparing(UsuarioSugeridoDTO::getId));
+        return sugeridos.size() > limite ? new ArrayList<>(sugeridos.subList(0, limite)) : sugeridos;
+    }
+
+    private static UsuarioSugeridoDTO aSugerido(String userId, Perfil perfil, Perfil propio, double puntos) {
+        List<String> interesesComunes = new ArrayList<>(perfil.intereses);
+        interesesComunes.retainAll(propio.intereses);
+        List<String> hobbiesComunes = new ArrayList<>(perfil.hobbies);
+        hobbiesComunes.retainAll(propio.hobbies);
+        return new UsuarioSugeridoDTO(userId, perfil.name, perfil.avatarUrl, puntos, interesesComunes, hobbiesComunes);
+    }
+
+    // Etiquetas normalizadas y sin repetir ("Música " y "musica" son la misma)
+    static List<String> etiquetas(Object valor) {
+        if (!(valor instanceof List)) {
+            return Collections.emptyList();
+        }
+        Set<String> etiquetas = new LinkedHashSet<>();
+        for (Object elemento : (List<?>) valor) {
+            if (elemento instanceof String) {
+                String etiqueta = NormalizadorTexto.normalizar((String) elemento);
+                if (!etiqueta.isEmpty()) {
+                    etiquetas.add(etiqueta);
+                }
+            }
+        }
+        return etiquetas.isEmpty() ? Collections.emptyList() : new ArrayList<>(etiquetas);
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, int[]> listasIntereses = intereses;
+        Map<String, int[]> listasHobbies = hobbies;
+        long entradas = 0;
+        for (int[] lista : listasIntereses.values()) {
+            entradas += lista.length;
+        }
+        for (int[] lista : listasHobbies.values()) {
+            entradas += lista.length;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("habilitado", habilitado);
+        stats.put("listo", listo);
+        stats.put("usuarios", perfiles.size());
+        stats.put("usuariosInternados", siguienteNumero);
+        stats.put("intereses", listasIntereses.size());
+        stats.put("hobbies", listasHobbies.size());
+        stats.put("entradasEnListas", entradas);
+        // Solo los int[] de las listas (4 bytes por entrada), sin cabeceras ni mapas
+        stats.put("bytesListas", entradas * Integer.BYTES);
+        stats.put("consultas", consultas.get());
+        stats.put("actualizaciones", actualizaciones.get());
+        stats.put("ultimaActualizacion", ultimaActualizacion);
+        return stats;
+    }
+}
@@ -0,0 +1,188 @@
+package com.friendlyvoice.backend.servicio;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Contador de intentos fallidos de login en memoria, con ventana deslizante por cuenta
+// Cada cuenta guarda un estado inmutable (marcas de tiempo de los últimos intentos + bloqueo)
+// que se reemplaza con compareAndSet: sin locks ni transacciones en el camino del login.
+// Solo el hilo que gana el CAS que alcanza el umbral ve BLOQUEADA, así el bloqueo se persiste una vez
+@Component
+public class LimitadorIntentosLogin {
+
+    // Regla de negocio: bloquear al llegar a 3 intentos fallidos
+    public static final int UMBRAL_BLOQUEO = 3;
+
+    // 0 = sin ventana (los intentos solo se reinician con un login correcto o al desbloquear)
+    @Value("${login.intentos.ventana-minutos:15}")
+    private long ventanaMinutos;
+
+    private final Map<String, Cuenta> cuentas = new ConcurrentHashMap<>();
+
+    private final AtomicLong intentosRegistrados = new AtomicLong();
+    private final AtomicLong bloqueos = new AtomicLong();
+    private final AtomicLong intentosEnCuentaBloqueada = new AtomicLong();
+
+    public enum Resultado {
+        REGISTRADO,
+        BLOQUEADA,
+        YA_BLOQUEADA
+    }
+
+    private static final class Estado {
+        final long[] marcas;
+        final boolean bloqueada;
+
+        Estado(long[] marcas, boolean bloqueada) {
+            this.marcas = marcas;
+            this.bloqueada = bloqueada;
+        }
+    }
+
+    private static final class Cuenta {
+        final AtomicReference<Estado> estado;
+        // Hay cambios que el volcado periódico aún no ha escrito en Firestore
+        final AtomicBoolean pendiente = new AtomicBoolean();
+        volatile long ultimoUso;
+
+        Cuenta(Estado inicial, long ahora) {
+            this.estado = new AtomicReference<>(inicial);
+            this.ultimoUso = ahora;
+        }
+    }
+
+    public boolean conoce(String userId) {
+        return cuentas.containsKey(userId);
+    }
+
+    // Estado inicial a partir de lo persistido en Firestore
+    // Los intentos persistidos no tienen fecha: se cuentan como ocurridos ahora
+    public void sembrar(String userId, int intentosPersistidos, boolean bloqueada) {
+        long ahora = System.nanoTime();
+        long[] marcas = new long[Math.max(0, Math.min(intentosPersistidos, UMBRAL_BLOQUEO))];
+        Arrays.fill(marcas, ahora);
+        cuentas.putIfAbsent(userId, new Cuenta(new Estado(marcas, bloqueada), ahora));
+    }
+
+    // Registrar un intento fallido; la cuenta debe haberse sembrado antes
+    public Resultado registrarFallo(String userId) {
+        Cuenta cuenta = cuentas.get(userId);
+        if (cuenta == null) {
+            throw new IllegalStateException("Cuenta sin sembrar en el limitador: " + userId);
+        }
+        long ahora = System.nanoTime();
+        while (true) {
+            Estado actual = cuenta.estado.get();
+            if (actual.bloqueada) {
+                intentosEnCuentaBloqueada.incrementAndGet();
+                return Resultado.YA_BLOQUEADA;
+            }
+            long[] vigentes = vigentes(actual.marcas, ahora);
+            long[] marcas = Arrays.copyOf(vigentes, vigentes.length + 1);
+            marcas[vigentes.length] = ahora;
+            if (marcas.length > UMBRAL_BLOQUEO) {
+                marcas = Arrays.copyOfRange(marcas, marcas.length - UMBRAL_BLOQUEO, marcas.length);
+            }
+            boolean bloquear = marcas.length >= UMBRAL_BLOQUEO;
+            if (cuenta.estado.compareAndSet(actual, new Estado(marcas, bloquear))) {
+                cuenta.pendiente.set(true);
+                cuenta.ultimoUso = ahora;
+                intentosRegistrados.incrementAndGet();
+                if (bloquear) {
+                    bloqueos.incrementAndGet();
+                    return Resultado.BLOQUEADA;
+                }
+                return Resultado.REGISTRADO;
+            }
+        }
+    }
+
+    // null si la cuenta no está en memoria (hay que consultar Firestore)
+    public Boolean bloqueada(String userId) {
+        Cuenta cuenta = cuentas.get(userId);
+        return cuenta == null ? null : cuenta.estado.get().bloqueada;
+    }
+
+    public int intentos(String userId) {
+        Cuenta cuenta = cuentas.get(userId);
+        return cuenta == null ? 0 : contar(cuenta.estado.get(), System.nanoTime());
+    }
+
+    // Volver a encolar una cuenta cuyo volcado falló
+    public void marcarPendiente(String userId) {
+        Cuenta cuenta = cuentas.get(userId);
+        if (cuenta != null) {
+            cuenta.pendiente.set(true);
+        }
+    }
+
+    // Olvidar la cuenta tras un login correcto, un desbloqueo (también el hecho en otra instancia,
+    // que llega por CuentasBloqueadas) o un cambio manual de intentos
+    public void olvidar(String userId) {
+        cuentas.remove(userId);
+    }
+
+    // Intentos vigentes de las cuentas con cambios sin persistir (y se limpia la marca)
+    public Map<String, Integer> extraerPendientes() {
+        Map<String, Integer> pendientes = new HashMap<>();
+        long ahora = System.nanoTime();
+        for (Map.Entry<String, Cuenta> entrada : cuentas.entrySet()) {
+            if (entrada.getValue().pendiente.compareAndSet(true, false)) {
+                pendientes.put(entrada.getKey(), contar(entrada.getValue().estado.get(), ahora));
+            }
+        }
+        return pendientes;
+    }
+
+    // Descartar cuentas sin actividad reciente ni cambios pendientes (se vuelven a sembrar si hace falta)
+    public int purgarInactivas() {
+        long ahora = System.nanoTime();
+        long inactividad = TimeUnit.MINUTES.toNanos(Math.max(ventanaMinutos, 15));
+        int purgadas = 0;
+        Iterator<Map.Entry<String, Cuenta>> it = cuentas.entrySet().iterator();
+        while (it.hasNext()) {
+            Cuenta cuenta = it.next().getValue();
+            if (!cuenta.pendiente.get() && ahora - cuenta.ultimoUso > inactividad) {
+                it.remove();
+                purgadas++;
+            }
+        }
+        return purgadas;
+    }
+
+    // Con la cuenta bloqueada el recuento queda congelado: la ventana no lo reduce,
+    // así nunca se persiste isBlocked=true con menos intentos que el umbral
+    private int contar(Estado estado, long ahora) {
+        return estado.bloqueada ? estado.marcas.length : vigentes(estado.marcas, ahora).length;
+    }
+
+    private long[] vigentes(long[] marcas, long ahora) {
+        if (ventanaMinutos <= 0 || marcas.length == 0) {
+            return marcas;
+        }
+        long ventana = TimeUnit.MINUTES.toNanos(ventanaMinutos);
+        int primera = 0;
+        while (primera < marcas.length && ahora - marcas[primera] > ventana) {
+            primera++;
+        }
+        return primera == 0 ? marcas : Arrays.copyOfRange(marcas, primera, marcas.length);
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cuentas", cuentas.size());
+        stats.put("umbralBloqueo", UMBRAL_BLOQUEO);
+        stats.put("ventanaMinutos", ventanaMinutos);
+        stats.put("intentosRegistrados", intentosRegistrados.get());
+        stats.put("bloqueos", bloqueos.get());
+        stats.put("intentosEnCuentaBloqueada", intentosEnCuentaBloqueada.get());
+        return stats;
+    }
+}
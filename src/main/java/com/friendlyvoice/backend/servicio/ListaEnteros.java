@@ -0,0 +1,31 @@
+package com.friendlyvoice.backend.servicio;
+
+import java.util.Arrays;
+
+// Array de enteros que crece sin cajas (Integer); para construir índices en bloque
+final class ListaEnteros {
+
+    int[] valores;
+    int tamano = 0;
+
+    ListaEnteros() {
+        this(8);
+    }
+
+    ListaEnteros(int capacidad) {
+        this.valores = new int[Math.max(1, capacidad)];
+    }
+
+    void agregar(int valor) {
+        if (tamano == valores.length) {
+            valores = Arrays.copyOf(valores, tamano * 2);
+        }
+        valores[tamano++] = valor;
+    }
+
+    int[] ordenado() {
+        int[] resultado = Arrays.copyOf(valores, tamano);
+        Arrays.sort(resultado);
+        return resultado;
+    }
+}
@@ -0,0 +1,131 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Único snapshot listener sobre users, compartido por los índices en memoria (búsqueda por nombre
+// e intereses): la colección se descarga una sola vez al arrancar y cada cambio se recibe una vez.
+// Todo se ejecuta en un único hilo, que es también el único escritor de los índices
+@Component
+public class ListenerUsuarios {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerUsuarios.class);
+
+    private static final String COLLECTION_NAME = "users";
+    private static final long REINTENTO_SEGUNDOS = 30;
+
+    public interface Suscriptor {
+        // Primera instantánea tras (re)registrar el listener: la colección completa
+        void reconstruir(List<QueryDocumentSnapshot> documentos);
+
+        void aplicar(List<DocumentChange> cambios);
+
+        // Listener caído: no se reciben cambios hasta la siguiente reconstrucción
+        void detenido();
+    }
+
+    @Autowired
+    private Firestore firestore;
+
+    private final List<Suscriptor> suscriptores = new CopyOnWriteArrayList<>();
+    private final AtomicLong instantaneas = new AtomicLong();
+    private final AtomicLong reconstrucciones = new AtomicLong();
+
+    private ScheduledExecutorService ejecutor;
+    private volatile ListenerRegistration registro;
+    // Solo desde el hilo del listener
+    private boolean reconstruir = true;
+
+    @PostConstruct
+    public void iniciar() {
+        ejecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "listener-usuarios");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        ListenerRegistration actual = registro;
+        if (actual != null) {
+            actual.remove();
+        }
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    // El listener se registra con el primer suscriptor. Uno que llega cuando la instantánea
+    // completa ya se entregó obliga a volver a registrarlo para recibirla
+    public void suscribir(Suscriptor suscriptor) {
+        ejecutor.execute(() -> {
+            suscriptores.add(suscriptor);
+            if (registro == null || !reconstruir) {
+                registrarListener();
+            }
+        });
+    }
+
+    // Tareas que deben ejecutarse en el hilo del listener (escrituras en los índices)
+    public void ejecutar(Runnable tarea) {
+        ScheduledExecutorService actual = ejecutor;
+        if (actual != null) {
+            actual.execute(tarea);
+        }
+    }
+
+    private void registrarListener() {
+        ListenerRegistration anterior = registro;
+        if (anterior != null) {
+            anterior.remove();
+        }
+        reconstruir = true;
+        registro = firestore.collection(COLLECTION_NAME).addSnapshotListener(ejecutor, (snapshot, error) -> {
+            if (error != null) {
+                log.error("Listener de users detenido; se reintenta en {} s", REINTENTO_SEGUNDOS, error);
+                suscriptores.forEach(Suscriptor::detenido);
+                ejecutor.schedule(this::registrarListener, REINTENTO_SEGUNDOS, TimeUnit.SECONDS);
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+            instantaneas.incrementAndGet();
+            if (reconstruir) {
+                List<QueryDocumentSnapshot> documentos = snapshot.getDocuments();
+                for (Suscriptor suscriptor : suscriptores) {
+                    suscriptor.reconstruir(documentos);
+                }
+                reconstruir = false;
+                reconstrucciones.incrementAndGet();
+            } else {
+                List<DocumentChange> cambios = snapshot.getDocumentChanges();
+                for (Suscriptor suscriptor : suscriptores) {
+                    suscriptor.aplicar(cambios);
+                }
+            }
+        });
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("suscriptores", suscriptores.size());
+        stats.put("registrado", registro != null);
+        stats.put("instantaneas", instantaneas.get());
+        stats.put("reconstrucciones", reconstrucciones.get());
+        return stats;
+    }
+}
@@ -1,14 +1,23 @@
 package com.friendlyvoice.backend.servicio;
 
+import com.friendlyvoice.backend.dto.ConversacionDTO;
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.friendlyvoice.backend.dto.PaginaMensajesDTO;
 import com.friendlyvoice.backend.modelo.Mensaje;
 import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,9 +26,44 @@ public class MensajeServicio {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private ContadoresNoLeidos contadoresNoLeidos;
+
+    @Autowired
+    private PlanificadorConsultas planificador;
+
     private static final String COLLECTION_NAME = "messages";
+    private static final int MAX_VERSIONES_CHAT = 10_000;
+
+    // Clave de la respuesta sin paginar dentro de los sellos de un chat
+    private static final String CHAT_COMPLETO = "*";
+
+    @Value("${mensajes.etag.ttl-ms:5000}")
+    private long ttlVersionMs;
+
+    @Value("${paginacion.tamano-defecto:20}")
+    private int tamanoPaginaDefecto;
+
+    @Value("${paginacion.max-tamano:100}")
+    private int maxTamanoPagina;
+
+    // chatId -> (página pedida -> última versión calculada)
+    // Agrupado por chat para descartar de una vez los sellos de todas sus páginas
+    private final Map<String, Map<String, SelloVersion>> versionesChat = new ConcurrentHashMap<>();
+
+    private static final class SelloVersion {
+        final String version;
+        final long expiraEn;
+
+        SelloVersion(String version, long expiraEn) {
+            this.version = version;
+            this.expiraEn = expiraEn;
+        }
+    }
 
     // Enviar mensaje directo
+    // El mensaje, el resumen del chat (último mensaje y no leídos del destinatario) y el contador
+    // total de no leídos del destinatario se escriben en un batch
     public Mensaje enviarMensaje(String senderId, String recipientId, String voiceUrl) throws ExecutionException, InterruptedException {
         String chatId = generarChatId(senderId, recipientId);
         String messageId = "dm-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 9);
@@ -30,244 +74,474 @@ public class MensajeServicio {
         mensaje.setSenderId(senderId);
         mensaje.setRecipientId(recipientId);
         mensaje.setVoiceUrl(voiceUrl);
-        mensaje.setCreatedAt(Instant.now().toString());
+        mensaje.setCreatedAt(ResumenesChat.marcaDeTiempo(Instant.now()));
         mensaje.setIsRead(false);
 
-        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(messageId);
-        ApiFuture<WriteResult> future = docRef.set(mensaje);
-        future.get();
+        Map<String, Object> resumen = ResumenesChat.datosConUltimoMensaje(mensaje);
+        resumen.put("unread", Map.of(recipientId, FieldValue.increment(1)));
+
+        WriteBatch batch = firestore.batch();
+        batch.set(firestore.collection(COLLECTION_NAME).document(messageId), mensaje);
+        batch.set(referenciaResumen(chatId), resumen, SetOptions.merge());
+        batch.set(contadoresNoLeidos.shardAleatorio(recipientId), ContadoresNoLeidos.incremento(1), SetOptions.merge());
+        ApiFuture<List<WriteResult>> future = batch.commit();
+        try {
+            future.get();
+        } finally {
+            versionesChat.remove(chatId);
+        }
 
         return mensaje;
     }
 
     // Obtener mensajes de un chat
     public List<Mensaje> obtenerMensajesDeChat(String userId, String chatPartnerId) throws ExecutionException, InterruptedException {
+        return obtenerMensajesDeChatVersionado(userId, chatPartnerId).getValor();
+    }
+
+    // Todos los mensajes del chat con su versión (respuesta sin paginar, para clientes antiguos)
+    public Versionado<List<Mensaje>> obtenerMensajesDeChatVersionado(String userId, String chatPartnerId) throws ExecutionException, InterruptedException {
         String chatId = generarChatId(userId, chatPartnerId);
+        // El resumen (cursores de lectura) se lee en paralelo con los mensajes
+        ApiFuture<DocumentSnapshot> resumen = referenciaResumen(chatId).get();
+        List<QueryDocumentSnapshot> documents = consultarMensajesDeChat(chatId);
 
-        try {
-            // Intento 1: Intentar con orderBy si existe el índice
-            ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("chatId", chatId)
-                    .orderBy("createdAt", Query.Direction.ASCENDING)
-                    .get();
-
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-            return documents.stream()
-                    .map(this::convertirAMensaje)
-                    .collect(Collectors.toList());
-        } catch (ExecutionException e) {
-            // Firestore errors are wrapped in ExecutionException
-            Throwable cause = e.getCause();
-            String errorMessage = (cause != null ? cause.getMessage() : e.getMessage());
-            
-            // Si falla por falta de índice, obtener sin orderBy y ordenar en memoria
-            if (errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"))) {
-                // Fallback: obtener sin orderBy
-                ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                        .whereEqualTo("chatId", chatId)
-                        .get();
-
-                List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-                // Ordenar en memoria por createdAt
-                return documents.stream()
-                        .map(this::convertirAMensaje)
-                        .sorted((m1, m2) -> {
-                            String date1 = m1.getCreatedAt() != null ? m1.getCreatedAt() : "";
-                            String date2 = m2.getCreatedAt() != null ? m2.getCreatedAt() : "";
-                            return date1.compareTo(date2);
-                        })
-                        .collect(Collectors.toList());
-            } else {
-                // Si es otro error, re-lanzar
-                throw e;
+        List<Mensaje> mensajes = new ArrayList<>(documents.size());
+        for (QueryDocumentSnapshot doc : documents) {
+            mensajes.add(convertirAMensaje(doc));
+        }
+        String version = versionDe(documents, aplicarCursores(mensajes, resumen));
+        guardarSello(chatId, CHAT_COMPLETO, version);
+        return new Versionado<>(mensajes, version);
+    }
+
+    // Página del historial (keyset por createdAt + ID de documento)
+    // Sin cursores: los limite mensajes más recientes. Con antes: los anteriores a ese punto
+    // (scroll hacia atrás). Con despues: los siguientes a ese punto (mensajes nuevos).
+    // Los elementos van siempre en orden cronológico
+    public Versionado<PaginaMensajesDTO> obtenerPaginaDeChatVersionado(String userId, String chatPartnerId, Integer limite,
+                                                                     String antes, String despues) throws ExecutionException, InterruptedException {
+        if (antes != null && despues != null) {
+            throw new IllegalArgumentException("Usa before o after, no ambos");
+        }
+        String chatId = generarChatId(userId, chatPartnerId);
+        int tamano = tamanoPagina(limite);
+        String[] posicion = decodificarPosicion(despues != null ? despues : antes);
+        boolean haciaAtras = despues == null;
+        ApiFuture<DocumentSnapshot> resumen = referenciaResumen(chatId).get();
+
+        // Se pide un mensaje extra para saber si quedan más en esa dirección
+        Query.Direction direccion = haciaAtras ? Query.Direction.DESCENDING : Query.Direction.ASCENDING;
+        Query query = firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("chatId", chatId)
+                .orderBy("createdAt", direccion)
+                .orderBy(FieldPath.documentId(), direccion)
+                .limit(tamano + 1);
+        if (posicion != null) {
+            query = query.startAfter(posicion[0], posicion[1]);
+        }
+        List<QueryDocumentSnapshot> documents = consultarPagina(query,
+                "Falta el índice compuesto de messages (chatId, createdAt, __name__) para paginar el chat");
+
+        boolean hayMas = documents.size() > tamano;
+        List<QueryDocumentSnapshot> pagina = new ArrayList<>(hayMas ? documents.subList(0, tamano) : documents);
+        if (haciaAtras) {
+            Collections.reverse(pagina);
+        }
+        List<Mensaje> mensajes = new ArrayList<>(pagina.size());
+        for (QueryDocumentSnapshot doc : pagina) {
+            mensajes.add(convertirAMensaje(doc));
+        }
+
+        String cursorAntes;
+        String cursorDespues;
+        if (pagina.isEmpty()) {
+            cursorAntes = null;
+            cursorDespues = despues; // Sin mensajes nuevos: se sigue preguntando desde el mismo punto
+        } else {
+            Mensaje primero = mensajes.get(0);
+            Mensaje ultimo = mensajes.get(mensajes.size() - 1);
+            // Hacia atrás solo se sabe si quedan anteriores cuando se pagina en esa dirección;
+            // al pedir mensajes nuevos, los anteriores existen si se partió de un cursor
+            boolean hayAnteriores = haciaAtras ? hayMas : posicion != null;
+            cursorAntes = hayAnteriores ? codificarPosicion(primero) : null;
+            cursorDespues = codificarPosicion(ultimo);
+        }
+
+        String version = versionDe(pagina, aplicarCursores(mensajes, resumen));
+        guardarSello(chatId, clavePagina(tamano, antes, despues), version);
+        return new Versionado<>(new PaginaMensajesDTO(mensajes, cursorAntes, cursorDespues), version);
+    }
+
+    // Sin respaldo en memoria: sin el índice compuesto habría que leer la colección completa
+    private List<QueryDocumentSnapshot> consultarPagina(Query query, String indiceRequerido) throws ExecutionException, InterruptedException {
+        return Futuros.esperar(consultarPaginaAsync(query, indiceRequerido));
+    }
+
+    private CompletableFuture<List<QueryDocumentSnapshot>> consultarPaginaAsync(Query query, String indiceRequerido) {
+        return Futuros.completable(query.get()).handle((snapshot, error) -> {
+            if (error == null) {
+                return snapshot.getDocuments();
             }
-        } catch (Exception e) {
-            // Capturar cualquier otra excepción
-            String errorMessage = e.getMessage();
-            if (errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"))) {
-                // Fallback: obtener sin orderBy
-                try {
-                    ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                            .whereEqualTo("chatId", chatId)
-                            .get();
-
-                    List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-                    // Ordenar en memoria por createdAt
-                    return documents.stream()
-                            .map(this::convertirAMensaje)
-                            .sorted((m1, m2) -> {
-                                String date1 = m1.getCreatedAt() != null ? m1.getCreatedAt() : "";
-                                String date2 = m2.getCreatedAt() != null ? m2.getCreatedAt() : "";
-                                return date1.compareTo(date2);
-                            })
-                            .collect(Collectors.toList());
-                } catch (Exception fallbackError) {
-                    throw new RuntimeException("Error al obtener mensajes: " + fallbackError.getMessage(), fallbackError);
-                }
-            } else {
-                throw new RuntimeException("Error al obtener mensajes: " + e.getMessage(), e);
+            if (Futuros.esFaltaDeIndice(error)) {
+                throw new IllegalStateException(indiceRequerido, Futuros.causa(error));
             }
+            throw new CompletionException(Futuros.causa(error));
+        });
+    }
+
+    // Posición de un mensaje en el orden del chat: createdAt|id
+    private static String codificarPosicion(Mensaje mensaje) {
+        return Cursores.codificar(Objects.toString(mensaje.getCreatedAt(), "") + "|" + mensaje.getId());
+    }
+
+    private static String[] decodificarPosicion(String cursor) {
+        String valor = Cursores.decodificar(cursor);
+        if (valor == null) {
+            return null;
+        }
+        int separador = valor.lastIndexOf('|');
+        if (separador < 0) {
+            throw new IllegalArgumentException("Cursor inválido: " + cursor);
+        }
+        return new String[]{valor.substring(0, separador), valor.substring(separador + 1)};
+    }
+
+    // isRead derivado de los cursores de lectura; devuelve el resumen leído
+    private static DocumentSnapshot aplicarCursores(List<Mensaje> mensajes, ApiFuture<DocumentSnapshot> resumen) throws ExecutionException, InterruptedException {
+        DocumentSnapshot documento = resumen.get();
+        ResumenesChat.aplicarCursores(mensajes, documento);
+        return documento;
+    }
+
+    // Versión de la lista más la del resumen del chat, que guarda los cursores de lectura
+    // (avanzar un cursor cambia isRead sin tocar los mensajes, pero sí el updateTime del resumen)
+    private static String versionDe(List<? extends DocumentSnapshot> documents, DocumentSnapshot resumen) {
+        String versionResumen = resumen != null && resumen.exists() ? Versionado.version(resumen.getUpdateTime()) : null;
+        return versionDe(documents) + "-" + (versionResumen != null ? versionResumen : "0");
+    }
+
+    // Mayor updateTime más el número de mensajes (el número detecta borrados, que no cambian ningún updateTime)
+    private static String versionDe(List<? extends DocumentSnapshot> documents) {
+        Timestamp maximo = null;
+        for (DocumentSnapshot doc : documents) {
+            if (maximo == null || doc.getUpdateTime().compareTo(maximo) > 0) {
+                maximo = doc.getUpdateTime();
+            }
+        }
+        return (maximo != null ? Versionado.version(maximo) : "0") + "-" + documents.size();
+    }
+
+    private static String clavePagina(int tamano, String antes, String despues) {
+        return tamano + ":" + Objects.toString(antes, "") + ":" + Objects.toString(despues, "");
+    }
+
+    private int tamanoPagina(Integer limite) {
+        if (limite == null || limite <= 0) {
+            return tamanoPaginaDefecto;
+        }
+        return Math.min(limite, maxTamanoPagina);
+    }
+
+    // Versión conocida del chat si su sello sigue vigente (para responder 304 sin consultar Firestore)
+    // El TTL es corto: cubre los cambios hechos desde otras instancias
+    public String versionChatEnCache(String userId, String chatPartnerId) {
+        return selloVigente(generarChatId(userId, chatPartnerId), CHAT_COMPLETO);
+    }
+
+    public String versionPaginaEnCache(String userId, String chatPartnerId, Integer limite, String antes, String despues) {
+        return selloVigente(generarChatId(userId, chatPartnerId), clavePagina(tamanoPagina(limite), antes, despues));
+    }
+
+    private String selloVigente(String chatId, String clave) {
+        Map<String, SelloVersion> sellos = versionesChat.get(chatId);
+        SelloVersion sello = sellos != null ? sellos.get(clave) : null;
+        if (sello == null || System.nanoTime() - sello.expiraEn >= 0) {
+            return null;
         }
+        return sello.version;
+    }
+
+    private void guardarSello(String chatId, String clave, String version) {
+        versionesChat.computeIfAbsent(chatId, c -> new ConcurrentHashMap<>())
+                .put(clave, new SelloVersion(version, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlVersionMs)));
+        purgarVersionesExpiradas();
+    }
+
+    private void purgarVersionesExpiradas() {
+        if (versionesChat.size() > MAX_VERSIONES_CHAT) {
+            long ahora = System.nanoTime();
+            versionesChat.values().removeIf(sellos -> {
+                sellos.values().removeIf(sello -> ahora - sello.expiraEn >= 0);
+                return sellos.isEmpty();
+            });
+        }
+    }
+
+    // Sin el índice (chatId, createdAt): obtener sin orderBy y ordenar en memoria
+    private List<QueryDocumentSnapshot> consultarMensajesDeChat(String chatId) throws ExecutionException, InterruptedException {
+        Query porChat = firestore.collection(COLLECTION_NAME).whereEqualTo("chatId", chatId);
+        return planificador.ejecutar(PlanificadorConsultas.Forma.MENSAJES_CHAT_ASC,
+                () -> porChat.orderBy("createdAt", Query.Direction.ASCENDING).get().get().getDocuments(),
+                () -> {
+                    List<QueryDocumentSnapshot> documents = new ArrayList<>(porChat.get().get().getDocuments());
+                    documents.sort((a, b) -> ResumenesChat.comparar(a.getString("createdAt"), a.getId(), b.getString("createdAt"), b.getId()));
+                    return documents;
+                });
     }
 
     // Marcar mensaje como leído
+    // En una transacción con el resumen del chat: el contador de no leídos solo baja si el mensaje
+    // pasa de no leído a leído, y nunca por debajo de 0
     public void marcarComoLeido(String messageId) throws ExecutionException, InterruptedException {
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(messageId);
-        ApiFuture<WriteResult> future = docRef.update("isRead", true);
-        future.get();
+        ApiFuture<Void> future = firestore.runTransaction(transaction -> {
+            DocumentSnapshot mensaje = transaction.get(docRef).get();
+            if (!mensaje.exists()) {
+                throw new RuntimeException("Mensaje no encontrado: " + messageId);
+            }
+            if (Boolean.TRUE.equals(mensaje.getBoolean("isRead"))) {
+                return null;
+            }
+            String chatId = mensaje.getString("chatId");
+            String recipientId = mensaje.getString("recipientId");
+            DocumentSnapshot resumen = chatId != null && recipientId != null
+                    ? transaction.get(referenciaResumen(chatId)).get()
+                    : null;
+            // Ya cubierto por el cursor de lectura: contaba como leído, los contadores no cambian
+            if (ResumenesChat.cubiertoPorCursor(convertirAMensaje(mensaje), ResumenesChat.cursorDeLectura(resumen, recipientId))) {
+                transaction.update(docRef, "isRead", true);
+                return null;
+            }
+            transaction.update(docRef, "isRead", true);
+            if (recipientId != null) {
+                transaction.set(contadoresNoLeidos.shardAleatorio(recipientId), ContadoresNoLeidos.incremento(-1), SetOptions.merge());
+            }
+            if (resumen != null && resumen.exists()) {
+                if (ResumenesChat.noLeidos(resumen, recipientId) > 0) {
+                    transaction.update(resumen.getReference(), FieldPath.of("unread", recipientId), FieldValue.increment(-1));
+                }
+                if (messageId.equals(resumen.getString("lastMessage.id"))) {
+                    transaction.update(resumen.getReference(), FieldPath.of("lastMessage", "isRead"), true);
+                }
+            }
+            return null;
+        });
+        try {
+            future.get();
+        } finally {
+            // El ID del mensaje no identifica el chat: se descartan todos los sellos de versión
+            versionesChat.clear();
+        }
+    }
+
+    // Marcar como leída toda la conversación para userId: avanza su cursor de lectura hasta el
+    // último mensaje del chat en una sola escritura (en lugar de un update por mensaje)
+    // Devuelve cuántos mensajes pasaron a leídos según el contador del chat
+    public int marcarChatComoLeido(String userId, String chatPartnerId) throws ExecutionException, InterruptedException {
+        String chatId = generarChatId(userId, chatPartnerId);
+        DocumentReference resumenRef = referenciaResumen(chatId);
+        ApiFuture<Integer> future = firestore.runTransaction(transaction -> {
+            DocumentSnapshot resumen = transaction.get(resumenRef).get();
+            Mensaje ultimo = resumen.exists() ? ResumenesChat.ultimoMensaje(resumen) : null;
+            if (ultimo == null) {
+                return 0; // Chat sin mensajes (o anterior al backfill de resúmenes)
+            }
+            int pendientes = ResumenesChat.noLeidos(resumen, userId);
+            String[] cursor = ResumenesChat.cursorDeLectura(resumen, userId);
+            if (pendientes == 0 && ResumenesChat.cubiertoPorCursor(ultimo, cursor)) {
+                return 0;
+            }
+            List<Object> otrosCampos = new ArrayList<>(Arrays.asList(FieldPath.of("unread", userId), 0));
+            if (userId.equals(ultimo.getRecipientId())) {
+                otrosCampos.add(FieldPath.of("lastMessage", "isRead"));
+                otrosCampos.add(true);
+            }
+            transaction.update(resumenRef, FieldPath.of("readCursors", userId), ResumenesChat.datosCursor(ultimo), otrosCampos.toArray());
+            if (pendientes > 0) {
+                transaction.set(contadoresNoLeidos.shardAleatorio(userId), ContadoresNoLeidos.incremento(-pendientes), SetOptions.merge());
+            }
+            return pendientes;
+        });
+        try {
+            return future.get();
+        } finally {
+            versionesChat.remove(chatId);
+        }
+    }
+
+    // Bandeja de entrada: conversaciones del usuario por actividad reciente, en una consulta paginada
+    // sobre chats (keyset por lastMessageAt + chatId) en lugar de dos consultas por conversación
+    public PaginaDTO<ConversacionDTO> obtenerBandeja(String userId, Integer limite, String cursor) throws ExecutionException, InterruptedException {
+        return Futuros.esperar(obtenerBandejaAsync(userId, limite, cursor));
+    }
+
+    public CompletableFuture<PaginaDTO<ConversacionDTO>> obtenerBandejaAsync(String userId, Integer limite, String cursor) {
+        int tamano = tamanoPagina(limite);
+        String[] posicion = decodificarPosicion(cursor);
+        Query query = firestore.collection(ResumenesChat.COLLECTION_NAME)
+                .whereArrayContains("participants", userId)
+                .orderBy("lastMessageAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                .limit(tamano + 1);
+        if (posicion != null) {
+            query = query.startAfter(posicion[0], posicion[1]);
+        }
+        return consultarPaginaAsync(query,
+                "Falta el índice compuesto de chats (participants, lastMessageAt, __name__) para la bandeja")
+                .thenApply(documents -> {
+                    boolean hayMas = documents.size() > tamano;
+                    List<ConversacionDTO> conversaciones = new ArrayList<>();
+                    for (QueryDocumentSnapshot doc : hayMas ? documents.subList(0, tamano) : documents) {
+                        conversaciones.add(new ConversacionDTO(doc.getId(), ResumenesChat.otroParticipante(doc, userId),
+                                ResumenesChat.ultimoMensaje(doc), ResumenesChat.noLeidos(doc, userId)));
+                    }
+                    String siguiente = null;
+                    if (hayMas) {
+                        QueryDocumentSnapshot ultimo = documents.get(tamano - 1);
+                        siguiente = Cursores.codificar(Objects.toString(ultimo.getString("lastMessageAt"), "") + "|" + ultimo.getId());
+                    }
+                    return new PaginaDTO<>(conversaciones, siguiente);
+                });
+    }
+
+    // Número de mensajes no leídos del usuario (para el badge), desde los contadores incrementales
+    public long contarNoLeidos(String userId) throws ExecutionException, InterruptedException {
+        return contadoresNoLeidos.total(userId);
+    }
+
+    // Recalcular el contador con count() y corregir la desviación
+    public long reconciliarNoLeidos(String userId) throws ExecutionException, InterruptedException {
+        return contadoresNoLeidos.reconciliar(userId);
     }
 
     // Obtener mensajes no leídos para un usuario
+    // Se descartan los que ya cubre el cursor de lectura de su chat (aunque conserven isRead = false)
     public List<Mensaje> obtenerMensajesNoLeidos(String userId) throws ExecutionException, InterruptedException {
-        try {
-            // Intento 1: Intentar con ambas condiciones si existe el índice
-            ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("recipientId", userId)
-                    .whereEqualTo("isRead", false)
-                    .get();
-
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-            return documents.stream()
-                    .map(this::convertirAMensaje)
-                    .collect(Collectors.toList());
-        } catch (ExecutionException e) {
-            // Si falla por falta de índice, obtener todos los mensajes del usuario y filtrar en memoria
-            Throwable cause = e.getCause();
-            String errorMessage = (cause != null ? cause.getMessage() : e.getMessage());
-            
-            if (errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"))) {
-                // Fallback: obtener solo por recipientId y filtrar en memoria
-                ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                        .whereEqualTo("recipientId", userId)
-                        .get();
-
-                List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-                // Filtrar mensajes no leídos en memoria
-                return documents.stream()
-                        .map(this::convertirAMensaje)
-                        .filter(mensaje -> Boolean.FALSE.equals(mensaje.getIsRead()) || mensaje.getIsRead() == null)
-                        .collect(Collectors.toList());
-            } else {
-                // Si es otro error, re-lanzar
-                throw e;
+        return Futuros.esperar(obtenerMensajesNoLeidosAsync(userId));
+    }
+
+    // Los cursores se leen solo de los chats con mensajes pendientes, en una única llamada getAll
+    public CompletableFuture<List<Mensaje>> obtenerMensajesNoLeidosAsync(String userId) {
+        return consultarMensajesNoLeidosAsync(userId).thenCompose(mensajes -> {
+            if (mensajes.isEmpty()) {
+                return CompletableFuture.completedFuture(mensajes);
             }
-        } catch (Exception e) {
-            // Capturar cualquier otra excepción
-            String errorMessage = e.getMessage();
-            if (errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"))) {
-                // Fallback: obtener solo por recipientId y filtrar en memoria
-                try {
-                    ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                            .whereEqualTo("recipientId", userId)
-                            .get();
-
-                    List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-                    // Filtrar mensajes no leídos en memoria
-                    return documents.stream()
-                            .map(this::convertirAMensaje)
-                            .filter(mensaje -> Boolean.FALSE.equals(mensaje.getIsRead()) || mensaje.getIsRead() == null)
-                            .collect(Collectors.toList());
-                } catch (Exception fallbackError) {
-                    throw new RuntimeException("Error al obtener mensajes no leídos: " + fallbackError.getMessage(), fallbackError);
+            Set<String> chatIds = new LinkedHashSet<>();
+            for (Mensaje mensaje : mensajes) {
+                if (mensaje.getChatId() != null) {
+                    chatIds.add(mensaje.getChatId());
                 }
-            } else {
-                throw new RuntimeException("Error al obtener mensajes no leídos: " + e.getMessage(), e);
             }
-        }
+            DocumentReference[] resumenes = chatIds.stream().map(this::referenciaResumen).toArray(DocumentReference[]::new);
+            return Futuros.completable(firestore.getAll(resumenes, FieldMask.of("readCursors"))).thenApply(documentos -> {
+                Map<String, String[]> cursores = new HashMap<>();
+                for (DocumentSnapshot resumen : documentos) {
+                    String[] cursor = ResumenesChat.cursorDeLectura(resumen, userId);
+                    if (cursor != null) {
+                        cursores.put(resumen.getId(), cursor);
+                    }
+                }
+                List<Mensaje> noLeidos = new ArrayList<>(mensajes.size());
+                for (Mensaje mensaje : mensajes) {
+                    if (!ResumenesChat.cubiertoPorCursor(mensaje, cursores.get(mensaje.getChatId()))) {
+                        noLeidos.add(mensaje);
+                    }
+                }
+                return noLeidos;
+            });
+        });
+    }
+
+    // Sin el índice (recipientId, isRead) se consulta solo por recipientId y se filtra en memoria
+    private CompletableFuture<List<Mensaje>> consultarMensajesNoLeidosAsync(String userId) {
+        Query porDestinatario = firestore.collection(COLLECTION_NAME).whereEqualTo("recipientId", userId);
+        return planificador.ejecutarAsync(PlanificadorConsultas.Forma.NO_LEIDOS,
+                () -> Futuros.completable(porDestinatario.whereEqualTo("isRead", false).get())
+                        .thenApply(snapshot -> snapshot.getDocuments().stream()
+                                .map(MensajeServicio::convertirAMensaje)
+                                .collect(Collectors.toList())),
+                () -> Futuros.completable(porDestinatario.get())
+                        .thenApply(snapshot -> snapshot.getDocuments().stream()
+                                .map(MensajeServicio::convertirAMensaje)
+                                .filter(mensaje -> !Boolean.TRUE.equals(mensaje.getIsRead()))
+                                .collect(Collectors.toList())));
     }
 
     // Obtener resumen de un chat (último mensaje y contador sin leer) - OPTIMIZADO
+    // Una lectura del documento chats/{chatId}; los chats sin resumen (anteriores al backfill)
+    // se calculan con las consultas sobre messages
     public Map<String, Object> obtenerResumenChat(String userId, String chatPartnerId) throws ExecutionException, InterruptedException {
+        return Futuros.esperar(obtenerResumenChatAsync(userId, chatPartnerId));
+    }
+
+    // Sin resumen, el último mensaje y el count() de no leídos son independientes y se piden a la vez
+    public CompletableFuture<Map<String, Object>> obtenerResumenChatAsync(String userId, String chatPartnerId) {
         String chatId = generarChatId(userId, chatPartnerId);
-        Map<String, Object> resumen = new HashMap<>();
-        Mensaje ultimoMensaje = null;
-        int unreadCount = 0;
-        
-        try {
-            // Obtener solo el último mensaje (limit 1, ordenado descendente por createdAt)
-            ApiFuture<QuerySnapshot> futureUltimo = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("chatId", chatId)
-                    .orderBy("createdAt", Query.Direction.DESCENDING)
-                    .limit(1)
-                    .get();
-            
-            List<QueryDocumentSnapshot> docsUltimo = futureUltimo.get().getDocuments();
-            if (!docsUltimo.isEmpty()) {
-                ultimoMensaje = convertirAMensaje(docsUltimo.get(0));
+        return Futuros.completable(referenciaResumen(chatId).get()).thenCompose(documentoResumen -> {
+            if (documentoResumen.exists()) {
+                return CompletableFuture.completedFuture(resumenChat(
+                        ResumenesChat.ultimoMensaje(documentoResumen), ResumenesChat.noLeidos(documentoResumen, userId)));
             }
-            
-            // Obtener contador de mensajes sin leer (solo el count, no los mensajes completos)
-            ApiFuture<QuerySnapshot> futureUnread = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("chatId", chatId)
-                    .whereEqualTo("recipientId", userId)
-                    .whereEqualTo("isRead", false)
-                    .get();
-            
-            List<QueryDocumentSnapshot> docsUnread = futureUnread.get().getDocuments();
-            unreadCount = docsUnread.size();
-            
-        } catch (ExecutionException e) {
-            // Si falla por falta de índice en orderBy, intentar sin orderBy
-            Throwable cause = e.getCause();
-            String errorMessage = (cause != null ? cause.getMessage() : e.getMessage());
-            
-            if (errorMessage != null && (errorMessage.contains("index") || errorMessage.contains("FAILED_PRECONDITION"))) {
-                // Fallback: obtener todos los mensajes del chat y calcular en memoria
-                try {
-                    ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                            .whereEqualTo("chatId", chatId)
-                            .get();
-                    
-                    List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-                    
-                    if (!documents.isEmpty()) {
-                        // Ordenar en memoria y obtener el último
-                        List<Mensaje> mensajes = documents.stream()
-                                .map(this::convertirAMensaje)
-                                .sorted((m1, m2) -> {
-                                    String date1 = m1.getCreatedAt() != null ? m1.getCreatedAt() : "";
-                                    String date2 = m2.getCreatedAt() != null ? m2.getCreatedAt() : "";
-                                    return date2.compareTo(date1); // DESC para obtener el último
-                                })
-                                .collect(Collectors.toList());
-                        
-                        ultimoMensaje = mensajes.get(0);
-                        
-                        // Contar mensajes sin leer
-                        unreadCount = (int) mensajes.stream()
-                                .filter(m -> m.getRecipientId().equals(userId) && 
-                                            Boolean.FALSE.equals(m.getIsRead()))
-                                .count();
-                    } else {
-                        ultimoMensaje = null;
-                        unreadCount = 0;
+            return planificador.ejecutarAsync(PlanificadorConsultas.Forma.MENSAJES_CHAT_DESC,
+                            () -> resumenChatIndexado(chatId, userId),
+                            () -> resumenChatEnMemoria(chatId, userId))
+                    // Si es otro error, mantener valores por defecto
+                    .exceptionally(error -> resumenChat(null, 0));
+        });
+    }
+
+    private CompletableFuture<Map<String, Object>> resumenChatIndexado(String chatId, String userId) {
+        // Obtener solo el último mensaje (limit 1, ordenado descendente por createdAt)
+        CompletableFuture<QuerySnapshot> futureUltimo = Futuros.completable(firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("chatId", chatId)
+                .orderBy("createdAt", Query.Direction.DESCENDING)
+                .limit(1)
+                .get());
+        // Contador de mensajes sin leer (agregación count(), sin descargar los mensajes)
+        CompletableFuture<AggregateQuerySnapshot> futureUnread = Futuros.completable(firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("chatId", chatId)
+                .whereEqualTo("recipientId", userId)
+                .whereEqualTo("isRead", false)
+                .count()
+                .get());
+        return futureUltimo.thenCombine(futureUnread, (ultimo, unread) -> resumenChat(
+                ultimo.isEmpty() ? null : convertirAMensaje(ultimo.getDocuments().get(0)),
+                (int) unread.getCount()));
+    }
+
+    // Fallback sin índices: obtener todos los mensajes del chat y calcular en memoria
+    private CompletableFuture<Map<String, Object>> resumenChatEnMemoria(String chatId, String userId) {
+        return Futuros.completable(firestore.collection(COLLECTION_NAME).whereEqualTo("chatId", chatId).get())
+                .thenApply(snapshot -> {
+                    Mensaje ultimoMensaje = null;
+                    int unreadCount = 0;
+                    for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                        Mensaje mensaje = convertirAMensaje(doc);
+                        if (ultimoMensaje == null || ResumenesChat.comparar(mensaje.getCreatedAt(), mensaje.getId(),
+                                ultimoMensaje.getCreatedAt(), ultimoMensaje.getId()) > 0) {
+                            ultimoMensaje = mensaje;
+                        }
+                        if (userId.equals(mensaje.getRecipientId()) && Boolean.FALSE.equals(mensaje.getIsRead())) {
+                            unreadCount++;
+                        }
                     }
-                } catch (Exception fallbackError) {
-                    ultimoMensaje = null;
-                    unreadCount = 0;
-                }
-            } else {
-                // Si es otro error, mantener valores por defecto
-                ultimoMensaje = null;
-                unreadCount = 0;
-            }
-        } catch (Exception e) {
-            // Cualquier otra excepción, mantener valores por defecto
-            ultimoMensaje = null;
-            unreadCount = 0;
-        }
-        
+                    return resumenChat(ultimoMensaje, unreadCount);
+                })
+                .exceptionally(error -> resumenChat(null, 0));
+    }
+
+    private static Map<String, Object> resumenChat(Mensaje ultimoMensaje, int unreadCount) {
+        Map<String, Object> resumen = new HashMap<>();
         resumen.put("lastMessage", ultimoMensaje);
         resumen.put("unreadCount", unreadCount);
         return resumen;
     }
 
+    private DocumentReference referenciaResumen(String chatId) {
+        return firestore.collection(ResumenesChat.COLLECTION_NAME).document(chatId);
+    }
+
     // Generar ID de chat consistente (ordenado alfabéticamente)
     private String generarChatId(String userId1, String userId2) {
         List<String> ids = Arrays.asList(userId1, userId2);
@@ -276,7 +550,7 @@ public class MensajeServicio {
     }
 
     // Método auxiliar para convertir DocumentSnapshot a Mensaje
-    private Mensaje convertirAMensaje(DocumentSnapshot document) {
+    static Mensaje convertirAMensaje(DocumentSnapshot document) {
         Mensaje mensaje = new Mensaje();
         mensaje.setId(document.getId());
         mensaje.setChatId(document.getString("chatId"));
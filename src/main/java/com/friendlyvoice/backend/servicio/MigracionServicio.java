@@ -0,0 +1,589 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class MigracionServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(MigracionServicio.class);
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private CacheUsuarios cacheUsuarios;
+
+    private static final String USERS_COLLECTION = "users";
+    private static final String MESSAGES_COLLECTION = "messages";
+    private static final String UNREAD_COUNTERS_COLLECTION = "unreadCounters";
+    private static final String MIGRACIONES_COLLECTION = "migraciones";
+    private static final String BACKFILL_ESQUEMA_ID = "esquema-usuarios";
+    private static final String MIGRACION_GRAFO_ID = "grafo-social";
+    private static final String FASE_ARISTAS = "ARISTAS";
+    private static final String FASE_CONTADORES = "CONTADORES";
+    private static final String FOLLOWERS = "followers";
+    private static final String FOLLOWING = "following";
+    private static final int TAMANO_PAGINA = 300;
+    private static final int MAX_REINTENTOS = 5;
+
+    // Valores por defecto que el backfill de esquema rellena si el campo no existe
+    private static final Map<String, Object> VALORES_POR_DEFECTO = Map.of(
+            "loginAttempts", 0,
+            "isBlocked", false,
+            "onboardingComplete", false
+    );
+
+    // Las migraciones largas corren en segundo plano, de una en una
+    private final ExecutorService ejecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "migraciones");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final AtomicBoolean backfillEnCurso = new AtomicBoolean(false);
+    private volatile Map<String, Object> progresoBackfill = Map.of("estado", "SIN_EJECUTAR");
+    private final AtomicBoolean migracionGrafoEnCurso = new AtomicBoolean(false);
+    private volatile Map<String, Object> progresoMigracionGrafo = Map.of("estado", "SIN_EJECUTAR");
+
+    @PreDestroy
+    public void detener() {
+        ejecutor.shutdownNow();
+    }
+
+    // Lanzar el backfill de esquema de users en segundo plano
+    // dryRun: solo cuenta lo que se escribiría. reanudar: continúa desde el último ID
+    // confirmado en migraciones/esquema-usuarios en lugar de empezar desde el principio
+    public Map<String, Object> iniciarBackfillEsquema(boolean dryRun, boolean reanudar) throws ExecutionException, InterruptedException {
+        if (!backfillEnCurso.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay un backfill de esquema en curso");
+        }
+        try {
+            String desdeId = null;
+            if (reanudar && !dryRun) {
+                DocumentSnapshot estado = referenciaBackfill().get().get();
+                if (estado.exists() && !"COMPLETADO".equals(estado.getString("estado"))) {
+                    desdeId = estado.getString("ultimoId");
+                }
+            }
+            String inicio = desdeId;
+            ejecutor.submit(() -> ejecutarBackfillEsquema(dryRun, inicio));
+            return Map.of("mensaje", "Backfill iniciado", "dryRun", dryRun, "desdeId", inicio != null ? inicio : "");
+        } catch (RuntimeException | ExecutionException | InterruptedException e) {
+            backfillEnCurso.set(false);
+            throw e;
+        }
+    }
+
+    // Progreso del backfill (en memoria para esta instancia + último estado persistido)
+    public Map<String, Object> obtenerProgresoBackfill() throws ExecutionException, InterruptedException {
+        Map<String, Object> respuesta = new LinkedHashMap<>(progresoBackfill);
+        respuesta.put("enCurso", backfillEnCurso.get());
+        DocumentSnapshot persistido = referenciaBackfill().get().get();
+        if (persistido.exists()) {
+            respuesta.put("persistido", persistido.getData());
+        }
+        return respuesta;
+    }
+
+    private void ejecutarBackfillEsquema(boolean dryRun, String desdeId) {
+        int procesados = 0;
+        int actualizados = 0;
+        AtomicInteger conflictos = new AtomicInteger();
+        AtomicInteger errores = new AtomicInteger();
+        String ultimoId = desdeId;
+        long inicio = System.currentTimeMillis();
+
+        BulkWriter bulkWriter = dryRun ? null : crearBulkWriterConPrecondicion(conflictos, errores);
+        try {
+            String[] campos = VALORES_POR_DEFECTO.keySet().toArray(new String[0]);
+            while (true) {
+                List<QueryDocumentSnapshot> pagina = paginaDeUsuarios(ultimoId, campos);
+                if (pagina.isEmpty()) {
+                    break;
+                }
+                for (QueryDocumentSnapshot doc : pagina) {
+                    procesados++;
+                    Map<String, Object> faltantes = new HashMap<>();
+                    VALORES_POR_DEFECTO.forEach((campo, valor) -> {
+                        if (!doc.contains(campo)) {
+                            faltantes.put(campo, valor);
+                        }
+                    });
+                    if (faltantes.isEmpty()) {
+                        continue;
+                    }
+                    actualizados++;
+                    if (bulkWriter != null) {
+                        // Precondición de updateTime: si el documento cambió desde la lectura
+                        // (p.ej. un admin lo bloqueó), no se sobrescribe y cuenta como conflicto
+                        bulkWriter.update(doc.getReference(), faltantes, Precondition.updatedAt(doc.getUpdateTime()));
+                    }
+                }
+                ultimoId = pagina.get(pagina.size() - 1).getId();
+
+                // Punto de control: solo se avanza el cursor cuando la página está confirmada
+                if (bulkWriter != null) {
+                    bulkWriter.flush().get();
+                    guardarPuntoDeControl("EN_CURSO", ultimoId, procesados, actualizados, conflictos.get(), errores.get());
+                }
+                progresoBackfill = progreso("EN_CURSO", dryRun, ultimoId, procesados, actualizados, conflictos.get(), errores.get(), inicio);
+                log.info("Backfill de esquema{}: {} usuarios revisados, {} con campos faltantes",
+                        dryRun ? " (dry-run)" : "", procesados, actualizados);
+            }
+
+            if (bulkWriter != null) {
+                bulkWriter.close();
+                guardarPuntoDeControl("COMPLETADO", ultimoId, procesados, actualizados, conflictos.get(), errores.get());
+                cacheUsuarios.invalidarTodo();
+            }
+            progresoBackfill = progreso("COMPLETADO", dryRun, ultimoId, procesados, actualizados, conflictos.get(), errores.get(), inicio);
+        } catch (Exception e) {
+            log.error("Error en backfill de esquema tras {} usuarios", procesados, e);
+            Map<String, Object> fallo = progreso("FALLIDO", dryRun, ultimoId, procesados, actualizados, conflictos.get(), errores.get(), inicio);
+            fallo.put("error", String.valueOf(e.getMessage()));
+            progresoBackfill = fallo;
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            backfillEnCurso.set(false);
+        }
+    }
+
+    private Map<String, Object> progreso(String estado, boolean dryRun, String ultimoId, int procesados, int actualizados,
+                                         int conflictos, int errores, long inicio) {
+        Map<String, Object> progreso = new LinkedHashMap<>();
+        progreso.put("estado", estado);
+        progreso.put("dryRun", dryRun);
+        progreso.put("ultimoId", ultimoId);
+        progreso.put("usuariosRevisados", procesados);
+        progreso.put(dryRun ? "usuariosPorActualizar" : "usuariosActualizados", actualizados);
+        progreso.put("conflictos", conflictos);
+        progreso.put("errores", errores);
+        progreso.put("duracionMs", System.currentTimeMillis() - inicio);
+        return progreso;
+    }
+
+    private void guardarPuntoDeControl(String estado, String ultimoId, int procesados, int actualizados,
+                                       int conflictos, int errores) throws ExecutionException, InterruptedException {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("estado", estado);
+        datos.put("ultimoId", ultimoId);
+        datos.put("usuariosRevisados", procesados);
+        datos.put("usuariosActualizados", actualizados);
+        datos.put("conflictos", conflictos);
+        datos.put("errores", errores);
+        datos.put("actualizadoEn", new Date());
+        referenciaBackfill().set(datos).get();
+    }
+
+    private DocumentReference referenciaBackfill() {
+        return firestore.collection(MIGRACIONES_COLLECTION).document(BACKFILL_ESQUEMA_ID);
+    }
+
+    private BulkWriter crearBulkWriterConPrecondicion(AtomicInteger conflictos, AtomicInteger errores) {
+        BulkWriter bulkWriter = firestore.bulkWriter();
+        bulkWriter.addWriteErrorListener(error -> {
+            if (String.valueOf(error.getStatus()).contains("FAILED_PRECONDITION")) {
+                conflictos.incrementAndGet();
+                return false; // El documento cambió: no reintentar
+            }
+            if (error.getFailedAttempts() < MAX_REINTENTOS) {
+                return true;
+            }
+            errores.incrementAndGet();
+            log.warn("Error en backfill para {}: {}", error.getDocumentReference().getPath(), error.getMessage());
+            return false;
+        });
+        return bulkWriter;
+    }
+
+    // Lanzar la migración de los arrays followers/following de users a aristas, en segundo plano
+    // Fase ARISTAS: crear aristas (set merge, idempotente) a partir de la unión de ambos arrays
+    // Fase CONTADORES: recalcular followerCount/followingCount de todos los usuarios con count()
+    // y eliminar los arrays. Todos, no solo los que tienen arrays: un seguimiento hecho antes de
+    // migrar incrementa un contador que aún no existía y lo deja en 1
+    // dryRun: solo cuenta lo que se escribiría. reanudar: continúa desde la fase y el último ID
+    // confirmados en migraciones/grafo-social
+    public Map<String, Object> iniciarMigracionGrafoSocial(boolean dryRun, boolean reanudar) throws ExecutionException, InterruptedException {
+        if (!migracionGrafoEnCurso.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una migración del grafo social en curso");
+        }
+        try {
+            String fase = FASE_ARISTAS;
+            String desdeId = null;
+            if (reanudar && !dryRun) {
+                DocumentSnapshot estado = referenciaMigracionGrafo().get().get();
+                if (estado.exists() && !"COMPLETADO".equals(estado.getString("estado"))) {
+                    fase = FASE_CONTADORES.equals(estado.getString("fase")) ? FASE_CONTADORES : FASE_ARISTAS;
+                    desdeId = estado.getString("ultimoId");
+                }
+            }
+            String faseInicial = fase;
+            String inicio = desdeId;
+            ejecutor.submit(() -> ejecutarMigracionGrafoSocial(dryRun, faseInicial, inicio));
+            return Map.of("mensaje", "Migración iniciada", "dryRun", dryRun, "fase", faseInicial,
+                    "desdeId", inicio != null ? inicio : "");
+        } catch (RuntimeException | ExecutionException | InterruptedException e) {
+            migracionGrafoEnCurso.set(false);
+            throw e;
+        }
+    }
+
+    // Progreso de la migración del grafo (en memoria para esta instancia + último estado persistido)
+    public Map<String, Object> obtenerProgresoMigracionGrafoSocial() throws ExecutionException, InterruptedException {
+        Map<String, Object> respuesta = new LinkedHashMap<>(progresoMigracionGrafo);
+        respuesta.put("enCurso", migracionGrafoEnCurso.get());
+        DocumentSnapshot persistido = referenciaMigracionGrafo().get().get();
+        if (persistido.exists()) {
+            respuesta.put("persistido", persistido.getData());
+        }
+        return respuesta;
+    }
+
+    private void ejecutarMigracionGrafoSocial(boolean dryRun, String faseInicial, String desdeId) {
+        Map<String, Object> progreso = new LinkedHashMap<>();
+        progreso.put("estado", "EN_CURSO");
+        progreso.put("dryRun", dryRun);
+        progreso.put("fase", faseInicial);
+        progreso.put("ultimoId", desdeId);
+        progreso.put("usuariosRevisados", 0);
+        progreso.put("usuariosConArrays", 0);
+        progreso.put("aristasEscritas", 0); // Cada seguimiento puede aparecer en ambos arrays
+        progreso.put("contadoresRecalculados", 0);
+        progreso.put("errores", 0);
+        AtomicInteger errores = new AtomicInteger();
+        long inicio = System.currentTimeMillis();
+
+        try {
+            String ultimoId = desdeId;
+            if (FASE_ARISTAS.equals(faseInicial)) {
+                migrarAristas(dryRun, ultimoId, progreso, errores, inicio);
+                ultimoId = null;
+            }
+            if (!dryRun) {
+                if (FASE_ARISTAS.equals(faseInicial)) {
+                    progreso.put("ultimoId", null);
+                }
+                progreso.put("fase", FASE_CONTADORES);
+                recalcularTodosLosContadores(ultimoId, progreso, errores, inicio);
+                cacheUsuarios.invalidarTodo();
+            }
+            progreso.put("estado", "COMPLETADO");
+            if (!dryRun) {
+                guardarPuntoDeControlGrafo(progreso);
+            }
+        } catch (Exception e) {
+            log.error("Error en la migración del grafo social en la fase {}", progreso.get("fase"), e);
+            progreso.put("estado", "FALLIDO");
+            progreso.put("error", String.valueOf(e.getMessage()));
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            progreso.put("errores", errores.get());
+            progreso.put("duracionMs", System.currentTimeMillis() - inicio);
+            progresoMigracionGrafo = new LinkedHashMap<>(progreso);
+            migracionGrafoEnCurso.set(false);
+        }
+    }
+
+    private void migrarAristas(boolean dryRun, String desdeId, Map<String, Object> progreso,
+                               AtomicInteger errores, long inicio) throws ExecutionException, InterruptedException {
+        BulkWriter bulkWriter = dryRun ? null : crearBulkWriter(errores);
+        Date ahora = new Date();
+        String ultimoId = desdeId;
+        while (true) {
+            List<QueryDocumentSnapshot> pagina = paginaDeUsuarios(ultimoId, FOLLOWERS, FOLLOWING);
+            if (pagina.isEmpty()) {
+                break;
+            }
+            int conArrays = 0;
+            int aristas = 0;
+            for (QueryDocumentSnapshot doc : pagina) {
+                if (doc.get(FOLLOWERS) == null && doc.get(FOLLOWING) == null) {
+                    continue;
+                }
+                conArrays++;
+                String userId = doc.getId();
+                for (String seguido : listaDeIds(doc.get(FOLLOWING))) {
+                    aristas++;
+                    if (bulkWriter != null) {
+                        escribirArista(bulkWriter, userId, seguido, ahora);
+                    }
+                }
+                for (String seguidor : listaDeIds(doc.get(FOLLOWERS))) {
+                    aristas++;
+                    if (bulkWriter != null) {
+                        escribirArista(bulkWriter, seguidor, userId, ahora);
+                    }
+                }
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+            sumar(progreso, "usuariosRevisados", pagina.size());
+            sumar(progreso, "usuariosConArrays", conArrays);
+            sumar(progreso, "aristasEscritas", aristas);
+            progreso.put("ultimoId", ultimoId);
+
+            // Punto de control: solo se avanza el cursor cuando las aristas de la página están confirmadas
+            if (bulkWriter != null) {
+                bulkWriter.flush().get();
+                guardarPuntoDeControlGrafo(progreso);
+            }
+            publicarProgresoGrafo(progreso, errores, inicio);
+        }
+        if (bulkWriter != null) {
+            bulkWriter.close();
+        }
+    }
+
+    // Recuento de todos los usuarios por páginas; las transacciones de una página van en paralelo
+    private void recalcularTodosLosContadores(String desdeId, Map<String, Object> progreso,
+                                              AtomicInteger errores, long inicio) throws ExecutionException, InterruptedException {
+        String ultimoId = desdeId;
+        while (true) {
+            // select() sin campos: solo las referencias
+            List<QueryDocumentSnapshot> pagina = paginaDeUsuarios(ultimoId);
+            if (pagina.isEmpty()) {
+                break;
+            }
+            List<ApiFuture<Boolean>> recuentos = new ArrayList<>();
+            for (QueryDocumentSnapshot doc : pagina) {
+                recuentos.add(recalcularContadores(doc.getReference()));
+            }
+            int recalculados = 0;
+            for (int i = 0; i < recuentos.size(); i++) {
+                try {
+                    if (recuentos.get(i).get()) {
+                        recalculados++;
+                    }
+                } catch (ExecutionException e) {
+                    errores.incrementAndGet();
+                    log.warn("Error recalculando contadores de {}: {}", pagina.get(i).getId(), e.getMessage());
+                }
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+            sumar(progreso, "contadoresRecalculados", recalculados);
+            progreso.put("ultimoId", ultimoId);
+            guardarPuntoDeControlGrafo(progreso);
+            publicarProgresoGrafo(progreso, errores, inicio);
+        }
+    }
+
+    // Contadores de un usuario desde sus aristas, en una transacción: el documento del usuario se
+    // lee (solo un campo, sin los arrays) junto con los dos count(). Un seguimiento concurrente
+    // escribe ese documento en el mismo commit que la arista, así que o bien ya está contado o
+    // la transacción se reintenta y no se pisa su incremento
+    private ApiFuture<Boolean> recalcularContadores(DocumentReference userRef) {
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot actual = transaction.getAll(
+                    new DocumentReference[]{userRef}, FieldMask.of("followerCount")).get().get(0);
+            if (!actual.exists()) {
+                return false;
+            }
+            long seguidores = transaction.get(userRef.collection(FOLLOWERS).count()).get().getCount();
+            long seguidos = transaction.get(userRef.collection(FOLLOWING).count()).get().getCount();
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("followerCount", seguidores);
+            updates.put("followingCount", seguidos);
+            updates.put(FOLLOWERS, FieldValue.delete());
+            updates.put(FOLLOWING, FieldValue.delete());
+            transaction.update(userRef, updates);
+            return true;
+        });
+    }
+
+    private void publicarProgresoGrafo(Map<String, Object> progreso, AtomicInteger errores, long inicio) {
+        progreso.put("errores", errores.get());
+        progreso.put("duracionMs", System.currentTimeMillis() - inicio);
+        progresoMigracionGrafo = new LinkedHashMap<>(progreso);
+        log.info("Migración del grafo social{} ({}): {}", Boolean.TRUE.equals(progreso.get("dryRun")) ? " (dry-run)" : "",
+                progreso.get("fase"), progreso);
+    }
+
+    private void guardarPuntoDeControlGrafo(Map<String, Object> progreso) throws ExecutionException, InterruptedException {
+        Map<String, Object> datos = new HashMap<>(progreso);
+        datos.put("actualizadoEn", new Date());
+        referenciaMigracionGrafo().set(datos).get();
+    }
+
+    private DocumentReference referenciaMigracionGrafo() {
+        return firestore.collection(MIGRACIONES_COLLECTION).document(MIGRACION_GRAFO_ID);
+    }
+
+    private static void sumar(Map<String, Object> progreso, String campo, int cantidad) {
+        progreso.merge(campo, cantidad, (actual, n) -> (Integer) actual + (Integer) n);
+    }
+
+    // Crear chats/{chatId} (último mensaje, no leídos y cursores de lectura) recorriendo messages una vez
+    // Migración de isRead a cursores: el cursor de cada destinatario se coloca en su mensaje leído
+    // más reciente; los no leídos anteriores a él pasan a contar como leídos.
+    // Sobrescribe los resúmenes existentes: ejecutar con poco tráfico, un mensaje enviado durante
+    // el recorrido puede quedar fuera del resumen hasta el siguiente mensaje del chat.
+    // Los contadores totales de los destinatarios se marcan para reconciliar: su próxima lectura
+    // los encola para la reconciliación en segundo plano
+    public Map<String, Object> backfillResumenesChat(boolean dryRun) throws ExecutionException, InterruptedException {
+        int mensajes = 0;
+        AtomicInteger errores = new AtomicInteger();
+        Map<String, Mensaje> ultimos = new HashMap<>();
+        // chatId -> destinatario -> estado de lectura
+        Map<String, Map<String, Lectura>> lecturas = new HashMap<>();
+
+        String ultimoId = null;
+        while (true) {
+            Query query = firestore.collection(MESSAGES_COLLECTION)
+                    .select("chatId", "senderId", "recipientId", "voiceUrl", "createdAt", "isRead")
+                    .orderBy(FieldPath.documentId())
+                    .limit(TAMANO_PAGINA);
+            if (ultimoId != null) {
+                query = query.startAfter(ultimoId);
+            }
+            List<QueryDocumentSnapshot> pagina = query.get().get().getDocuments();
+            for (QueryDocumentSnapshot doc : pagina) {
+                String chatId = doc.getString("chatId");
+                String senderId = doc.getString("senderId");
+                String recipientId = doc.getString("recipientId");
+                if (chatId == null || senderId == null || recipientId == null) {
+                    continue;
+                }
+                mensajes++;
+                Mensaje mensaje = new Mensaje(doc.getId(), chatId, senderId, recipientId,
+                        doc.getString("voiceUrl"), doc.getString("createdAt"), doc.getBoolean("isRead"));
+                ultimos.merge(chatId, mensaje, (actual, nuevo) -> esPosterior(nuevo, actual) ? nuevo : actual);
+
+                Map<String, Lectura> porDestinatario = lecturas.computeIfAbsent(chatId, c -> new HashMap<>());
+                porDestinatario.computeIfAbsent(senderId, id -> new Lectura());
+                Lectura lectura = porDestinatario.computeIfAbsent(recipientId, id -> new Lectura());
+                if (Boolean.TRUE.equals(mensaje.getIsRead())) {
+                    if (lectura.ultimoLeido == null || esPosterior(mensaje, lectura.ultimoLeido)) {
+                        lectura.ultimoLeido = mensaje;
+                    }
+                } else {
+                    lectura.noLeidos.add(mensaje);
+                }
+            }
+            if (pagina.size() < TAMANO_PAGINA) {
+                break;
+            }
+            ultimoId = pagina.get(pagina.size() - 1).getId();
+        }
+
+        int cursores = 0;
+        Set<String> destinatarios = new HashSet<>();
+        BulkWriter bulkWriter = dryRun ? null : crearBulkWriter(errores);
+        for (Map.Entry<String, Mensaje> entrada : ultimos.entrySet()) {
+            Map<String, Object> noLeidos = new HashMap<>();
+            Map<String, Object> cursoresLectura = new HashMap<>();
+            for (Map.Entry<String, Lectura> porDestinatario : lecturas.get(entrada.getKey()).entrySet()) {
+                Lectura lectura = porDestinatario.getValue();
+                int pendientes = 0;
+                for (Mensaje mensaje : lectura.noLeidos) {
+                    if (lectura.ultimoLeido == null || esPosterior(mensaje, lectura.ultimoLeido)) {
+                        pendientes++;
+                    }
+                }
+                noLeidos.put(porDestinatario.getKey(), pendientes);
+                if (lectura.ultimoLeido != null) {
+                    cursoresLectura.put(porDestinatario.getKey(), ResumenesChat.datosCursor(lectura.ultimoLeido));
+                    cursores++;
+                }
+                if (!lectura.noLeidos.isEmpty()) {
+                    destinatarios.add(porDestinatario.getKey());
+                }
+            }
+            if (bulkWriter != null) {
+                Map<String, Object> datos = ResumenesChat.datosConUltimoMensaje(entrada.getValue());
+                datos.put("unread", noLeidos);
+                datos.put("readCursors", cursoresLectura);
+                bulkWriter.set(firestore.collection(ResumenesChat.COLLECTION_NAME).document(entrada.getKey()), datos);
+            }
+        }
+        if (bulkWriter != null) {
+            for (String userId : destinatarios) {
+                bulkWriter.set(firestore.collection(UNREAD_COUNTERS_COLLECTION).document(userId),
+                        Map.of("inicializado", false), SetOptions.merge());
+            }
+            bulkWriter.close();
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("dryRun", dryRun);
+        resultado.put("mensajesRevisados", mensajes);
+        resultado.put("chats", ultimos.size());
+        resultado.put("cursoresDeLectura", cursores);
+        resultado.put("contadoresAReconciliar", destinatarios.size());
+        resultado.put("errores", errores.get());
+        return resultado;
+    }
+
+    private static final class Lectura {
+        Mensaje ultimoLeido;
+        final List<Mensaje> noLeidos = new ArrayList<>();
+    }
+
+    private static boolean esPosterior(Mensaje a, Mensaje b) {
+        return ResumenesChat.comparar(a.getCreatedAt(), a.getId(), b.getCreatedAt(), b.getId()) > 0;
+    }
+
+    // Arista de seguimiento en ambos sentidos: users/{a}/following/{b} y users/{b}/followers/{a}
+    private void escribirArista(BulkWriter bulkWriter, String seguidorId, String seguidoId, Date createdAt) {
+        CollectionReference users = firestore.collection(USERS_COLLECTION);
+        Map<String, Object> haciaSeguido = new HashMap<>();
+        haciaSeguido.put("userId", seguidoId);
+        haciaSeguido.put("createdAt", createdAt);
+        Map<String, Object> haciaSeguidor = new HashMap<>();
+        haciaSeguidor.put("userId", seguidorId);
+        haciaSeguidor.put("createdAt", createdAt);
+        bulkWriter.set(users.document(seguidorId).collection(FOLLOWING).document(seguidoId), haciaSeguido, SetOptions.merge());
+        bulkWriter.set(users.document(seguidoId).collection(FOLLOWERS).document(seguidorId), haciaSeguidor, SetOptions.merge());
+    }
+
+    private BulkWriter crearBulkWriter(AtomicInteger errores) {
+        BulkWriter bulkWriter = firestore.bulkWriter();
+        bulkWriter.addWriteErrorListener(error -> {
+            if (error.getFailedAttempts() < MAX_REINTENTOS) {
+                return true; // Reintentar
+            }
+            errores.incrementAndGet();
+            log.warn("Error en migración para {}: {}", error.getDocumentReference().getPath(), error.getMessage());
+            return false;
+        });
+        return bulkWriter;
+    }
+
+    private List<QueryDocumentSnapshot> paginaDeUsuarios(String ultimoId, String... campos) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(USERS_COLLECTION)
+                .select(campos)
+                .orderBy(FieldPath.documentId())
+                .limit(TAMANO_PAGINA);
+        if (ultimoId != null) {
+            query = query.startAfter(ultimoId);
+        }
+        return query.get().get().getDocuments();
+    }
+
+    private List<String> listaDeIds(Object valor) {
+        List<String> ids = new ArrayList<>();
+        if (valor instanceof List) {
+            for (Object id : (List<?>) valor) {
+                if (id instanceof String && !((String) id).isBlank()) {
+                    ids.add((String) id);
+                }
+            }
+        }
+        return ids;
+    }
+}
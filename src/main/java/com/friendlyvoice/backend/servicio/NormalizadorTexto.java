@@ -0,0 +1,48 @@
+package com.friendlyvoice.backend.servicio;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Normalización de texto para búsquedas: sin tildes ni mayúsculas ("José" -> "jose")
+public final class NormalizadorTexto {
+
+    private NormalizadorTexto() {
+    }
+
+    // NFD separa la letra de su tilde; se descartan las marcas diacríticas
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(descompuesto.length());
+        for (int i = 0; i < descompuesto.length(); i++) {
+            char c = descompuesto.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT).trim();
+    }
+
+    // Tokens normalizados sin repetir, separados por cualquier carácter que no sea letra o dígito
+    public static List<String> tokenizar(String texto) {
+        String normalizado = normalizar(texto);
+        Set<String> tokens = new LinkedHashSet<>();
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean esParte = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (esParte && inicio < 0) {
+                inicio = i;
+            } else if (!esParte && inicio >= 0) {
+                tokens.add(normalizado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+}
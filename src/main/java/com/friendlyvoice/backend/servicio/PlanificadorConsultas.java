@@ -0,0 +1,245 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Recuerda, por forma de consulta, si Firestore tiene el índice que necesita la variante indexada
+// Mientras falte, las peticiones van directas a la alternativa (consulta más simple + orden en memoria)
+// en lugar de pagar cada vez el FAILED_PRECONDITION; cada reintento-minutos una sola petición
+// vuelve a probar la variante indexada. Al arrancar se comprueban todas las formas con consultas
+// limit(1) y se avisa de los índices que faltan (ver firestore.indexes.json)
+@Component
+public class PlanificadorConsultas {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanificadorConsultas.class);
+
+    // Valor de relleno para las sondas: el índice necesario depende de la forma, no de los valores
+    private static final String SONDA = "__sonda__";
+
+    public enum Forma {
+        MENSAJES_CHAT_ASC("messages (chatId ASC, createdAt ASC)", f -> f.collection("messages")
+                .whereEqualTo("chatId", SONDA)
+                .orderBy("createdAt", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)),
+        MENSAJES_CHAT_DESC("messages (chatId ASC, createdAt DESC)", f -> f.collection("messages")
+                .whereEqualTo("chatId", SONDA)
+                .orderBy("createdAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)),
+        NO_LEIDOS("messages (recipientId ASC, isRead ASC)", f -> f.collection("messages")
+                .whereEqualTo("recipientId", SONDA)
+                .whereEqualTo("isRead", false)),
+        NO_LEIDOS_HASTA_CURSOR("messages (recipientId ASC, isRead ASC, chatId ASC, createdAt ASC)", f -> f.collection("messages")
+                .whereEqualTo("recipientId", SONDA)
+                .whereEqualTo("isRead", false)
+                .whereEqualTo("chatId", SONDA)
+                .whereLessThanOrEqualTo("createdAt", SONDA)),
+        TIEMPO_REAL("messages (recipientId ASC, createdAt ASC)", f -> f.collection("messages")
+                .whereEqualTo("recipientId", SONDA)
+                .whereGreaterThan("createdAt", SONDA)),
+        BANDEJA("chats (participants CONTAINS, lastMessageAt DESC)", f -> f.collection("chats")
+                .whereArrayContains("participants", SONDA)
+                .orderBy("lastMessageAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)),
+        REPORTES_POR_FECHA("reports (createdAt DESC, índice simple)", f -> f.collection("reports")
+                .orderBy("createdAt", Query.Direction.DESCENDING)),
+        ARISTAS_SEGUIMIENTO("following, grupo de colecciones (__name__)", f -> f.collectionGroup("following")
+                .orderBy(FieldPath.documentId()));
+
+        private final String indice;
+        private final Function<Firestore, Query> sonda;
+
+        Forma(String indice, Function<Firestore, Query> sonda) {
+            this.indice = indice;
+            this.sonda = sonda;
+        }
+
+        public String getIndice() {
+            return indice;
+        }
+    }
+
+    // Consulta bloqueante (variantes síncronas de los servicios)
+    @FunctionalInterface
+    public interface Consulta<T> {
+        T ejecutar() throws ExecutionException, InterruptedException;
+    }
+
+    private static final class Estado {
+        // null = todavía no se sabe
+        volatile Boolean disponible;
+        volatile long comprobadoEn;
+        // Mientras falte el índice: a partir de cuándo se vuelve a probar (CAS para que pruebe una sola petición)
+        final AtomicLong reprobarEn = new AtomicLong();
+    }
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${firestore.indices.reintento-minutos:10}")
+    private long reintentoMinutos;
+
+    @Value("${firestore.indices.comprobar-al-arrancar:true}")
+    private boolean comprobarAlArrancar;
+
+    private final Map<Forma, Estado> estados = new EnumMap<>(Forma.class);
+
+    private ExecutorService ejecutor;
+
+    public PlanificadorConsultas() {
+        // Se rellena una vez; después solo cambian los campos de cada Estado
+        for (Forma forma : Forma.values()) {
+            estados.put(forma, new Estado());
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!comprobarAlArrancar) {
+            return;
+        }
+        ejecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "planificador-consultas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        ejecutor.execute(this::comprobarIndices);
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    // Sonda limit(1) por forma; informa de los índices que faltan
+    public void comprobarIndices() {
+        List<String> faltan = new ArrayList<>();
+        for (Forma forma : Forma.values()) {
+            try {
+                forma.sonda.apply(firestore).limit(1).get().get(30, TimeUnit.SECONDS);
+                registrarExito(forma);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (Futuros.esFaltaDeIndice(e)) {
+                    registrarFaltaDeIndice(forma);
+                    faltan.add(forma.indice);
+                } else {
+                    log.warn("No se pudo comprobar el índice {}: {}", forma.indice, Futuros.causa(e).getMessage());
+                }
+            }
+        }
+        if (faltan.isEmpty()) {
+            log.info("Índices de Firestore comprobados: {} formas de consulta disponibles", Forma.values().length);
+        } else {
+            log.warn("Faltan índices de Firestore (se usarán las consultas alternativas): {}. "
+                    + "Desplegar con: firebase deploy --only firestore:indexes", faltan);
+        }
+    }
+
+    // Intentar la variante indexada: sí si funciona o no se sabe; si faltaba, solo al vencer el reintento
+    public boolean usarIndice(Forma forma) {
+        Estado estado = estados.get(forma);
+        if (!Boolean.FALSE.equals(estado.disponible)) {
+            return true;
+        }
+        long ahora = System.currentTimeMillis();
+        long reprobar = estado.reprobarEn.get();
+        return ahora >= reprobar && estado.reprobarEn.compareAndSet(reprobar, ahora + intervaloMs());
+    }
+
+    public void registrarExito(Forma forma) {
+        Estado estado = estados.get(forma);
+        if (Boolean.FALSE.equals(estado.disponible)) {
+            log.info("Índice disponible de nuevo: {}", forma.indice);
+        }
+        estado.disponible = true;
+        estado.comprobadoEn = System.currentTimeMillis();
+    }
+
+    public void registrarFaltaDeIndice(Forma forma) {
+        Estado estado = estados.get(forma);
+        if (!Boolean.FALSE.equals(estado.disponible)) {
+            log.warn("Falta el índice {}; se usa la consulta alternativa durante {} min", forma.indice, reintentoMinutos);
+        }
+        estado.disponible = false;
+        estado.comprobadoEn = System.currentTimeMillis();
+        estado.reprobarEn.set(estado.comprobadoEn + intervaloMs());
+    }
+
+    // Variante indexada si procede; ante falta de índice (ahora o recordada), la alternativa
+    public <T> T ejecutar(Forma forma, Consulta<T> indexada, Consulta<T> alternativa) throws ExecutionException, InterruptedException {
+        if (usarIndice(forma)) {
+            try {
+                T resultado = indexada.ejecutar();
+                registrarExito(forma);
+                return resultado;
+            } catch (ExecutionException | RuntimeException e) {
+                if (!Futuros.esFaltaDeIndice(e)) {
+                    throw e;
+                }
+                registrarFaltaDeIndice(forma);
+            }
+        }
+        return alternativa.ejecutar();
+    }
+
+    public <T> CompletableFuture<T> ejecutarAsync(Forma forma, Supplier<CompletableFuture<T>> indexada,
+                                                  Supplier<CompletableFuture<T>> alternativa) {
+        if (!usarIndice(forma)) {
+            return alternativa.get();
+        }
+        return indexada.get()
+                .thenApply(resultado -> {
+                    registrarExito(forma);
+                    return resultado;
+                })
+                .exceptionallyCompose(error -> {
+                    if (!Futuros.esFaltaDeIndice(error)) {
+                        return CompletableFuture.failedFuture(Futuros.causa(error));
+                    }
+                    registrarFaltaDeIndice(forma);
+                    return alternativa.get();
+                });
+    }
+
+    private long intervaloMs() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, reintentoMinutos));
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<Forma, Estado> entrada : estados.entrySet()) {
+            Estado estado = entrada.getValue();
+            Map<String, Object> detalle = new LinkedHashMap<>();
+            detalle.put("indice", entrada.getKey().indice);
+            detalle.put("disponible", estado.disponible == null ? "desconocido" : estado.disponible);
+            detalle.put("comprobadoEn", estado.comprobadoEn);
+            if (Boolean.FALSE.equals(estado.disponible)) {
+                detalle.put("reprobarEn", estado.reprobarEn.get());
+            }
+            stats.put(entrada.getKey().name(), detalle);
+        }
+        return stats;
+    }
+}
@@ -14,6 +14,9 @@ public class ReporteServicio {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private PlanificadorConsultas planificador;
+
     private static final String COLLECTION_NAME = "reports";
 
     // Crear reporte
@@ -37,60 +40,36 @@ public class ReporteServicio {
         return reporte;
     }
 
-    // Obtener todos los reportes
+    // Obtener todos los reportes (más recientes primero)
+    // Sin índice sobre createdAt: obtener sin ordenar y ordenar en memoria
     public List<Map<String, Object>> obtenerTodosLosReportes() throws ExecutionException, InterruptedException {
-        try {
-            // Intentar ordenar por createdAt si hay índice
-            ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                    .orderBy("createdAt", Query.Direction.DESCENDING)
-                    .get();
-            
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-            
-            List<Map<String, Object>> reportes = new ArrayList<>();
-            for (QueryDocumentSnapshot doc : documents) {
-                Map<String, Object> reporte = doc.getData();
-                reporte.put("id", doc.getId());
-                reportes.add(reporte);
-            }
-            
-            // Ordenar manualmente por fecha (fallback si orderBy falla)
-            reportes.sort((a, b) -> {
-                Object dateA = a.get("createdAt");
-                Object dateB = b.get("createdAt");
-                if (dateA == null || dateB == null) return 0;
-                if (dateA instanceof Date && dateB instanceof Date) {
-                    return ((Date) dateB).compareTo((Date) dateA); // DESC
-                }
-                return 0;
-            });
-            
-            return reportes;
-        } catch (Exception e) {
-            // Si falla el orderBy (por ejemplo, falta de índice), obtener sin ordenar
-            ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME).get();
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-            
-            List<Map<String, Object>> reportes = new ArrayList<>();
-            for (QueryDocumentSnapshot doc : documents) {
-                Map<String, Object> reporte = doc.getData();
-                reporte.put("id", doc.getId());
-                reportes.add(reporte);
-            }
-            
-            // Ordenar manualmente por fecha
-            reportes.sort((a, b) -> {
-                Object dateA = a.get("createdAt");
-                Object dateB = b.get("createdAt");
-                if (dateA == null || dateB == null) return 0;
-                if (dateA instanceof Date && dateB instanceof Date) {
-                    return ((Date) dateB).compareTo((Date) dateA); // DESC
-                }
-                return 0;
-            });
-            
-            return reportes;
+        return planificador.ejecutar(PlanificadorConsultas.Forma.REPORTES_POR_FECHA,
+                () -> convertirReportes(firestore.collection(COLLECTION_NAME)
+                        .orderBy("createdAt", Query.Direction.DESCENDING)
+                        .get().get().getDocuments()),
+                () -> {
+                    List<Map<String, Object>> reportes = convertirReportes(firestore.collection(COLLECTION_NAME).get().get().getDocuments());
+                    reportes.sort((a, b) -> {
+                        Object dateA = a.get("createdAt");
+                        Object dateB = b.get("createdAt");
+                        if (dateA == null || dateB == null) return 0;
+                        if (dateA instanceof Date && dateB instanceof Date) {
+                            return ((Date) dateB).compareTo((Date) dateA); // DESC
+                        }
+                        return 0;
+                    });
+                    return reportes;
+                });
+    }
+
+    private static List<Map<String, Object>> convertirReportes(List<QueryDocumentSnapshot> documents) {
+        List<Map<String, Object>> reportes = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : documents) {
+            Map<String, Object> reporte = doc.getData();
+            reporte.put("id", doc.getId());
+            reportes.add(reporte);
         }
+        return reportes;
     }
 
     // Eliminar reporte
@@ -0,0 +1,181 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Documento resumen de cada chat: chats/{chatId}
+// { chatId, participants: [a, b], lastMessage: {...}, lastMessageAt, unread: { userId: n },
+//   readCursors: { userId: { lastReadAt, lastReadMessageId } } }
+// Se escribe en el mismo batch que cada mensaje; la bandeja de entrada es una sola consulta sobre chats.
+// El cursor de lectura marca hasta qué mensaje (createdAt, id) ha leído cada participante:
+// un mensaje está leído si su isRead es true o si no es posterior al cursor de su destinatario
+final class ResumenesChat {
+
+    static final String COLLECTION_NAME = "chats";
+
+    // createdAt de los mensajes nuevos: UTC con los nueve decimales siempre presentes, así el orden de
+    // texto de Firestore (orderBy, startAfter, rangos) coincide con el cronológico
+    private static final DateTimeFormatter CREATED_AT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSSSSSSS'Z'").withZone(ZoneOffset.UTC);
+
+    private ResumenesChat() {
+    }
+
+    // Participantes en orden, igual que en el chatId
+    static List<String> participantes(String userId1, String userId2) {
+        List<String> ids = new ArrayList<>(Arrays.asList(userId1, userId2));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    // Campos del resumen que cambian con un mensaje nuevo (sin el contador de no leídos)
+    static Map<String, Object> datosConUltimoMensaje(Mensaje mensaje) {
+        Map<String, Object> ultimo = new HashMap<>();
+        ultimo.put("id", mensaje.getId());
+        ultimo.put("senderId", mensaje.getSenderId());
+        ultimo.put("recipientId", mensaje.getRecipientId());
+        ultimo.put("voiceUrl", mensaje.getVoiceUrl());
+        ultimo.put("createdAt", mensaje.getCreatedAt());
+        ultimo.put("isRead", mensaje.getIsRead());
+
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("chatId", mensaje.getChatId());
+        datos.put("participants", participantes(mensaje.getSenderId(), mensaje.getRecipientId()));
+        datos.put("lastMessage", ultimo);
+        datos.put("lastMessageAt", mensaje.getCreatedAt());
+        return datos;
+    }
+
+    static Mensaje ultimoMensaje(DocumentSnapshot resumen) {
+        Object valor = resumen.get("lastMessage");
+        if (!(valor instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> datos = (Map<?, ?>) valor;
+        Mensaje mensaje = new Mensaje();
+        mensaje.setId(texto(datos, "id"));
+        mensaje.setChatId(resumen.getId());
+        mensaje.setSenderId(texto(datos, "senderId"));
+        mensaje.setRecipientId(texto(datos, "recipientId"));
+        mensaje.setVoiceUrl(texto(datos, "voiceUrl"));
+        mensaje.setCreatedAt(texto(datos, "createdAt"));
+        Object leido = datos.get("isRead");
+        mensaje.setIsRead(leido instanceof Boolean ? (Boolean) leido : null);
+        return mensaje;
+    }
+
+    static int noLeidos(DocumentSnapshot resumen, String userId) {
+        Object valor = resumen.get("unread");
+        if (!(valor instanceof Map)) {
+            return 0;
+        }
+        Object contador = ((Map<?, ?>) valor).get(userId);
+        return contador instanceof Number ? Math.max(0, ((Number) contador).intValue()) : 0;
+    }
+
+    // El otro participante del chat
+    static String otroParticipante(DocumentSnapshot resumen, String userId) {
+        Object valor = resumen.get("participants");
+        if (valor instanceof List) {
+            for (Object participante : (List<?>) valor) {
+                if (participante instanceof String && !participante.equals(userId)) {
+                    return (String) participante;
+                }
+            }
+        }
+        return userId; // Chat consigo mismo
+    }
+
+    // Cursor de lectura del usuario como posición {createdAt, id}; null si nunca ha marcado el chat
+    static String[] cursorDeLectura(DocumentSnapshot resumen, String userId) {
+        if (resumen == null || !resumen.exists()) {
+            return null;
+        }
+        Object valor = resumen.get(FieldPath.of("readCursors", userId));
+        if (!(valor instanceof Map)) {
+            return null;
+        }
+        String leidoHasta = texto((Map<?, ?>) valor, "lastReadAt");
+        String mensajeId = texto((Map<?, ?>) valor, "lastReadMessageId");
+        return leidoHasta != null && mensajeId != null ? new String[]{leidoHasta, mensajeId} : null;
+    }
+
+    static Map<String, Object> datosCursor(Mensaje hasta) {
+        Map<String, Object> cursor = new HashMap<>();
+        cursor.put("lastReadAt", hasta.getCreatedAt());
+        cursor.put("lastReadMessageId", hasta.getId());
+        cursor.put("updatedAt", new Date());
+        return cursor;
+    }
+
+    // Orden del chat: createdAt y, a igualdad, ID
+    // createdAt se compara como instante: Instant.toString() omite los decimales a cero, así que
+    // "...:05Z" y "...:05.120Z" no se ordenan bien como texto. Si alguno no es un instante válido
+    // (datos heredados), se comparan los textos
+    static int comparar(String createdAt1, String id1, String createdAt2, String id2) {
+        Instant instante1 = instante(createdAt1);
+        Instant instante2 = instante(createdAt2);
+        int comparacion = instante1 != null && instante2 != null
+                ? instante1.compareTo(instante2)
+                : Objects.toString(createdAt1, "").compareTo(Objects.toString(createdAt2, ""));
+        return comparacion != 0 ? comparacion : Objects.toString(id1, "").compareTo(Objects.toString(id2, ""));
+    }
+
+    static String marcaDeTiempo(Instant instante) {
+        return CREATED_AT.format(instante);
+    }
+
+    // null si no es un instante ISO-8601 válido
+    static Instant instante(String createdAt) {
+        if (createdAt == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(createdAt);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Prefijo de segundos ("2024-05-01T10:00:05"), de ancho fijo en cualquier createdAt de ese segundo:
+    // como texto, todo createdAt de un segundo anterior es menor que el prefijo y uno del mismo segundo
+    // empieza por él. Permite acotar rangos en Firestore aunque la precisión decimal varíe
+    static String prefijoSegundo(Instant instante) {
+        String texto = instante.truncatedTo(ChronoUnit.SECONDS).toString();
+        return texto.substring(0, texto.length() - 1); // Sin la Z
+    }
+
+    static boolean cubiertoPorCursor(Mensaje mensaje, String[] cursor) {
+        return cursor != null && comparar(mensaje.getCreatedAt(), mensaje.getId(), cursor[0], cursor[1]) <= 0;
+    }
+
+    // isRead derivado: el flag heredado o el cursor de lectura del destinatario
+    static void aplicarCursores(List<Mensaje> mensajes, DocumentSnapshot resumen) {
+        if (resumen == null || !resumen.exists()) {
+            return;
+        }
+        Map<String, String[]> cursores = new HashMap<>();
+        for (Mensaje mensaje : mensajes) {
+            if (Boolean.TRUE.equals(mensaje.getIsRead()) || mensaje.getRecipientId() == null) {
+                continue;
+            }
+            String[] cursor = cursores.computeIfAbsent(mensaje.getRecipientId(), id -> cursorDeLectura(resumen, id));
+            if (cubiertoPorCursor(mensaje, cursor)) {
+                mensaje.setIsRead(true);
+            }
+        }
+    }
+
+    private static String texto(Map<?, ?> datos, String campo) {
+        Object valor = datos.get(campo);
+        return valor instanceof String ? (String) valor : null;
+    }
+}
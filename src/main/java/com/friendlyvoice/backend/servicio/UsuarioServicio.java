@@ -1,450 +1,875 @@
 package com.friendlyvoice.backend.servicio;
 
+import com.friendlyvoice.backend.config.LogMuestreado;
 import com.friendlyvoice.backend.dto.ActualizarPerfilDTO;
+import com.friendlyvoice.backend.dto.CuentaBloqueadaDTO;
+import com.friendlyvoice.backend.dto.PaginaDTO;
 import com.friendlyvoice.backend.dto.UsuarioDTO;
+import com.friendlyvoice.backend.dto.UsuarioResumenDTO;
+import com.friendlyvoice.backend.dto.UsuarioSugeridoDTO;
+import com.friendlyvoice.backend.dto.VistaUsuario;
 import com.friendlyvoice.backend.modelo.Usuario;
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.*;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class UsuarioServicio {
 
+    private static final Logger log = LoggerFactory.getLogger(UsuarioServicio.class);
+
+    // Avisos de isBlocked ausente: uno de cada 100 llega al log
+    private static final LogMuestreado MUESTREO_ISBLOCKED_NULO = new LogMuestreado(100);
+
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private CacheUsuarios cacheUsuarios;
+
+    @Autowired
+    private IndiceEmails indiceEmails;
+
+    @Autowired
+    private IndiceBusquedaUsuarios indiceBusqueda;
+
+    @Autowired
+    private LimitadorIntentosLogin limitadorIntentos;
+
+    @Autowired
+    private CuentasBloqueadas cuentasBloqueadas;
+
+    @Autowired
+    private FiltroEmails filtroEmails;
+
+    @Autowired
+    private IndiceIntereses indiceIntereses;
+
+    @Autowired
+    private GrafoSocial grafoSocial;
+
+    @Value("${paginacion.tamano-defecto:20}")
+    private int tamanoPaginaDefecto;
+
+    @Value("${paginacion.max-tamano:100}")
+    private int maxTamanoPagina;
+
     private static final String COLLECTION_NAME = "users";
+    private static final String FOLLOWERS = "followers";
+    private static final String FOLLOWING = "following";
+    private static final String USUARIO_NO_ENCONTRADO = "Usuario no encontrado";
+    private static final int TAMANO_LOTE_STREAMING = 200;
+    private static final int TAMANO_LOTE_GET_ALL = 100;
+    private static final int LOTES_CONCURRENTES = 4;
+    private static final int MAX_ETIQUETAS_CONSULTA = 10;
+    private static final int MAX_CANDIDATOS_DESCUBRIR = 500;
+
+    // Campos que se transfieren desde Firestore en la vista resumida
+    private static final String[] CAMPOS_RESUMEN = {"name", "avatarUrl"};
 
     // Obtener todos los usuarios
-    public List<UsuarioDTO> obtenerTodosLosUsuarios() throws ExecutionException, InterruptedException {
-        ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME).get();
+    public List<?> obtenerTodosLosUsuarios(VistaUsuario vista) throws ExecutionException, InterruptedException {
+        ApiFuture<QuerySnapshot> future = proyectar(firestore.collection(COLLECTION_NAME), vista).get();
         List<QueryDocumentSnapshot> documents = future.get().getDocuments();
         
         return documents.stream()
-                .map(this::convertirAUsuarioDTO)
+                .map(doc -> convertir(doc, vista))
                 .collect(Collectors.toList());
     }
 
+    // Obtener una página de usuarios (keyset por ID de documento)
+    public PaginaDTO<?> obtenerUsuariosPaginados(Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        int tamano = tamanoPagina(limite);
+        // Se pide un documento extra para saber si hay una página siguiente
+        List<QueryDocumentSnapshot> documents = consultarPaginaDeUsuarios(Cursores.decodificar(cursor), tamano + 1, vista);
+
+        boolean hayMas = documents.size() > tamano;
+        List<Object> usuarios = documents.stream()
+                .limit(tamano)
+                .map(doc -> convertir(doc, vista))
+                .collect(Collectors.toList());
+        String siguiente = hayMas ? Cursores.codificar(documents.get(tamano - 1).getId()) : null;
+        return new PaginaDTO<>(usuarios, siguiente);
+    }
+
+    // Recorrer todos los usuarios por lotes, entregándolos uno a uno (streaming)
+    // En memoria solo vive el lote actual, nunca la colección completa
+    public void recorrerUsuarios(VistaUsuario vista, Consumer<Object> consumidor) throws ExecutionException, InterruptedException {
+        String ultimoId = null;
+        while (true) {
+            List<QueryDocumentSnapshot> lote = consultarPaginaDeUsuarios(ultimoId, TAMANO_LOTE_STREAMING, vista);
+            for (QueryDocumentSnapshot doc : lote) {
+                consumidor.accept(convertir(doc, vista));
+            }
+            if (lote.size() < TAMANO_LOTE_STREAMING) {
+                return;
+            }
+            ultimoId = lote.get(lote.size() - 1).getId();
+        }
+    }
+
+    private List<QueryDocumentSnapshot> consultarPaginaDeUsuarios(String ultimoId, int limite, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        Query query = proyectar(firestore.collection(COLLECTION_NAME), vista)
+                .orderBy(FieldPath.documentId())
+                .limit(limite);
+        if (ultimoId != null) {
+            query = query.startAfter(ultimoId);
+        }
+        return query.get().get().getDocuments();
+    }
+
+    // En la vista resumida solo se piden a Firestore los campos necesarios (select)
+    private Query proyectar(Query query, VistaUsuario vista) {
+        return vista == VistaUsuario.SUMMARY ? query.select(CAMPOS_RESUMEN) : query;
+    }
+
+    private Object convertir(DocumentSnapshot document, VistaUsuario vista) {
+        return vista == VistaUsuario.SUMMARY ? convertirAResumen(document) : convertirAUsuarioDTO(document);
+    }
+
+    private UsuarioResumenDTO convertirAResumen(DocumentSnapshot document) {
+        return new UsuarioResumenDTO(document.getId(), document.getString("name"), document.getString("avatarUrl"));
+    }
+
+    // Tamaño de página acotado por el servidor
+    private int tamanoPagina(Integer limite) {
+        if (limite == null || limite <= 0) {
+            return tamanoPaginaDefecto;
+        }
+        return Math.min(limite, maxTamanoPagina);
+    }
+
     // Obtener usuario por email
     public UsuarioDTO obtenerUsuarioPorEmail(String email) throws ExecutionException, InterruptedException {
-        System.out.println("=== OBTENER USUARIO POR EMAIL ===");
-        System.out.println("Email: " + email);
-        System.out.println("Colección: " + COLLECTION_NAME);
-        
-        ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                .whereEqualTo("email", email)
-                .limit(1)
-                .get();
-        
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-        
-        if (documents.isEmpty()) {
-            System.out.println("❌ Usuario no encontrado con email: " + email);
+        DocumentSnapshot doc = leerPorEmail(email);
+        if (doc == null) {
+            log.debug("Usuario no encontrado con email {}", email);
             throw new RuntimeException("Usuario no encontrado con email: " + email);
         }
-        
-        QueryDocumentSnapshot doc = documents.get(0);
-        String userId = doc.getId();
-        Boolean isBlockedFromFirestore = doc.getBoolean("isBlocked");
-        
-        System.out.println("Usuario encontrado:");
-        System.out.println("  - ID: " + userId);
-        System.out.println("  - Email: " + doc.getString("email"));
-        System.out.println("  - isBlocked en Firestore (RAW): " + isBlockedFromFirestore);
-        System.out.println("  - Tipo de isBlocked: " + (isBlockedFromFirestore != null ? isBlockedFromFirestore.getClass().getName() : "null"));
-        
+
         UsuarioDTO dto = convertirAUsuarioDTO(doc);
-        
-        System.out.println("DTO convertido:");
-        System.out.println("  - ID: " + dto.getId());
-        System.out.println("  - Email: " + dto.getEmail());
-        System.out.println("  - isBlocked en DTO: " + dto.getIsBlocked());
-        System.out.println("  - Tipo de isBlocked en DTO: " + (dto.getIsBlocked() != null ? dto.getIsBlocked().getClass().getName() : "null"));
-        
-        // CRÍTICO: Verificar que isBlocked se lea correctamente
-        if (isBlockedFromFirestore != null && isBlockedFromFirestore && !dto.getIsBlocked()) {
-            System.err.println("⚠⚠⚠ ERROR: isBlocked es true en Firestore pero false en DTO!");
-            System.err.println("  - Firestore: " + isBlockedFromFirestore);
-            System.err.println("  - DTO: " + dto.getIsBlocked());
-            // Forzar el valor correcto
-            dto.setIsBlocked(true);
-            System.err.println("  - DTO corregido a: " + dto.getIsBlocked());
-        }
-        
-        System.out.println("=== FIN OBTENER USUARIO POR EMAIL ===");
+        verificarIsBlocked(doc, dto);
+        cacheUsuarios.guardar(dto, Versionado.version(doc.getUpdateTime()));
         return dto;
     }
 
+    // Leer el documento del usuario resolviendo el email por el índice secundario
+    // Si la entrada del índice quedó obsoleta (email cambiado), se descarta y se resuelve de nuevo
+    private DocumentSnapshot leerPorEmail(String email) throws ExecutionException, InterruptedException {
+        for (int intento = 0; intento < 2; intento++) {
+            // Sin confiar en el "no existe" del filtro: el usuario puede haberse creado en otra instancia
+            String userId = indiceEmails.resolverUserId(email, false);
+            if (userId == null) {
+                return null;
+            }
+            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
+            if (doc.exists() && IndiceEmails.coincide(email, doc.getString("email"))) {
+                return doc;
+            }
+            log.debug("Entrada obsoleta en el índice de emails para {}, se descarta", email);
+            indiceEmails.descartar(email, userId);
+        }
+        return null;
+    }
+
     // Obtener usuario por ID
     public UsuarioDTO obtenerUsuarioPorId(String userId) throws ExecutionException, InterruptedException {
-        System.out.println("=== OBTENER USUARIO POR ID ===");
-        System.out.println("Usuario ID: " + userId);
-        System.out.println("Colección: " + COLLECTION_NAME);
-        
+        return obtenerUsuarioVersionado(userId).getValor();
+    }
+
+    // Obtener usuario por ID junto con su versión pública (ETag)
+    // isBlocked/loginAttempts solo se sirven de la cache dentro del TTL de seguridad; pasado ese
+    // plazo se revalidan con una lectura de esos dos campos (mismo updateTime = perfil sin cambios)
+    public Versionado<UsuarioDTO> obtenerUsuarioVersionado(String userId) throws ExecutionException, InterruptedException {
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
-        ApiFuture<DocumentSnapshot> future = docRef.get();
-        DocumentSnapshot document = future.get();
-
-        if (document.exists()) {
-            Boolean isBlockedFromFirestore = document.getBoolean("isBlocked");
-            
-            System.out.println("Usuario encontrado:");
-            System.out.println("  - ID: " + document.getId());
-            System.out.println("  - Email: " + document.getString("email"));
-            System.out.println("  - isBlocked en Firestore (RAW): " + isBlockedFromFirestore);
-            System.out.println("  - Tipo de isBlocked: " + (isBlockedFromFirestore != null ? isBlockedFromFirestore.getClass().getName() : "null"));
-            
-            UsuarioDTO dto = convertirAUsuarioDTO(document);
-            
-            System.out.println("DTO convertido:");
-            System.out.println("  - ID: " + dto.getId());
-            System.out.println("  - Email: " + dto.getEmail());
-            System.out.println("  - isBlocked en DTO: " + dto.getIsBlocked());
-            System.out.println("  - Tipo de isBlocked en DTO: " + (dto.getIsBlocked() != null ? dto.getIsBlocked().getClass().getName() : "null"));
-            
-            // CRÍTICO: Verificar que isBlocked se lea correctamente
-            if (isBlockedFromFirestore != null && isBlockedFromFirestore && !dto.getIsBlocked()) {
-                System.err.println("⚠⚠⚠ ERROR: isBlocked es true en Firestore pero false en DTO!");
-                System.err.println("  - Firestore: " + isBlockedFromFirestore);
-                System.err.println("  - DTO: " + dto.getIsBlocked());
-                // Forzar el valor correcto
-                dto.setIsBlocked(true);
-                System.err.println("  - DTO corregido a: " + dto.getIsBlocked());
+        Versionado<UsuarioDTO> enCache = cacheUsuarios.obtenerVersionado(userId);
+        if (enCache == null) {
+            String versionEnCache = cacheUsuarios.obtenerVersionSinVerificar(userId);
+            if (versionEnCache != null) {
+                DocumentSnapshot seguridad = docRef.get(FieldMask.of("isBlocked", "loginAttempts")).get();
+                if (seguridad.exists() && versionEnCache.equals(Versionado.version(seguridad.getUpdateTime()))) {
+                    cacheUsuarios.renovarSeguridad(userId, versionEnCache);
+                    enCache = cacheUsuarios.obtenerVersionado(userId);
+                }
             }
-            
-            System.out.println("=== FIN OBTENER USUARIO POR ID ===");
-            return dto;
-        } else {
-            System.out.println("❌ Usuario no encontrado con ID: " + userId);
+        }
+        if (enCache != null) {
+            aplicarLimitador(enCache.getValor());
+            return new Versionado<>(enCache.getValor(), versionPublica(userId, enCache.getVersion()));
+        }
+
+        DocumentSnapshot document = docRef.get().get();
+        if (!document.exists()) {
+            log.debug("Usuario no encontrado con ID {}", userId);
             throw new RuntimeException("Usuario no encontrado con ID: " + userId);
         }
+
+        UsuarioDTO dto = convertirAUsuarioDTO(document);
+        verificarIsBlocked(document, dto);
+        String version = Versionado.version(document.getUpdateTime());
+        cacheUsuarios.guardar(dto, version);
+        return new Versionado<>(dto, versionPublica(userId, version));
+    }
+
+    // Versión pública del perfil en cache, sin copiarlo ni leer Firestore (null si no se conoce)
+    public String versionUsuarioEnCache(String userId) {
+        return versionPublica(userId, cacheUsuarios.obtenerVersion(userId));
+    }
+
+    // La respuesta también refleja el limitador de intentos antes de persistirse: entra en la versión
+    private String versionPublica(String userId, String version) {
+        if (version == null || !limitadorIntentos.conoce(userId)) {
+            return version;
+        }
+        return version + "-" + limitadorIntentos.intentos(userId)
+                + (Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId)) ? "b" : "");
+    }
+
+    // CRÍTICO: Verificar que isBlocked se lea correctamente
+    private void verificarIsBlocked(DocumentSnapshot document, UsuarioDTO dto) {
+        Boolean isBlockedFromFirestore = document.getBoolean("isBlocked");
+        if (isBlockedFromFirestore != null && isBlockedFromFirestore && !dto.getIsBlocked()) {
+            log.error("isBlocked es true en Firestore pero false en el DTO para usuario {}; se corrige", document.getId());
+            dto.setIsBlocked(true);
+        }
+        aplicarLimitador(dto);
+    }
+
+    // Bloqueos e intentos aún no persistidos (write-behind del limitador)
+    private void aplicarLimitador(UsuarioDTO dto) {
+        if (limitadorIntentos.conoce(dto.getId())) {
+            if (Boolean.TRUE.equals(limitadorIntentos.bloqueada(dto.getId()))) {
+                dto.setIsBlocked(true);
+            }
+            dto.setLoginAttempts(Math.max(dto.getLoginAttempts(), limitadorIntentos.intentos(dto.getId())));
+        }
     }
 
     // Crear usuario (upsert simple con set/merge)
+    // Una sola transacción: lee el documento actual, escribe usuario + índice de email y
+    // construye la respuesta con lo leído más lo escrito (sin volver a leer)
     public UsuarioDTO crearUsuario(String userId, Map<String, Object> data) throws ExecutionException, InterruptedException {
-        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
-        Map<String, Object> payload = new HashMap<>(data);
-        // Asegurar campos mínimos
-        payload.putIfAbsent("onboardingComplete", false);
-        payload.putIfAbsent("followers", new ArrayList<>());
-        payload.putIfAbsent("following", new ArrayList<>());
-        // IMPORTANTE: Inicializar loginAttempts a 0 e isBlocked a false para usuarios nuevos
-        payload.putIfAbsent("loginAttempts", 0);
-        payload.putIfAbsent("isBlocked", false);
-        ApiFuture<WriteResult> future = docRef.set(payload, SetOptions.merge());
-        future.get();
-        return obtenerUsuarioPorId(userId);
+        EscrituraUsuario escritura = escribirEnTransaccion(userId, true, (actual, transaction) -> {
+            Map<String, Object> payload = new HashMap<>(data);
+            // Asegurar campos mínimos sin pisar los existentes
+            // followerCount/followingCount no se inicializan aquí: el upsert no debe pisar contadores existentes
+            // IMPORTANTE: loginAttempts a 0 e isBlocked a false solo para usuarios nuevos
+            if (!actual.contains("onboardingComplete")) payload.putIfAbsent("onboardingComplete", false);
+            if (!actual.contains("loginAttempts")) payload.putIfAbsent("loginAttempts", 0);
+            if (!actual.contains("isBlocked")) payload.putIfAbsent("isBlocked", false);
+            protegerCamposDeSeguridad(userId, actual, payload);
+
+            transaction.set(actual.getReference(), payload, SetOptions.merge());
+            return payload;
+        });
+        return escritura.usuario;
     }
 
-    // Buscar usuarios por nombre
-    public List<UsuarioDTO> buscarUsuariosPorNombre(String nombre) throws ExecutionException, InterruptedException {
-        ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                .whereGreaterThanOrEqualTo("name", nombre)
-                .whereLessThanOrEqualTo("name", nombre + "\uf8ff")
-                .get();
-        
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-        
-        return documents.stream()
-                .map(this::convertirAUsuarioDTO)
+    // Buscar usuarios por nombre (sin tildes ni mayúsculas, por prefijo de cualquier palabra)
+    // Sin paginación explícita, las dos vistas devuelven los maxTamanoPagina mejores resultados
+    // y el cursor para seguir con limit/startAfter
+    public PaginaDTO<?> buscarUsuariosPorNombre(String nombre, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        return buscarUsuariosPaginados(nombre, maxTamanoPagina, null, vista);
+    }
+
+    // Búsqueda paginada, ordenada por relevancia
+    // Se responde desde el índice en memoria; mientras no esté listo, consulta por rango en Firestore.
+    // La vista completa lee después solo los documentos de la página
+    public PaginaDTO<?> buscarUsuariosPaginados(String nombre, Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        int tamano = tamanoPagina(limite);
+        PaginaDTO<UsuarioResumenDTO> pagina;
+        if (indiceBusqueda.estaListo()) {
+            pagina = indiceBusqueda.buscar(nombre, tamano, cursor);
+        } else {
+            log.debug("Índice de búsqueda no listo, consulta por rango en Firestore para '{}'", nombre);
+            pagina = indiceBusqueda.paginarDocumentos(consultarPorRangoDeNombre(nombre, VistaUsuario.SUMMARY), nombre, tamano, cursor);
+        }
+        if (vista == VistaUsuario.SUMMARY) {
+            return pagina;
+        }
+        List<String> ids = pagina.getItems().stream()
+                .map(UsuarioResumenDTO::getId)
                 .collect(Collectors.toList());
+        return new PaginaDTO<>(obtenerUsuariosPorIds(ids, vista), pagina.getNextCursor());
+    }
+
+    private List<QueryDocumentSnapshot> consultarPorRangoDeNombre(String nombre, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        return consultaPorRangoDeNombre(nombre, vista).get().get().getDocuments();
+    }
+
+    private Query consultaPorRangoDeNombre(String nombre, VistaUsuario vista) {
+        return proyectar(firestore.collection(COLLECTION_NAME), vista)
+                .whereGreaterThanOrEqualTo("name", nombre)
+                .whereLessThanOrEqualTo("name", nombre + "\uf8ff");
     }
 
     // Actualizar perfil de usuario
+    // Una sola transacción: la comprobación de bloqueo es una precondición sobre el documento leído
+    // y la respuesta se construye con ese documento más los cambios aplicados
     public UsuarioDTO actualizarPerfil(String userId, ActualizarPerfilDTO dto) throws ExecutionException, InterruptedException {
-        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
-        
-        Map<String, Object> updates = new HashMap<>();
-        if (dto.getName() != null) updates.put("name", dto.getName());
-        if (dto.getBio() != null) updates.put("bio", dto.getBio());
-        if (dto.getAvatarUrl() != null) updates.put("avatarUrl", dto.getAvatarUrl());
-        if (dto.getInterests() != null) updates.put("interests", dto.getInterests());
-        if (dto.getHobbies() != null) updates.put("hobbies", dto.getHobbies());
-        if (dto.getBioSoundUrl() != null) updates.put("bioSoundUrl", dto.getBioSoundUrl());
-        
-        // IMPORTANTE: Solo actualizar loginAttempts si la cuenta NO está bloqueada
-        // Si la cuenta está bloqueada, no se puede resetear intentos a través de actualizarPerfil
-        if (dto.getLoginAttempts() != null) {
-            DocumentSnapshot currentDoc = docRef.get().get();
-            if (currentDoc.exists()) {
-                Boolean isBlocked = currentDoc.getBoolean("isBlocked");
-                // Solo resetear intentos si NO está bloqueado
-                if (isBlocked == null || !isBlocked) {
-                    updates.put("loginAttempts", dto.getLoginAttempts());
-                } else {
-                    System.out.println("Intento de actualizar loginAttempts en cuenta bloqueada - IGNORADO");
-                }
+        EscrituraUsuario escritura = escribirEnTransaccion(userId, false, (actual, transaction) -> {
+            Map<String, Object> updates = new HashMap<>();
+            if (dto.getName() != null) updates.put("name", dto.getName());
+            if (dto.getBio() != null) updates.put("bio", dto.getBio());
+            if (dto.getAvatarUrl() != null) updates.put("avatarUrl", dto.getAvatarUrl());
+            if (dto.getInterests() != null) updates.put("interests", dto.getInterests());
+            if (dto.getHobbies() != null) updates.put("hobbies", dto.getHobbies());
+            if (dto.getBioSoundUrl() != null) updates.put("bioSoundUrl", dto.getBioSoundUrl());
+            // IMPORTANTE: Solo actualizar loginAttempts si la cuenta NO está bloqueada
+            // Si la cuenta está bloqueada, no se puede resetear intentos a través de actualizarPerfil
+            if (dto.getLoginAttempts() != null) updates.put("loginAttempts", dto.getLoginAttempts());
+            protegerCamposDeSeguridad(userId, actual, updates);
+
+            // IMPORTANTE: Nunca permitir actualizar isBlocked a través de actualizarPerfil
+            // Solo el admin puede desbloquear cuentas a través del endpoint específico
+            updates.remove("isBlocked");
+
+            // Evitar llamar update con mapa vacío
+            if (!updates.isEmpty()) {
+                transaction.update(actual.getReference(), updates);
             }
-        }
-        
-        // IMPORTANTE: Nunca permitir actualizar isBlocked a través de actualizarPerfil
-        // Solo el admin puede desbloquear cuentas a través del endpoint específico
-        
-        // Evitar llamar update con mapa vacío
-        if (!updates.isEmpty()) {
-            ApiFuture<WriteResult> future = docRef.update(updates);
-            future.get(); // Wait for the update to complete
-        }
+            return updates;
+        });
 
-        return obtenerUsuarioPorId(userId);
+        if (escritura.cambios.containsKey("loginAttempts")) {
+            limitadorIntentos.olvidar(userId);
+        } else if (dto.getLoginAttempts() != null) {
+            log.warn("Intento de actualizar loginAttempts en cuenta bloqueada {} - ignorado", userId);
+        }
+        return escritura.usuario;
     }
 
     // Seguir a un usuario
+    // El grafo social vive en aristas users/{id}/following/{otro} y users/{otro}/followers/{id}
+    // con contadores desnormalizados (followingCount/followerCount) actualizados con increment.
+    // La transacción solo lee la arista propia, así que seguir a un usuario popular no compite
+    // con otros seguidores por su documento. Los contadores de usuarios aún no migrados los
+    // siembra la migración del grafo (MigracionServicio), que los recalcula desde las aristas
     public void seguirUsuario(String userId, String userIdToFollow) throws ExecutionException, InterruptedException {
         DocumentReference userRef = firestore.collection(COLLECTION_NAME).document(userId);
         DocumentReference targetRef = firestore.collection(COLLECTION_NAME).document(userIdToFollow);
+        DocumentReference followingRef = userRef.collection(FOLLOWING).document(userIdToFollow);
+        DocumentReference followerRef = targetRef.collection(FOLLOWERS).document(userId);
 
-        // Obtener datos actuales
-        ApiFuture<DocumentSnapshot> userFuture = userRef.get();
-        ApiFuture<DocumentSnapshot> targetFuture = targetRef.get();
+        ApiFuture<Boolean> future = firestore.runTransaction(transaction -> {
+            DocumentSnapshot arista = transaction.get(followingRef).get();
+            if (arista.exists()) {
+                return false; // Ya lo sigue: operación idempotente
+            }
+            Date ahora = new Date();
+            transaction.set(followingRef, datosArista(userIdToFollow, ahora));
+            transaction.set(followerRef, datosArista(userId, ahora));
+            transaction.update(userRef, "followingCount", FieldValue.increment(1));
+            transaction.update(targetRef, "followerCount", FieldValue.increment(1));
+            return true;
+        });
+        confirmarCambioDeSeguimiento(future, userId, userIdToFollow);
+        grafoSocial.registrarSeguimiento(userId, userIdToFollow);
+    }
+
+    // Dejar de seguir a un usuario
+    public void dejarDeSeguir(String userId, String userIdToUnfollow) throws ExecutionException, InterruptedException {
+        DocumentReference userRef = firestore.collection(COLLECTION_NAME).document(userId);
+        DocumentReference targetRef = firestore.collection(COLLECTION_NAME).document(userIdToUnfollow);
+        DocumentReference followingRef = userRef.collection(FOLLOWING).document(userIdToUnfollow);
+        DocumentReference followerRef = targetRef.collection(FOLLOWERS).document(userId);
 
-        DocumentSnapshot userDoc = userFuture.get();
-        DocumentSnapshot targetDoc = targetFuture.get();
+        ApiFuture<Boolean> future = firestore.runTransaction(transaction -> {
+            DocumentSnapshot arista = transaction.get(followingRef).get();
+            if (!arista.exists()) {
+                // Sin arista: puede ser un seguimiento heredado en arrays de un usuario aún no migrado
+                transaction.update(userRef, FOLLOWING, FieldValue.arrayRemove(userIdToUnfollow));
+                transaction.update(targetRef, FOLLOWERS, FieldValue.arrayRemove(userId));
+                return false;
+            }
+            transaction.delete(followingRef);
+            transaction.delete(followerRef);
+            transaction.update(userRef, "followingCount", FieldValue.increment(-1));
+            transaction.update(targetRef, "followerCount", FieldValue.increment(-1));
+            return true;
+        });
+        confirmarCambioDeSeguimiento(future, userId, userIdToUnfollow);
+        grafoSocial.registrarDejarDeSeguir(userId, userIdToUnfollow);
+    }
 
-        if (!userDoc.exists() || !targetDoc.exists()) {
-            throw new RuntimeException("Usuario no encontrado");
+    // update() falla con NOT_FOUND si alguno de los dos usuarios no existe: la transacción entera se descarta
+    private void confirmarCambioDeSeguimiento(ApiFuture<Boolean> future, String userId, String otroUserId) throws ExecutionException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String errorMessage = (cause != null ? cause.getMessage() : e.getMessage());
+            if (errorMessage != null && (errorMessage.contains("NOT_FOUND") || errorMessage.contains("No document to update"))) {
+                throw new RuntimeException(USUARIO_NO_ENCONTRADO);
+            }
+            throw e;
+        } finally {
+            cacheUsuarios.invalidar(userId, otroUserId);
         }
+    }
 
-        // Actualizar following del usuario actual
-        List<String> following = (List<String>) userDoc.get("following");
-        if (following == null) following = new ArrayList<>();
-        if (!following.contains(userIdToFollow)) {
-            following.add(userIdToFollow);
-            userRef.update("following", following).get();
-        }
+    private Map<String, Object> datosArista(String otroUserId, Date createdAt) {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("userId", otroUserId);
+        datos.put("createdAt", createdAt);
+        return datos;
+    }
 
-        // Actualizar followers del usuario objetivo
-        List<String> followers = (List<String>) targetDoc.get("followers");
-        if (followers == null) followers = new ArrayList<>();
-        if (!followers.contains(userId)) {
-            followers.add(userId);
-            targetRef.update("followers", followers).get();
+    // Verificar si userId sigue a otroUserId
+    // Desde el grafo en memoria; mientras no esté cargado, lectura puntual de la arista
+    public boolean sigueA(String userId, String otroUserId) throws ExecutionException, InterruptedException {
+        if (grafoSocial.estaListo()) {
+            return grafoSocial.sigueA(userId, otroUserId);
         }
+        return firestore.collection(COLLECTION_NAME).document(userId)
+                .collection(FOLLOWING).document(otroUserId)
+                .get().get().exists();
     }
 
-    // Dejar de seguir a un usuario
-    public void dejarDeSeguir(String userId, String userIdToUnfollow) throws ExecutionException, InterruptedException {
-        DocumentReference userRef = firestore.collection(COLLECTION_NAME).document(userId);
-        DocumentReference targetRef = firestore.collection(COLLECTION_NAME).document(userIdToUnfollow);
+    // Listar seguidores de un usuario (paginado por ID)
+    public PaginaDTO<?> obtenerSeguidores(String userId, Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        return listarPorAristas(userId, FOLLOWERS, limite, cursor, vista);
+    }
 
-        // Obtener datos actuales
-        ApiFuture<DocumentSnapshot> userFuture = userRef.get();
-        ApiFuture<DocumentSnapshot> targetFuture = targetRef.get();
+    // Listar usuarios seguidos por un usuario (paginado por ID)
+    public PaginaDTO<?> obtenerSiguiendo(String userId, Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        return listarPorAristas(userId, FOLLOWING, limite, cursor, vista);
+    }
+
+    private PaginaDTO<?> listarPorAristas(String userId, String subcoleccion, Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        int tamano = tamanoPagina(limite);
+        List<String> ids = listarIdsAristas(userId, subcoleccion, Cursores.decodificar(cursor), tamano + 1);
+        boolean hayMas = ids.size() > tamano;
+        List<String> idsPagina = hayMas ? ids.subList(0, tamano) : ids;
+        String siguiente = hayMas ? Cursores.codificar(idsPagina.get(idsPagina.size() - 1)) : null;
+        return new PaginaDTO<>(obtenerUsuariosPorIds(idsPagina, vista), siguiente);
+    }
 
-        DocumentSnapshot userDoc = userFuture.get();
-        DocumentSnapshot targetDoc = targetFuture.get();
+    // IDs de las aristas de una subcolección (solo nombres de documento, sin datos)
+    private List<String> listarIdsAristas(String userId, String subcoleccion, String ultimoId, int limite) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(COLLECTION_NAME).document(userId).collection(subcoleccion)
+                .select(FieldPath.documentId())
+                .orderBy(FieldPath.documentId())
+                .limit(limite);
+        if (ultimoId != null) {
+            query = query.startAfter(ultimoId);
+        }
+        return query.get().get().getDocuments().stream()
+                .map(DocumentSnapshot::getId)
+                .collect(Collectors.toList());
+    }
+
+    // Descubrir usuarios con intereses y hobbies en común ("gente como tú")
+    // Se excluyen el propio usuario, los que ya sigue y las cuentas bloqueadas
+    public List<UsuarioSugeridoDTO> descubrirUsuarios(String userId, Integer limite) throws ExecutionException, InterruptedException {
+        int tamano = tamanoPagina(limite);
+        Predicate<String> yaSeguido;
+        if (grafoSocial.estaListo()) {
+            yaSeguido = id -> grafoSocial.sigueA(userId, id);
+        } else {
+            Set<String> siguiendo = idsSiguiendo(userId);
+            yaSeguido = siguiendo::contains;
+        }
+        Predicate<String> excluir = id -> yaSeguido.test(id)
+                || (cuentasBloqueadas.estaListo() && cuentasBloqueadas.contiene(id));
 
-        if (!userDoc.exists() || !targetDoc.exists()) {
-            throw new RuntimeException("Usuario no encontrado");
+        if (indiceIntereses.estaListo()) {
+            return indiceIntereses.sugerir(userId, tamano, excluir);
         }
 
-        // Actualizar following del usuario actual
-        List<String> following = (List<String>) userDoc.get("following");
-        if (following != null) {
-            following.remove(userIdToUnfollow);
-            userRef.update("following", following).get();
+        // Respaldo: array-contains-any admite como máximo MAX_ETIQUETAS_CONSULTA valores por consulta
+        DocumentSnapshot propio = firestore.collection(COLLECTION_NAME).document(userId).get().get();
+        if (!propio.exists()) {
+            throw new RuntimeException("Usuario no encontrado con ID: " + userId);
+        }
+        List<DocumentSnapshot> candidatos = new ArrayList<>();
+        for (String campo : new String[]{"interests", "hobbies"}) {
+            List<String> valores = listaDeTextos(propio.getData(), campo);
+            if (valores == null || valores.isEmpty()) {
+                continue;
+            }
+            candidatos.addAll(firestore.collection(COLLECTION_NAME)
+                    .whereArrayContainsAny(campo, new ArrayList<>(valores.subList(0, Math.min(valores.size(), MAX_ETIQUETAS_CONSULTA))))
+                    .limit(MAX_CANDIDATOS_DESCUBRIR)
+                    .get().get().getDocuments());
         }
+        return indiceIntereses.sugerirDesdeDocumentos(propio, candidatos, tamano, excluir);
+    }
 
-        // Actualizar followers del usuario objetivo
-        List<String> followers = (List<String>) targetDoc.get("followers");
-        if (followers != null) {
-            followers.remove(userId);
-            targetRef.update("followers", followers).get();
+    // IDs de todos los usuarios seguidos, por lotes de la subcolección following
+    private Set<String> idsSiguiendo(String userId) throws ExecutionException, InterruptedException {
+        Set<String> ids = new HashSet<>();
+        String ultimoId = null;
+        while (true) {
+            List<String> lote = listarIdsAristas(userId, FOLLOWING, ultimoId, TAMANO_LOTE_STREAMING);
+            ids.addAll(lote);
+            if (lote.size() < TAMANO_LOTE_STREAMING) {
+                return ids;
+            }
+            ultimoId = lote.get(lote.size() - 1);
         }
     }
 
     // Obtener seguidores mutuos
-    public List<UsuarioDTO> obtenerSeguidoresMutuos(String userId) throws ExecutionException, InterruptedException {
-        DocumentSnapshot userDoc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-        
-        if (!userDoc.exists()) {
-            throw new RuntimeException("Usuario no encontrado");
+    public List<?> obtenerSeguidoresMutuos(String userId, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        List<Object> mutuos = new ArrayList<>();
+        String cursor = null;
+        do {
+            PaginaDTO<?> pagina = obtenerSeguidoresMutuosPaginados(userId, maxTamanoPagina, cursor, vista);
+            mutuos.addAll(pagina.getItems());
+            cursor = pagina.getNextCursor();
+        } while (cursor != null);
+        return mutuos;
+    }
+
+    // Obtener seguidores mutuos paginados (ordenados por ID, cursor = último ID devuelto)
+    // Con el grafo en memoria es una intersección de listas ordenadas; si no está cargado,
+    // recorre following por lotes y comprueba con getAll qué IDs existen también en followers
+    public PaginaDTO<?> obtenerSeguidoresMutuosPaginados(String userId, Integer limite, String cursor, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        obtenerUsuarioPorId(userId); // Lanza "Usuario no encontrado" si no existe
+
+        int tamano = tamanoPagina(limite);
+        String ultimoId = Cursores.decodificar(cursor);
+        if (grafoSocial.estaListo()) {
+            List<String> ids = grafoSocial.mutuos(userId, ultimoId, tamano + 1);
+            boolean hayMas = ids.size() > tamano;
+            List<String> idsPagina = hayMas ? ids.subList(0, tamano) : ids;
+            String siguiente = hayMas ? Cursores.codificar(idsPagina.get(idsPagina.size() - 1)) : null;
+            return new PaginaDTO<>(obtenerUsuariosPorIds(idsPagina, vista), siguiente);
         }
 
-        List<String> following = (List<String>) userDoc.get("following");
-        List<String> followers = (List<String>) userDoc.get("followers");
+        List<String> idsPagina = new ArrayList<>();
+        boolean hayMas = false;
 
-        if (following == null || followers == null) {
-            return new ArrayList<>();
+        while (!hayMas) {
+            List<String> siguiendo = listarIdsAristas(userId, FOLLOWING, ultimoId, TAMANO_LOTE_GET_ALL);
+            if (siguiendo.isEmpty()) {
+                break;
+            }
+            Set<String> seguidores = idsConArista(userId, FOLLOWERS, siguiendo);
+            for (String id : siguiendo) {
+                if (!seguidores.contains(id)) {
+                    continue;
+                }
+                if (idsPagina.size() == tamano) {
+                    hayMas = true;
+                    break;
+                }
+                idsPagina.add(id);
+            }
+            if (siguiendo.size() < TAMANO_LOTE_GET_ALL) {
+                break;
+            }
+            ultimoId = siguiendo.get(siguiendo.size() - 1);
         }
 
-        // Encontrar IDs mutuos
-        Set<String> mutualIds = new HashSet<>(following);
-        mutualIds.retainAll(followers);
+        String siguiente = hayMas ? Cursores.codificar(idsPagina.get(idsPagina.size() - 1)) : null;
+        return new PaginaDTO<>(obtenerUsuariosPorIds(idsPagina, vista), siguiente);
+    }
 
-        // Obtener usuarios mutuos
-        List<UsuarioDTO> mutualUsers = new ArrayList<>();
-        for (String mutualId : mutualIds) {
-            try {
-                mutualUsers.add(obtenerUsuarioPorId(mutualId));
-            } catch (Exception e) {
-                // Skip if user not found
+    // De una lista de IDs, cuáles tienen arista en users/{userId}/{subcoleccion}
+    private Set<String> idsConArista(String userId, String subcoleccion, List<String> ids) throws ExecutionException, InterruptedException {
+        CollectionReference aristas = firestore.collection(COLLECTION_NAME).document(userId).collection(subcoleccion);
+        DocumentReference[] refs = ids.stream().map(aristas::document).toArray(DocumentReference[]::new);
+        Set<String> existentes = new HashSet<>();
+        for (DocumentSnapshot doc : firestore.getAll(refs, FieldMask.of("createdAt")).get()) {
+            if (doc.exists()) {
+                existentes.add(doc.getId());
+            }
+        }
+        return existentes;
+    }
+
+    // Obtener varios usuarios por ID: aciertos de cache + Firestore.getAll por lotes
+    // Los lotes se lanzan en paralelo (como máximo LOTES_CONCURRENTES a la vez)
+    // Los usuarios inexistentes se omiten; se respeta el orden de los IDs
+    // En la vista resumida getAll usa una máscara de campos y el resultado no se cachea
+    private List<Object> obtenerUsuariosPorIds(List<String> ids, VistaUsuario vista) throws ExecutionException, InterruptedException {
+        Map<String, Object> encontrados = new HashMap<>();
+        List<DocumentReference> pendientes = new ArrayList<>();
+        FieldMask mascara = vista == VistaUsuario.SUMMARY ? FieldMask.of(CAMPOS_RESUMEN) : null;
+        for (String id : ids) {
+            UsuarioDTO enCache = cacheUsuarios.obtener(id);
+            if (enCache != null) {
+                encontrados.put(id, vista == VistaUsuario.SUMMARY
+                        ? new UsuarioResumenDTO(enCache.getId(), enCache.getName(), enCache.getAvatarUrl())
+                        : enCache);
+            } else {
+                pendientes.add(firestore.collection(COLLECTION_NAME).document(id));
             }
         }
 
-        return mutualUsers;
+        int porOleada = TAMANO_LOTE_GET_ALL * LOTES_CONCURRENTES;
+        for (int inicio = 0; inicio < pendientes.size(); inicio += porOleada) {
+            List<ApiFuture<List<DocumentSnapshot>>> lotes = new ArrayList<>();
+            int finOleada = Math.min(inicio + porOleada, pendientes.size());
+            for (int i = inicio; i < finOleada; i += TAMANO_LOTE_GET_ALL) {
+                List<DocumentReference> lote = pendientes.subList(i, Math.min(i + TAMANO_LOTE_GET_ALL, finOleada));
+                lotes.add(firestore.getAll(lote.toArray(new DocumentReference[0]), mascara));
+            }
+            for (List<DocumentSnapshot> documentos : ApiFutures.allAsList(lotes).get()) {
+                for (DocumentSnapshot doc : documentos) {
+                    if (doc.exists()) {
+                        Object usuario = convertir(doc, vista);
+                        if (usuario instanceof UsuarioDTO) {
+                            cacheUsuarios.guardar((UsuarioDTO) usuario, Versionado.version(doc.getUpdateTime()));
+                        }
+                        encontrados.put(doc.getId(), usuario);
+                    }
+                }
+            }
+        }
+
+        List<Object> usuarios = new ArrayList<>();
+        for (String id : ids) {
+            Object usuario = encontrados.get(id);
+            if (usuario != null) {
+                usuarios.add(usuario);
+            }
+        }
+        return usuarios;
     }
 
     // Completar onboarding
     public UsuarioDTO completarOnboarding(String userId, Map<String, Object> data) throws ExecutionException, InterruptedException {
-        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
-        
-        Map<String, Object> updates = new HashMap<>(data);
-        updates.put("onboardingComplete", true);
-
-        ApiFuture<WriteResult> future = docRef.update(updates);
-        future.get();
+        EscrituraUsuario escritura = escribirEnTransaccion(userId, false, (actual, transaction) -> {
+            Map<String, Object> updates = new HashMap<>(data);
+            updates.put("onboardingComplete", true);
+            protegerCamposDeSeguridad(userId, actual, updates);
+            transaction.update(actual.getReference(), updates);
+            return updates;
+        });
+        return escritura.usuario;
+    }
 
-        return obtenerUsuarioPorId(userId);
+    // Cambios a escribir a partir del documento leído dentro de la transacción
+    // Puede ejecutarse varias veces si Firestore reintenta: sin efectos fuera de la transacción
+    @FunctionalInterface
+    private interface CambiosUsuario {
+        Map<String, Object> calcular(DocumentSnapshot actual, Transaction transaction);
     }
 
-    // Incrementar intentos fallidos de login y bloquear si llega a 3
-    // CRÍTICO: Usa TRANSACCIÓN de Firestore para garantizar atomicidad y evitar race conditions
-    public void incrementarIntentosLogin(String userId) throws ExecutionException, InterruptedException {
-        final DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
+    private static final class EscrituraUsuario {
+        final UsuarioDTO usuario;
+        final Map<String, Object> cambios;
+        final String emailAnterior;
 
-        // Usa una transacción para asegurar que la lectura y escritura son atómicas
-        ApiFuture<Void> transactionFuture = firestore.runTransaction(transaction -> {
-            DocumentSnapshot doc = transaction.get(docRef).get(); // Lectura dentro de la transacción
+        EscrituraUsuario(UsuarioDTO usuario, Map<String, Object> cambios, String emailAnterior) {
+            this.usuario = usuario;
+            this.cambios = cambios;
+            this.emailAnterior = emailAnterior;
+        }
+    }
 
-            if (!doc.exists()) {
+    // Lectura + escritura en una transacción; la respuesta es el documento leído con los cambios aplicados
+    // Los cambios solo contienen valores literales (nunca FieldValue), así que el resultado es exacto
+    private EscrituraUsuario escribirEnTransaccion(String userId, boolean crearSiNoExiste, CambiosUsuario cambiosUsuario) throws ExecutionException, InterruptedException {
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(userId);
+        ApiFuture<EscrituraUsuario> future = firestore.runTransaction(transaction -> {
+            DocumentSnapshot actual = transaction.get(docRef).get();
+            if (!actual.exists() && !crearSiNoExiste) {
                 throw new RuntimeException("Usuario no encontrado con ID: " + userId);
             }
+            Map<String, Object> cambios = cambiosUsuario.calcular(actual, transaction);
+            String emailAnterior = actual.exists() ? actual.getString("email") : null;
+            indexarEmail(userId, emailAnterior, cambios, transaction);
+            Map<String, Object> datos = actual.exists() ? new HashMap<>(actual.getData()) : new HashMap<>();
+            datos.putAll(cambios);
+            return new EscrituraUsuario(convertirAUsuarioDTO(userId, datos), cambios, emailAnterior);
+        });
+
+        EscrituraUsuario escritura;
+        try {
+            escritura = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            cacheUsuarios.invalidar(userId);
+            throw e;
+        }
+        if (escritura.cambios.containsKey("email")) {
+            Object email = escritura.cambios.get("email");
+            if (!IndiceEmails.coincide(escritura.emailAnterior, email instanceof String ? (String) email : null)) {
+                indiceEmails.olvidar(escritura.emailAnterior);
+            }
+            if (email instanceof String) {
+                indiceEmails.recordar((String) email, userId);
+            }
+        }
+        aplicarLimitador(escritura.usuario);
+        cacheUsuarios.invalidar(userId);
+        cachearTrasEscritura(docRef);
+        indiceIntereses.actualizar(escritura.usuario);
+        return escritura;
+    }
 
-            // Obtener intentos actuales
-            Long loginAttemptsLong = doc.getLong("loginAttempts");
-            Integer intentosActuales = (loginAttemptsLong != null) ? loginAttemptsLong.intValue() : 0;
-            Boolean isBlocked = doc.getBoolean("isBlocked");
+    // runTransaction no expone el updateTime de su escritura: el documento se relee en segundo
+    // plano y se guarda con esa versión, así la siguiente petición ya puede llevar ETag.
+    // Si dos escrituras se cruzan, la cache conserva la versión más reciente de las dos relecturas
+    private void cachearTrasEscritura(DocumentReference docRef) {
+        ApiFutures.addCallback(docRef.get(), new ApiFutureCallback<DocumentSnapshot>() {
+            @Override
+            public void onSuccess(DocumentSnapshot doc) {
+                if (doc.exists()) {
+                    UsuarioDTO dto = convertirAUsuarioDTO(doc);
+                    verificarIsBlocked(doc, dto);
+                    cacheUsuarios.guardar(dto, Versionado.version(doc.getUpdateTime()));
+                }
+            }
 
-            // 1. VERIFICAR BLOQUEO
-            if (isBlocked != null && isBlocked) {
-                System.out.println("Usuario ya está bloqueado, ignorando intento.");
-                return null; // Salir de la transacción sin error
+            @Override
+            public void onFailure(Throwable t) {
+                log.debug("No se pudo releer {} tras la escritura: {}", docRef.getId(), t.getMessage());
             }
+        }, MoreExecutors.directExecutor());
+    }
 
-            // 2. INCREMENTAR
-            Integer intentosNuevos = intentosActuales + 1;
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("loginAttempts", intentosNuevos);
+    // Todo cambio de email (alta, upsert u onboarding) mantiene emails/{email} en la misma transacción
+    // que el usuario: entrada nueva y fuera la del email anterior. El filtro se actualiza antes
+    // del commit (idempotente: un reintento o un fallo solo dejan un falso positivo)
+    private void indexarEmail(String userId, String emailAnterior, Map<String, Object> cambios, Transaction transaction) {
+        if (!cambios.containsKey("email")) {
+            return;
+        }
+        Object valor = cambios.get("email");
+        String nuevo = valor instanceof String && !((String) valor).isBlank() ? (String) valor : null;
+        if (nuevo != null) {
+            filtroEmails.agregar(nuevo);
+            transaction.set(indiceEmails.referencia(nuevo), indiceEmails.datosIndice(userId, nuevo));
+        }
+        if (emailAnterior != null && !emailAnterior.isBlank() && !IndiceEmails.coincide(emailAnterior, nuevo)) {
+            transaction.delete(indiceEmails.referencia(emailAnterior));
+        }
+    }
+
+    // Precondición de seguridad: en una cuenta bloqueada (en Firestore o en el limitador)
+    // no se pueden cambiar loginAttempts ni isBlocked por estas rutas
+    private void protegerCamposDeSeguridad(String userId, DocumentSnapshot actual, Map<String, Object> cambios) {
+        Boolean isBlocked = actual.getBoolean("isBlocked");
+        if ((isBlocked != null && isBlocked) || Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId))) {
+            cambios.remove("loginAttempts");
+            cambios.remove("isBlocked");
+        }
+    }
+
+    // Incrementar intentos fallidos de login y bloquear si llega a 3
+    // La decisión se toma en memoria (LimitadorIntentosLogin, sin locks): un ataque de fuerza bruta
+    // ya no provoca una transacción por intento compitiendo sobre el mismo documento.
+    // Firestore se actualiza en segundo plano: el bloqueo al instante y los intentos en el volcado periódico
+    public void incrementarIntentosLogin(String userId) throws ExecutionException, InterruptedException {
+        if (!limitadorIntentos.conoce(userId)) {
+            sembrarLimitador(userId);
+        }
+
+        LimitadorIntentosLogin.Resultado resultado = limitadorIntentos.registrarFallo(userId);
+        if (resultado == LimitadorIntentosLogin.Resultado.YA_BLOQUEADA) {
+            log.debug("Usuario {} ya está bloqueado, se ignora el intento", userId);
+        } else if (resultado == LimitadorIntentosLogin.Resultado.BLOQUEADA) {
+            log.info("Usuario {} bloqueado automáticamente tras {} intentos fallidos", userId, LimitadorIntentosLogin.UMBRAL_BLOQUEO);
+            persistirBloqueo(userId);
+        } else if (log.isDebugEnabled()) {
+            log.debug("Intentos de login de {}: {}", userId, limitadorIntentos.intentos(userId));
+        }
+    }
+
+    // Primer intento de la cuenta en esta instancia: partir de lo persistido en Firestore
+    private void sembrarLimitador(String userId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
+        if (!doc.exists()) {
+            throw new RuntimeException("Usuario no encontrado con ID: " + userId);
+        }
+        Long loginAttempts = doc.getLong("loginAttempts");
+        Boolean isBlocked = doc.getBoolean("isBlocked");
+        limitadorIntentos.sembrar(userId, loginAttempts != null ? loginAttempts.intValue() : 0, isBlocked != null && isBlocked);
+    }
 
-            // 3. VERIFICAR BLOQUEO POR LÍMITE (3 INTENTOS)
-            // Usar >= para mayor seguridad, aunque el caso más común será == 3
-            if (intentosNuevos >= 3) {
-                updates.put("isBlocked", true);
-                System.out.println("⚠⚠⚠ BLOQUEANDO USUARIO (Transacción): intentos >= 3. isBlocked = true");
+    // Escritura asíncrona del cruce de umbral; hasta que llegue, el limitador ya responde "bloqueada"
+    private void persistirBloqueo(String userId) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("loginAttempts", LimitadorIntentosLogin.UMBRAL_BLOQUEO);
+        updates.put("isBlocked", true);
+        cacheUsuarios.invalidar(userId);
+        ApiFuture<WriteResult> future = firestore.collection(COLLECTION_NAME).document(userId).update(updates);
+        ApiFutures.addCallback(future, new ApiFutureCallback<WriteResult>() {
+            @Override
+            public void onSuccess(WriteResult resultado) {
+                cacheUsuarios.invalidar(userId);
             }
-            
-            // 4. ESCRITURA ATÓMICA dentro de la transacción
-            transaction.update(docRef, updates); // Escritura dentro de la transacción
-            
-            System.out.println("✓ Intentos de login actualizados (Transacción): " + intentosActuales + " -> " + intentosNuevos);
-            if (intentosNuevos >= 3) {
-                System.out.println("✓ Usuario bloqueado automáticamente (isBlocked = true)");
+
+            @Override
+            public void onFailure(Throwable t) {
+                // El limitador mantiene el bloqueo en memoria; el volcado periódico lo reintenta
+                log.error("No se pudo persistir el bloqueo del usuario {}", userId, t);
+                limitadorIntentos.marcarPendiente(userId);
             }
-            
-            return null; // Transacción exitosa
-        });
+        }, MoreExecutors.directExecutor());
+    }
 
-        // Esperar a que la transacción termine
-        try {
-            System.out.println("⏳ Esperando que la transacción termine...");
-            transactionFuture.get(); // Esto lanza ExecutionException si la transacción falla
-            System.out.println("✅ Transacción completada exitosamente");
-        } catch (ExecutionException e) {
-            System.err.println("╔══════════════════════════════════════════════════════════════╗");
-            System.err.println("║ ❌ ERROR FATAL EN TRANSACCIÓN                                ║");
-            System.err.println("╠══════════════════════════════════════════════════════════════╣");
-            System.err.println("║ Usuario ID: " + userId);
-            System.err.println("║ Tipo de excepción: " + e.getClass().getName());
-            System.err.println("║ Mensaje: " + e.getMessage());
-            if (e.getCause() != null) {
-                System.err.println("║ Causa: " + e.getCause().getClass().getName());
-                System.err.println("║ Mensaje de causa: " + e.getCause().getMessage());
-                System.err.println("║ Stack trace de causa:");
-                e.getCause().printStackTrace();
-            } else {
-                System.err.println("║ Causa: N/A");
+    // Volcado periódico de los intentos acumulados en memoria (write-behind)
+    // BulkWriter: un fallo en un documento (p.ej. usuario borrado) no afecta al resto
+    @Scheduled(fixedDelayString = "${login.intentos.volcado-ms:5000}")
+    public void volcarIntentosPendientes() {
+        Map<String, Integer> pendientes = limitadorIntentos.extraerPendientes();
+        if (!pendientes.isEmpty()) {
+            BulkWriter bulkWriter = firestore.bulkWriter();
+            for (Map.Entry<String, Integer> entrada : pendientes.entrySet()) {
+                String userId = entrada.getKey();
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("loginAttempts", entrada.getValue());
+                if (Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId))) {
+                    updates.put("isBlocked", true);
+                }
+                ApiFutures.addCallback(bulkWriter.update(firestore.collection(COLLECTION_NAME).document(userId), updates),
+                        new ApiFutureCallback<WriteResult>() {
+                            @Override
+                            public void onSuccess(WriteResult resultado) {
+                                cacheUsuarios.invalidar(userId);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t) {
+                                log.warn("No se pudieron volcar los intentos de login de {}: {}", userId, t.getMessage());
+                                // Usuario borrado: nada que persistir; cualquier otro error se reintenta
+                                if (t instanceof BulkWriterException
+                                        && ((BulkWriterException) t).getStatus().getCode() == Status.Code.NOT_FOUND) {
+                                    limitadorIntentos.olvidar(userId);
+                                } else {
+                                    limitadorIntentos.marcarPendiente(userId);
+                                }
+                            }
+                        }, MoreExecutors.directExecutor());
             }
-            System.err.println("╚══════════════════════════════════════════════════════════════╝");
-            System.err.println("Stack trace completo de ExecutionException:");
-            e.printStackTrace();
-            
-            // CRÍTICO: Re-lanzar la excepción para que el controlador la capture
-            // NO capturar silenciosamente - el controlador debe saber que falló
-            throw new RuntimeException("Error crítico en transacción de Firestore para usuario " + userId + ": " + e.getMessage(), e);
-        } catch (InterruptedException e) {
-            System.err.println("╔══════════════════════════════════════════════════════════════╗");
-            System.err.println("║ ❌ TRANSACCIÓN INTERRUMPIDA                                  ║");
-            System.err.println("╠══════════════════════════════════════════════════════════════╣");
-            System.err.println("║ Usuario ID: " + userId);
-            System.err.println("║ Mensaje: " + e.getMessage());
-            System.err.println("╚══════════════════════════════════════════════════════════════╝");
-            e.printStackTrace();
-            
-            // Restaurar el estado de interrupción
-            Thread.currentThread().interrupt();
-            
-            // CRÍTICO: Re-lanzar la excepción para que el controlador la capture
-            throw new RuntimeException("Transacción interrumpida para usuario " + userId + ": " + e.getMessage(), e);
+            bulkWriter.close();
+            log.debug("Intentos de login volcados para {} cuentas", pendientes.size());
         }
+        limitadorIntentos.purgarInactivas();
     }
     
     // Incrementar intentos fallidos de login por email
     public void incrementarIntentosLoginPorEmail(String email) throws ExecutionException, InterruptedException {
-        System.out.println("=== INCREMENTAR INTENTOS POR EMAIL ===");
-        System.out.println("Email: " + email);
-        
-        try {
-            ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("email", email)
-                    .limit(1)
-                    .get();
-            
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-            
-            if (documents.isEmpty()) {
-                // Si el usuario no existe en Firestore, no hacer nada (puede ser que aún no se haya creado)
-                System.out.println("⚠ Usuario no encontrado con email: " + email + ". Ignorando intento.");
-                return;
-            }
-            
-            String userId = documents.get(0).getId();
-            System.out.println("Usuario encontrado - ID: " + userId);
-            System.out.println("Llamando a incrementarIntentosLogin(userId)...");
-            
-            // CRÍTICO: Llamar a incrementarIntentosLogin y propagar cualquier excepción
-            incrementarIntentosLogin(userId);
-            
-            System.out.println("✓ incrementarIntentosLogin completado exitosamente");
-            System.out.println("=== FIN INCREMENTAR INTENTOS POR EMAIL ===");
-        } catch (RuntimeException e) {
-            // CRÍTICO: Si incrementarIntentosLogin lanza RuntimeException, propagarla
-            System.err.println("❌ RuntimeException capturada en incrementarIntentosLoginPorEmail:");
-            System.err.println("  - Email: " + email);
-            System.err.println("  - Tipo: " + e.getClass().getName());
-            System.err.println("  - Mensaje: " + e.getMessage());
-            e.printStackTrace();
-            // Re-lanzar para que el controlador la capture
-            throw e;
-        } catch (ExecutionException e) {
-            System.err.println("❌ ExecutionException capturada en incrementarIntentosLoginPorEmail:");
-            System.err.println("  - Email: " + email);
-            System.err.println("  - Mensaje: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
-        } catch (InterruptedException e) {
-            System.err.println("❌ InterruptedException capturada en incrementarIntentosLoginPorEmail:");
-            System.err.println("  - Email: " + email);
-            System.err.println("  - Mensaje: " + e.getMessage());
-            Thread.currentThread().interrupt();
-            e.printStackTrace();
-            throw e;
+        // Un intento no puede perderse porque el filtro aún no conozca un alta reciente
+        String userId = indiceEmails.resolverUserId(email, false);
+        if (userId == null) {
+            // Si el usuario no existe en Firestore, no hacer nada (puede ser que aún no se haya creado)
+            log.debug("Usuario no encontrado con email {}, se ignora el intento", email);
+            return;
         }
+        
+        // CRÍTICO: propagar cualquier excepción para que el controlador la capture
+        incrementarIntentosLogin(userId);
     }
     
     // Resetear intentos de login (cuando el login es exitoso)
@@ -460,24 +885,23 @@ public class UsuarioServicio {
         // Verificar si la cuenta está bloqueada
         Boolean isBlocked = doc.getBoolean("isBlocked");
         
-        // LOG PARA DEBUG
-        System.out.println("=== RESETEAR INTENTOS LOGIN ===");
-        System.out.println("Usuario ID: " + userId);
-        System.out.println("isBlocked: " + isBlocked);
-        
         // IMPORTANTE: Si la cuenta está bloqueada, NO resetear intentos ni desbloquear
         // Solo el admin puede desbloquear cuentas
-        if (isBlocked != null && isBlocked) {
-            System.out.println("Usuario bloqueado - NO se resetean intentos. Solo admin puede desbloquear.");
+        // El limitador puede saber del bloqueo antes de que se haya persistido
+        if ((isBlocked != null && isBlocked) || Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId))) {
+            log.debug("Usuario {} bloqueado: no se resetean intentos, solo un admin puede desbloquear", userId);
             return;
         }
         
         // Solo resetear intentos si la cuenta NO está bloqueada
         Map<String, Object> updates = new HashMap<>();
         updates.put("loginAttempts", 0);
-        docRef.update(updates).get();
-        System.out.println("Intentos de login reseteados (usuario no bloqueado)");
-        System.out.println("=== FIN RESETEAR INTENTOS ===");
+        try {
+            docRef.update(updates).get();
+        } finally {
+            cacheUsuarios.invalidar(userId);
+        }
+        limitadorIntentos.olvidar(userId);
     }
     
     // Desbloquear cuenta de usuario (solo admin)
@@ -486,12 +910,31 @@ public class UsuarioServicio {
         Map<String, Object> updates = new HashMap<>();
         updates.put("isBlocked", false);
         updates.put("loginAttempts", 0);
-        docRef.update(updates).get();
+        try {
+            docRef.update(updates).get();
+        } finally {
+            cacheUsuarios.invalidar(userId);
+        }
+        limitadorIntentos.olvidar(userId);
+        cuentasBloqueadas.quitar(userId);
         return obtenerUsuarioPorId(userId);
     }
     
     // Verificar si la cuenta está bloqueada
     public boolean estaBloqueada(String userId) throws ExecutionException, InterruptedException {
+        // El limitador conoce los bloqueos recientes antes de que lleguen a Firestore
+        if (Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId))) {
+            return true;
+        }
+        // Conjunto sincronizado por listener: búsqueda en memoria, sin leer el documento
+        if (cuentasBloqueadas.estaListo()) {
+            return cuentasBloqueadas.contiene(userId);
+        }
+        // Solo se confía en la cache si los campos de seguridad siguen vigentes (TTL corto)
+        UsuarioDTO enCache = cacheUsuarios.obtenerVerificado(userId);
+        if (enCache != null) {
+            return enCache.getIsBlocked() != null && enCache.getIsBlocked();
+        }
         DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
         if (!doc.exists()) {
             return false;
@@ -500,82 +943,137 @@ public class UsuarioServicio {
         return isBlocked != null && isBlocked;
     }
 
+    // Verificar bloqueo por email antes del login
+    // Devuelve null si no existe ningún usuario con ese email
+    public Boolean estaBloqueadaPorEmail(String email) throws ExecutionException, InterruptedException {
+        if (!cuentasBloqueadas.estaListo()) {
+            try {
+                UsuarioDTO usuario = obtenerUsuarioPorEmail(email);
+                return usuario.getIsBlocked() != null && usuario.getIsBlocked();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        if (cuentasBloqueadas.contieneEmail(email)) {
+            return true;
+        }
+        String userId = indiceEmails.resolverUserId(email);
+        if (userId == null) {
+            return null;
+        }
+        return Boolean.TRUE.equals(limitadorIntentos.bloqueada(userId)) || cuentasBloqueadas.contiene(userId);
+    }
+
+    // Listado paginado de cuentas bloqueadas (solo admin)
+    public PaginaDTO<CuentaBloqueadaDTO> obtenerCuentasBloqueadas(Integer limite, String cursor) throws ExecutionException, InterruptedException {
+        int tamano = tamanoPagina(limite);
+        if (cuentasBloqueadas.estaListo()) {
+            return cuentasBloqueadas.pagina(tamano, cursor);
+        }
+        // Respaldo mientras el listener sincroniza: misma paginación por ID sobre Firestore
+        Query query = firestore.collection(COLLECTION_NAME)
+                .whereEqualTo("isBlocked", true)
+                .select("email", "name")
+                .orderBy(FieldPath.documentId())
+                .limit(tamano + 1);
+        String ultimoId = Cursores.decodificar(cursor);
+        if (ultimoId != null) {
+            query = query.startAfter(ultimoId);
+        }
+        List<QueryDocumentSnapshot> documents = query.get().get().getDocuments();
+        boolean hayMas = documents.size() > tamano;
+        List<CuentaBloqueadaDTO> items = documents.stream()
+                .limit(tamano)
+                .map(doc -> new CuentaBloqueadaDTO(doc.getId(), doc.getString("email"), doc.getString("name")))
+                .collect(Collectors.toList());
+        String siguiente = hayMas ? Cursores.codificar(documents.get(tamano - 1).getId()) : null;
+        return new PaginaDTO<>(items, siguiente);
+    }
+
     // Método auxiliar para convertir DocumentSnapshot a UsuarioDTO
-    // CRÍTICO: Asegura que isBlocked siempre tenga un valor (false si no existe)
     private UsuarioDTO convertirAUsuarioDTO(DocumentSnapshot document) {
+        Map<String, Object> datos = document.getData();
+        return convertirAUsuarioDTO(document.getId(), datos != null ? datos : Collections.emptyMap());
+    }
+
+    // Conversión desde los campos del documento (leídos o calculados tras una escritura)
+    // CRÍTICO: Asegura que isBlocked siempre tenga un valor (false si no existe)
+    private UsuarioDTO convertirAUsuarioDTO(String userId, Map<String, Object> datos) {
         UsuarioDTO dto = new UsuarioDTO();
-        dto.setId(document.getId());
-        dto.setEmail(document.getString("email"));
-        dto.setName(document.getString("name"));
-        dto.setAvatarUrl(document.getString("avatarUrl"));
-        dto.setBio(document.getString("bio"));
-        dto.setFollowers((List<String>) document.get("followers"));
-        dto.setFollowing((List<String>) document.get("following"));
-        dto.setInterests((List<String>) document.get("interests"));
-        dto.setHobbies((List<String>) document.get("hobbies"));
-        dto.setBioSoundUrl(document.getString("bioSoundUrl"));
+        dto.setId(userId);
+        dto.setEmail(texto(datos, "email"));
+        dto.setName(texto(datos, "name"));
+        dto.setAvatarUrl(texto(datos, "avatarUrl"));
+        dto.setBio(texto(datos, "bio"));
+        // Solo contadores: las listas completas se consultan paginadas en /seguidores y /siguiendo
+        dto.setFollowerCount(contarAristas(datos, "followerCount", FOLLOWERS));
+        dto.setFollowingCount(contarAristas(datos, "followingCount", FOLLOWING));
+        dto.setInterests(listaDeTextos(datos, "interests"));
+        dto.setHobbies(listaDeTextos(datos, "hobbies"));
+        dto.setBioSoundUrl(texto(datos, "bioSoundUrl"));
         // Asegurar que onboardingComplete sea boolean (false si es null)
-        Boolean onboardingComplete = document.getBoolean("onboardingComplete");
+        Boolean onboardingComplete = booleano(datos, "onboardingComplete");
         dto.setOnboardingComplete(onboardingComplete != null ? onboardingComplete : false);
-        dto.setRole(document.getString("role"));
+        dto.setRole(texto(datos, "role"));
         
         // CRÍTICO: Leer isBlocked DIRECTAMENTE desde Firestore SIN modificar
         // NO inicializar automáticamente para evitar sobrescribir valores bloqueados manualmente
-        Boolean isBlocked = document.getBoolean("isBlocked");
+        Boolean isBlocked = booleano(datos, "isBlocked");
         
-        // LOG PARA DEBUG: Solo registrar si hay un problema con isBlocked
         if (isBlocked == null) {
-            System.out.println("⚠ ADVERTENCIA: Campo isBlocked es null en Firestore para usuario: " + document.getId());
-            System.out.println("  - Email: " + document.getString("email"));
-            System.out.println("  - NOTA: isBlocked null significa que el campo no existe en Firestore");
-            System.out.println("  - Si el usuario fue bloqueado manualmente, este campo DEBE ser true");
-            System.out.println("  - Usando false como fallback, pero NO se guardará automáticamente");
-            // NO guardar automáticamente para evitar sobrescribir valores bloqueados
-            isBlocked = false; // Solo fallback en el DTO, NO guardar en Firestore
-        } else {
-            // Si isBlocked existe en Firestore, usar ese valor (puede ser true o false)
-            System.out.println("✓ Campo isBlocked leído desde Firestore para usuario " + document.getId() + ": " + isBlocked);
+            // Solo fallback en el DTO, NO se guarda en Firestore para no sobrescribir bloqueos manuales
+            // Evento frecuente en datos antiguos: se registra muestreado
+            if (log.isWarnEnabled() && MUESTREO_ISBLOCKED_NULO.registrar()) {
+                log.warn("Campo isBlocked ausente en usuario {}; se usa false ({} avisos similares omitidos)",
+                        userId, MUESTREO_ISBLOCKED_NULO.omitidos());
+            }
+            isBlocked = false;
         }
         
         dto.setIsBlocked(isBlocked);
         
-        // CRÍTICO: Verificar que el valor leído sea correcto
-        if (isBlocked) {
-            System.out.println("⚠⚠⚠ USUARIO BLOQUEADO detectado al leer DTO:");
-            System.out.println("  - Usuario ID: " + document.getId());
-            System.out.println("  - Email: " + document.getString("email"));
-            System.out.println("  - isBlocked en Firestore: " + isBlocked);
-            System.out.println("  - isBlocked en DTO: " + dto.getIsBlocked());
-        }
-        
         // Incluir loginAttempts en el DTO
-        Long loginAttemptsLong = document.getLong("loginAttempts");
-        if (loginAttemptsLong == null) {
-            // Si loginAttempts no existe, inicializarlo a 0 y guardarlo
-            try {
-                DocumentReference docRef = document.getReference();
-                docRef.update("loginAttempts", 0).get();
-                loginAttemptsLong = 0L;
-                System.out.println("Campo loginAttempts inicializado para usuario: " + document.getId());
-            } catch (Exception e) {
-                System.err.println("Error al inicializar loginAttempts para usuario " + document.getId() + ": " + e.getMessage());
-                loginAttemptsLong = 0L; // Fallback: asumir 0
-            }
-        }
-        dto.setLoginAttempts(loginAttemptsLong.intValue());
+        // Sin escrituras durante la lectura: si falta, se asume 0 en el DTO.
+        // Los campos ausentes se rellenan en bloque con /api/mantenimiento/usuarios/backfill
+        Number loginAttempts = numero(datos, "loginAttempts");
+        int intentos = loginAttempts != null ? loginAttempts.intValue() : 0;
+        dto.setLoginAttempts(intentos);
         
-        // LOG PARA DEBUG (solo para usuarios bloqueados o con intentos > 0)
-        if (isBlocked || loginAttemptsLong > 0) {
-            System.out.println("=== CONVERTIR A DTO (Usuario con bloqueo/intentos) ===");
-            System.out.println("Usuario ID: " + document.getId());
-            System.out.println("Email: " + document.getString("email"));
-            System.out.println("isBlocked en Firestore: " + isBlocked);
-            System.out.println("isBlocked en DTO: " + dto.getIsBlocked());
-            System.out.println("loginAttempts en Firestore: " + loginAttemptsLong);
-            System.out.println("loginAttempts en DTO: " + dto.getLoginAttempts());
-            System.out.println("=== FIN CONVERTIR DTO ===");
+        if ((isBlocked || intentos > 0) && log.isDebugEnabled()) {
+            log.debug("Usuario {} convertido: isBlocked={}, loginAttempts={}", userId, isBlocked, intentos);
         }
         
         return dto;
     }
+
+    // Contador desnormalizado; para usuarios aún no migrados, tamaño del array heredado
+    private Integer contarAristas(Map<String, Object> datos, String campoContador, String campoArrayHeredado) {
+        Number contador = numero(datos, campoContador);
+        if (contador != null) {
+            return Math.max(0, contador.intValue());
+        }
+        Object heredado = datos.get(campoArrayHeredado);
+        return heredado instanceof List ? ((List<?>) heredado).size() : 0;
+    }
+
+    private static String texto(Map<String, Object> datos, String campo) {
+        Object valor = datos.get(campo);
+        return valor instanceof String ? (String) valor : null;
+    }
+
+    private static Boolean booleano(Map<String, Object> datos, String campo) {
+        Object valor = datos.get(campo);
+        return valor instanceof Boolean ? (Boolean) valor : null;
+    }
+
+    private static Number numero(Map<String, Object> datos, String campo) {
+        Object valor = datos.get(campo);
+        return valor instanceof Number ? (Number) valor : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> listaDeTextos(Map<String, Object> datos, String campo) {
+        Object valor = datos.get(campo);
+        return valor instanceof List ? (List<String>) valor : null;
+    }
 }
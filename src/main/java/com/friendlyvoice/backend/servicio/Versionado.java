@@ -0,0 +1,53 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.Timestamp;
+
+// Valor acompañado de su versión (derivada de los updateTime de Firestore) para ETags
+public final class Versionado<T> {
+
+    private final T valor;
+    private final String version;
+
+    public Versionado(T valor, String version) {
+        this.valor = valor;
+        this.version = version;
+    }
+
+    // updateTime de un documento: cambia con cada escritura que modifica su contenido
+    public static String version(Timestamp actualizado) {
+        return actualizado == null ? null : actualizado.getSeconds() + "." + actualizado.getNanos();
+    }
+
+    // true si ambas versiones se conocen y la primera es de un updateTime anterior
+    public static boolean esAnterior(String version, String otra) {
+        if (version == null || otra == null) {
+            return false;
+        }
+        long[] a = partes(version);
+        long[] b = partes(otra);
+        if (a == null || b == null) {
+            return false;
+        }
+        return a[0] != b[0] ? a[0] < b[0] : a[1] < b[1];
+    }
+
+    // "segundos.nanos" -> {segundos, nanos}
+    private static long[] partes(String version) {
+        int punto = version.indexOf('.');
+        try {
+            return punto < 0 ? null : new long[]{
+                    Long.parseLong(version.substring(0, punto)), Long.parseLong(version.substring(punto + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public T getValor() {
+        return valor;
+    }
+
+    // null si la versión no se conoce (p.ej. respuesta construida tras una escritura)
+    public String getVersion() {
+        return version;
+    }
+}
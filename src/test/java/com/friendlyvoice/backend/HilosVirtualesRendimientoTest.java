@@ -0,0 +1,122 @@
+package com.friendlyvoice.backend;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Hilos de plataforma (pool de 200, como Tomcat) frente a un hilo virtual por petición con
+// peticiones que se bloquean en ApiFuture.get() como las del servicio contra Firestore.
+// Se ejecuta con mvn test -Prendimiento,java21; en Java 17 se omite
+@Tag("rendimiento")
+class HilosVirtualesRendimientoTest {
+
+    private static final int HILOS_TOMCAT = 200;
+    private static final long LATENCIA_FIRESTORE_MS = 50;
+    private static final int LECTURAS_POR_PETICION = 2;
+    private static final int[] CONCURRENCIAS = {1_000, 5_000, 10_000};
+
+    // Completa las lecturas simuladas tras la latencia, como el transporte gRPC del SDK
+    private final ScheduledExecutorService firestore = Executors.newScheduledThreadPool(4);
+
+    @AfterEach
+    void cerrar() {
+        firestore.shutdownNow();
+    }
+
+    @Test
+    void plataformaFrenteAVirtualesConPeticionesBloqueantes() throws Exception {
+        assumeTrue(crearEjecutorVirtual() != null, "Hilos virtuales no disponibles: requiere Java 21 (-Pjava21)");
+        // Calentamiento
+        medir(Executors.newFixedThreadPool(HILOS_TOMCAT), 500);
+        medir(crearEjecutorVirtual(), 500);
+
+        System.out.printf("%-12s %-10s %14s %10s %10s%n", "concurrentes", "hilos", "peticiones/s", "p50 ms", "p99 ms");
+        for (int concurrentes : CONCURRENCIAS) {
+            Resultado plataforma = medir(Executors.newFixedThreadPool(HILOS_TOMCAT), concurrentes);
+            Resultado virtuales = medir(crearEjecutorVirtual(), concurrentes);
+            plataforma.imprimir(concurrentes, "plataforma");
+            virtuales.imprimir(concurrentes, "virtuales");
+
+            // Con 200 hilos el techo es 200 / (2 x 50 ms) = 2000 peticiones/s; por encima de esa
+            // concurrencia las peticiones esperan en la cola del pool y los hilos virtuales no
+            if (concurrentes >= 5 * HILOS_TOMCAT) {
+                assertTrue(virtuales.porSegundo > plataforma.porSegundo,
+                        "Con " + concurrentes + " peticiones los hilos virtuales deberían atender más por segundo");
+            }
+        }
+    }
+
+    // Lanza todas las peticiones a la vez y mide la latencia de cada una desde la llegada
+    private Resultado medir(ExecutorService ejecutor, int peticiones) throws Exception {
+        long[] latencias = new long[peticiones];
+        List<Future<?>> tareas = new ArrayList<>(peticiones);
+        long inicio = System.nanoTime();
+        try {
+            for (int i = 0; i < peticiones; i++) {
+                int indice = i;
+                tareas.add(ejecutor.submit(() -> {
+                    atenderPeticion();
+                    latencias[indice] = System.nanoTime() - inicio;
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+        long total = System.nanoTime() - inicio;
+        Arrays.sort(latencias);
+        return new Resultado(peticiones / (total / 1e9),
+                latencias[peticiones / 2] / 1e6, latencias[(int) (peticiones * 0.99)] / 1e6);
+    }
+
+    // Lecturas secuenciales bloqueando el hilo en get(), como los métodos síncronos del servicio
+    private void atenderPeticion() throws ExecutionException, InterruptedException {
+        for (int i = 0; i < LECTURAS_POR_PETICION; i++) {
+            assertNotNull(lectura().get());
+        }
+    }
+
+    private ApiFuture<String> lectura() {
+        SettableApiFuture<String> futuro = SettableApiFuture.create();
+        firestore.schedule(() -> futuro.set("documento"), LATENCIA_FIRESTORE_MS, TimeUnit.MILLISECONDS);
+        return futuro;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor por reflexión: el código compila con release 17
+    private static ExecutorService crearEjecutorVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static final class Resultado {
+        final double porSegundo;
+        final double p50Ms;
+        final double p99Ms;
+
+        Resultado(double porSegundo, double p50Ms, double p99Ms) {
+            this.porSegundo = porSegundo;
+            this.p50Ms = p50Ms;
+            this.p99Ms = p99Ms;
+        }
+
+        void imprimir(int concurrentes, String hilos) {
+            System.out.printf("%-12d %-10s %14.0f %10.1f %10.1f%n", concurrentes, hilos, porSegundo, p50Ms, p99Ms);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.friendlyvoice.backend.controlador;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EtagsTest {
+
+    @Test
+    void etagEntreComillas() {
+        assertEquals("\"123.456\"", Etags.etag("123.456"));
+    }
+
+    @Test
+    void coincideConLaEtiquetaExacta() {
+        assertTrue(Etags.coincide("\"v1\"", "\"v1\""));
+        assertFalse(Etags.coincide("\"v2\"", "\"v1\""));
+    }
+
+    @Test
+    void coincideConUnaDeVariasEtiquetas() {
+        assertTrue(Etags.coincide("\"a\", \"v1\" ,\"b\"", "\"v1\""));
+        assertFalse(Etags.coincide("\"a\", \"b\"", "\"v1\""));
+    }
+
+    @Test
+    void comparacionDebilYComodin() {
+        assertTrue(Etags.coincide("W/\"v1\"", "\"v1\""));
+        assertTrue(Etags.coincide("*", "\"v1\""));
+    }
+
+    @Test
+    void sinCabeceraOSinVersionNoCoincide() {
+        assertFalse(Etags.coincide(null, "\"v1\""));
+        assertFalse(Etags.coincide("\"v1\"", null));
+        // Sin comillas no es la misma etiqueta
+        assertFalse(Etags.coincide("v1", "\"v1\""));
+    }
+
+    @Test
+    void noModificadoEs304ConEtagYSinCuerpo() {
+        ResponseEntity<?> respuesta = Etags.noModificado("\"v1\"");
+        assertEquals(HttpStatus.NOT_MODIFIED, respuesta.getStatusCode());
+        assertEquals("\"v1\"", respuesta.getHeaders().getETag());
+        assertNull(respuesta.getBody());
+    }
+}
@@ -0,0 +1,82 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.UsuarioDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheUsuariosTest {
+
+    private CacheUsuarios cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CacheUsuarios();
+        ReflectionTestUtils.setField(cache, "maxEntradas", 100);
+        ReflectionTestUtils.setField(cache, "ttlSegundos", 300L);
+        // TTL de seguridad 0: isBlocked/loginAttempts caducan en cuanto se guardan
+        ReflectionTestUtils.setField(cache, "ttlSeguridadSegundos", 0L);
+    }
+
+    @Test
+    void elPerfilIndividualNoSeSirveConCamposDeSeguridadCaducados() {
+        cache.guardar(usuario("u1"), "v1");
+
+        assertNull(cache.obtenerVersionado("u1"));
+        assertNull(cache.obtenerVersion("u1"));
+        assertNull(cache.obtenerVerificado("u1"));
+        // Los listados siguen aceptando el TTL general
+        assertNotNull(cache.obtener("u1"));
+        assertEquals("v1", cache.obtenerVersionSinVerificar("u1"));
+    }
+
+    @Test
+    void renovarSeguridadSoloConLaMismaVersion() {
+        cache.guardar(usuario("u1"), "v1");
+        ReflectionTestUtils.setField(cache, "ttlSeguridadSegundos", 60L);
+
+        cache.renovarSeguridad("u1", "v2");
+        assertNull(cache.obtenerVersionado("u1"));
+
+        cache.renovarSeguridad("u1", "v1");
+        Versionado<UsuarioDTO> enCache = cache.obtenerVersionado("u1");
+        assertNotNull(enCache);
+        assertEquals("v1", enCache.getVersion());
+        assertEquals("v1", cache.obtenerVersion("u1"));
+    }
+
+    @Test
+    void lasEntradasSinVersionNoSeRenuevan() {
+        cache.guardar(usuario("u1"));
+        ReflectionTestUtils.setField(cache, "ttlSeguridadSegundos", 60L);
+
+        cache.renovarSeguridad("u1", null);
+        assertNull(cache.obtenerVersionado("u1"));
+    }
+
+    @Test
+    void unaLecturaAtrasadaNoPisaUnaVersionMasReciente() {
+        ReflectionTestUtils.setField(cache, "ttlSeguridadSegundos", 60L);
+        UsuarioDTO reciente = usuario("u1");
+        reciente.setName("Ana María");
+        cache.guardar(reciente, "1700000000.500");
+        cache.guardar(usuario("u1"), "1700000000.499");
+
+        assertEquals("1700000000.500", cache.obtenerVersion("u1"));
+        assertEquals("Ana María", cache.obtener("u1").getName());
+
+        cache.guardar(usuario("u1"), "1700000001.0");
+        assertEquals("1700000001.0", cache.obtenerVersion("u1"));
+    }
+
+    private static UsuarioDTO usuario(String id) {
+        UsuarioDTO dto = new UsuarioDTO();
+        dto.setId(id);
+        dto.setName("Ana");
+        dto.setIsBlocked(false);
+        dto.setLoginAttempts(0);
+        return dto;
+    }
+}
@@ -0,0 +1,91 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Coste de las conexiones SSE inactivas: memoria por conexión (emisor, cola acotada y suscripción),
+// hilos y duración de una pasada de heartbeat. No incluye el stream del listener de Firestore de
+// cada usuario ni el socket de Tomcat. Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class CanalMensajesRendimientoTest {
+
+    private static final int CONEXIONES = 10_000;
+
+    @Test
+    void conexionesInactivas() throws Exception {
+        CanalMensajes canal = crearCanal();
+
+        long hilosAntes = Thread.activeCount();
+        long memoriaAntes = memoriaUsada();
+        List<SseEmitter> emisores = new ArrayList<>(CONEXIONES);
+        for (int i = 0; i < CONEXIONES; i++) {
+            emisores.add(canal.abrir("u" + i));
+        }
+        long memoriaDespues = memoriaUsada();
+        long hilosDespues = Thread.activeCount();
+
+        assertEquals(CONEXIONES, canal.estadisticas().get("conexiones"));
+        // Una conexión inactiva no tiene hilo propio
+        assertTrue(hilosDespues - hilosAntes < 10, "Hilos creados: " + (hilosDespues - hilosAntes));
+
+        // Pasada de heartbeat sobre todas las conexiones (con "conectado" pendiente no encola ping)
+        long inicio = System.nanoTime();
+        ReflectionTestUtils.invokeMethod(canal, "enviarHeartbeat");
+        double heartbeatMs = (System.nanoTime() - inicio) / 1e6;
+
+        double bytesPorConexion = (memoriaDespues - memoriaAntes) / (double) CONEXIONES;
+        System.out.printf("%d conexiones inactivas: ~%.0f bytes por conexión, %d hilos nuevos, heartbeat %.1f ms%n",
+                CONEXIONES, bytesPorConexion, hilosDespues - hilosAntes, heartbeatMs);
+        // La cola acotada domina (tamanoCola referencias); muy por debajo de la pila de un hilo por conexión
+        assertTrue(bytesPorConexion < 16 * 1024, "Memoria por conexión: " + bytesPorConexion);
+        assertEquals(CONEXIONES, emisores.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CanalMensajes crearCanal() {
+        // stubOnly: los mocks no guardan las 10k invocaciones, que contarían como memoria del canal
+        Firestore firestore = mock(Firestore.class, withSettings().stubOnly());
+        CollectionReference mensajes = mock(CollectionReference.class, withSettings().stubOnly());
+        Query query = mock(Query.class, withSettings().stubOnly());
+        when(firestore.collection("messages")).thenReturn(mensajes);
+        when(mensajes.whereEqualTo(eq("recipientId"), any())).thenReturn(query);
+        when(query.whereGreaterThan(eq("createdAt"), any())).thenReturn(query);
+        // Un registro compartido: la memoria medida es la del canal, no la de los mocks
+        ListenerRegistration registro = () -> { };
+        when(query.addSnapshotListener(ArgumentMatchers.<Executor>any(), any())).thenReturn(registro);
+
+        CanalMensajes canal = new CanalMensajes();
+        ReflectionTestUtils.setField(canal, "firestore", firestore);
+        ReflectionTestUtils.setField(canal, "maxConexiones", CONEXIONES);
+        ReflectionTestUtils.setField(canal, "maxConexionesPorUsuario", 5);
+        ReflectionTestUtils.setField(canal, "tamanoCola", 64);
+        ReflectionTestUtils.setField(canal, "timeoutMinutos", 30L);
+        // Sin vaciar las colas: el evento "conectado" queda pendiente como en un cliente sin tráfico
+        ReflectionTestUtils.setField(canal, "envio", (Executor) tarea -> { });
+        return canal;
+    }
+
+    private static long memoriaUsada() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,134 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CanalMensajesTest {
+
+    private CanalMensajes canal;
+    private Query query;
+    private EventListener<QuerySnapshot> listener;
+    // Envíos programados sin ejecutar: simulan un cliente que no consume
+    private final List<Runnable> envios = new ArrayList<>();
+    private int siguienteMensaje = 0;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference mensajes = mock(CollectionReference.class);
+        query = mock(Query.class);
+        when(firestore.collection("messages")).thenReturn(mensajes);
+        when(mensajes.whereEqualTo(eq("recipientId"), any())).thenReturn(query);
+        when(query.whereGreaterThan(eq("createdAt"), any())).thenReturn(query);
+        when(query.addSnapshotListener(ArgumentMatchers.<Executor>any(), any())).thenAnswer(invocacion -> {
+            listener = invocacion.getArgument(1);
+            return mock(ListenerRegistration.class);
+        });
+
+        canal = new CanalMensajes();
+        ReflectionTestUtils.setField(canal, "firestore", firestore);
+        ReflectionTestUtils.setField(canal, "maxConexiones", 10);
+        ReflectionTestUtils.setField(canal, "maxConexionesPorUsuario", 5);
+        ReflectionTestUtils.setField(canal, "tamanoCola", 4);
+        ReflectionTestUtils.setField(canal, "timeoutMinutos", 1L);
+        ReflectionTestUtils.setField(canal, "envio", (Executor) envios::add);
+    }
+
+    @Test
+    void alLlenarseLaColaSoloQuedaResync() {
+        canal.abrir("u1");
+        assertNotNull(listener);
+        assertEquals(1, pendientes()); // "conectado"
+
+        entregarMensajes(3);
+        assertEquals(4, pendientes());
+        assertEquals(0L, canal.estadisticas().get("desbordamientos"));
+
+        entregarMensajes(1);
+        assertEquals(1, pendientes());
+        assertEquals(1L, canal.estadisticas().get("desbordamientos"));
+
+        // Un único vaciado programado para toda la ráfaga; al ejecutarse solo envía el resync
+        assertEquals(1, envios.size());
+        envios.remove(0).run();
+        assertEquals(0, pendientes());
+        assertEquals(1L, canal.estadisticas().get("eventosEnviados"));
+    }
+
+    @Test
+    void trasElResyncLaConexionSigueRecibiendo() {
+        canal.abrir("u1");
+        entregarMensajes(4);
+        envios.remove(0).run();
+
+        entregarMensajes(2);
+        assertEquals(2, pendientes());
+        assertEquals(1, envios.size());
+        envios.remove(0).run();
+        assertEquals(3L, canal.estadisticas().get("eventosEnviados"));
+        assertEquals(1L, canal.estadisticas().get("desbordamientos"));
+    }
+
+    @Test
+    void comparaCreatedAtComoInstantesYNoRepiteLosEntregados() {
+        canal.abrir("u1");
+        // La consulta parte del segundo de la suscripción, con ancho fijo
+        verify(query).whereGreaterThan(eq("createdAt"), argThat(valor -> ((String) valor).length() == 19));
+
+        entregar(cambio("m1", "2030-01-01T00:00:05Z"));
+        // Como texto "05.100Z" < "05Z"; como instante es posterior y se entrega
+        entregar(cambio("m2", "2030-01-01T00:00:05.100Z"));
+        assertEquals(3, pendientes()); // conectado, m1 y m2
+
+        // Instantánea inicial de un listener reintentado: lo ya entregado y lo anterior se descartan
+        entregar(cambio("m1", "2030-01-01T00:00:05Z"), cambio("m2", "2030-01-01T00:00:05.100Z"),
+                cambio("m0", "2020-01-01T00:00:00Z"), cambio("m3", "2030-01-01T00:00:05.100Z"));
+        assertEquals(4, pendientes()); // + m3: mismo instante que m2 pero ID posterior
+    }
+
+    private void entregarMensajes(int cantidad) {
+        List<DocumentChange> cambios = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            siguienteMensaje++;
+            cambios.add(cambio("m" + siguienteMensaje, String.format("2030-01-01T00:00:%02dZ", siguienteMensaje)));
+        }
+        entregar(cambios.toArray(new DocumentChange[0]));
+    }
+
+    private static DocumentChange cambio(String id, String createdAt) {
+        QueryDocumentSnapshot documento = mock(QueryDocumentSnapshot.class);
+        when(documento.getId()).thenReturn(id);
+        when(documento.getString("recipientId")).thenReturn("u1");
+        when(documento.getString("createdAt")).thenReturn(createdAt);
+        DocumentChange cambio = mock(DocumentChange.class);
+        when(cambio.getType()).thenReturn(DocumentChange.Type.ADDED);
+        when(cambio.getDocument()).thenReturn(documento);
+        return cambio;
+    }
+
+    private void entregar(DocumentChange... cambios) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(List.of(cambios));
+        listener.onEvent(snapshot, null);
+    }
+
+    private int pendientes() {
+        return (Integer) canal.estadisticas().get("eventosPendientes");
+    }
+}
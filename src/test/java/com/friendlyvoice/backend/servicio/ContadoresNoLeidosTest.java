@@ -0,0 +1,116 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ContadoresNoLeidosTest {
+
+    private Firestore firestore;
+    private DocumentReference contador;
+    private CollectionReference shards;
+    private QuerySnapshot partes;
+    private DocumentSnapshot marca;
+    private ContadoresNoLeidos contadores;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class);
+        CollectionReference unreadCounters = mock(CollectionReference.class);
+        contador = mock(DocumentReference.class);
+        shards = mock(CollectionReference.class);
+        when(firestore.collection("unreadCounters")).thenReturn(unreadCounters);
+        when(unreadCounters.document("u1")).thenReturn(contador);
+        when(contador.collection("shards")).thenReturn(shards);
+
+        marca = mock(DocumentSnapshot.class);
+        when(contador.get()).thenReturn(ApiFutures.immediateFuture(marca));
+        partes = mock(QuerySnapshot.class);
+        List<QueryDocumentSnapshot> documentos = List.of(shard(3L), shard(2L), shard(null));
+        when(partes.getDocuments()).thenReturn(documentos);
+        when(shards.get()).thenReturn(ApiFutures.immediateFuture(partes));
+
+        contadores = new ContadoresNoLeidos();
+        ReflectionTestUtils.setField(contadores, "firestore", firestore);
+        ReflectionTestUtils.setField(contadores, "reconciliacionesPorCiclo", 20);
+    }
+
+    @Test
+    void sumaLosShardsDeUnContadorInicializado() throws Exception {
+        when(marca.exists()).thenReturn(true);
+        when(marca.getBoolean("inicializado")).thenReturn(true);
+
+        assertEquals(5, contadores.total("u1"));
+        assertEquals(0, contadores.pendientes());
+    }
+
+    @Test
+    void sinInicializarNoReconciliaEnLaLectura() throws Exception {
+        when(marca.exists()).thenReturn(false);
+
+        // Valor aproximado, sin consultar messages ni chats
+        assertEquals(5, contadores.total("u1"));
+        assertEquals(5, contadores.total("u1"));
+        verify(firestore, never()).collection("messages");
+        verify(firestore, never()).collection("chats");
+        // Encolado una sola vez para la reconciliación en segundo plano
+        assertEquals(1, contadores.pendientes());
+    }
+
+    @Test
+    void unaReconciliacionFallidaSaleDeLaCola() throws Exception {
+        when(marca.exists()).thenReturn(false);
+        contadores.total("u1");
+
+        // messages sin simular: la reconciliación falla y el usuario se reencolará en su próxima lectura
+        contadores.reconciliarPendientes();
+        assertEquals(0, contadores.pendientes());
+    }
+
+    @Test
+    void reconciliaEnUnaTransaccionConLaDiferenciaObservada() throws Exception {
+        // messages: 7 no leídos; chats: ninguno con cursor de lectura
+        CollectionReference messages = mock(CollectionReference.class, RETURNS_SELF);
+        AggregateQuery noLeidos = mock(AggregateQuery.class);
+        when(firestore.collection("messages")).thenReturn(messages);
+        when(messages.count()).thenReturn(noLeidos);
+        CollectionReference chats = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("chats")).thenReturn(chats);
+        QuerySnapshot sinCursores = mock(QuerySnapshot.class);
+        when(sinCursores.getDocuments()).thenReturn(List.of());
+        AggregateQuerySnapshot conteo = mock(AggregateQuerySnapshot.class);
+        when(conteo.getCount()).thenReturn(7L);
+        DocumentReference shardCero = mock(DocumentReference.class);
+        when(shards.document("0")).thenReturn(shardCero);
+
+        // Los shards se leen dentro de la transacción, no con shards.get()
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.get(noLeidos)).thenReturn(ApiFutures.immediateFuture(conteo));
+        when(transaction.get(shards)).thenReturn(ApiFutures.immediateFuture(partes));
+        when(transaction.get(chats)).thenReturn(ApiFutures.immediateFuture(sinCursores));
+        when(firestore.runTransaction(ArgumentMatchers.<Transaction.Function<Object>>any()))
+                .thenAnswer(invocacion -> ApiFutures.immediateFuture(
+                        invocacion.<Transaction.Function<Object>>getArgument(0).updateCallback(transaction)));
+
+        assertEquals(7, contadores.reconciliar("u1"));
+        // 5 en los shards: la corrección (+2) y la marca van en la misma transacción
+        verify(transaction).set(eq(shardCero), anyMap(), any(SetOptions.class));
+        verify(transaction).set(eq(contador), anyMap(), any(SetOptions.class));
+        verify(shards, never()).get();
+        verify(firestore, never()).batch();
+    }
+
+    private static QueryDocumentSnapshot shard(Long count) {
+        QueryDocumentSnapshot shard = mock(QueryDocumentSnapshot.class);
+        when(shard.getLong("count")).thenReturn(count);
+        return shard;
+    }
+}
@@ -0,0 +1,35 @@
+package com.friendlyvoice.backend.servicio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursoresTest {
+
+    @Test
+    void codificarYDecodificarEsIdaYVuelta() {
+        for (String valor : new String[]{"abc", "2024-01-01T10:00:00.123Z|dm-1-abc", "ñandú ü", "a/b+c=d"}) {
+            assertEquals(valor, Cursores.decodificar(Cursores.codificar(valor)));
+        }
+    }
+
+    @Test
+    void elCursorEsSeguroEnUrls() {
+        String cursor = Cursores.codificar("??>>~~ñ");
+        assertTrue(cursor.matches("[A-Za-z0-9_-]*"), cursor);
+    }
+
+    @Test
+    void cursorNuloOVacioEquivaleASinCursor() {
+        assertNull(Cursores.codificar(null));
+        assertNull(Cursores.decodificar(null));
+        assertNull(Cursores.decodificar(""));
+        assertNull(Cursores.decodificar("   "));
+    }
+
+    @Test
+    void cursorMalFormadoEsIllegalArgument() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Cursores.decodificar("no*válido"));
+        assertTrue(e.getMessage().contains("Cursor inválido"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.SettableApiFuture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuturosTest {
+
+    @Test
+    void completableSigueAlApiFuture() throws Exception {
+        SettableApiFuture<String> origen = SettableApiFuture.create();
+        CompletableFuture<String> futuro = Futuros.completable(origen);
+        assertFalse(futuro.isDone());
+
+        origen.set("ok");
+        assertEquals("ok", futuro.get());
+    }
+
+    @Test
+    void esperarRelanzaLosErroresDeEstadoTalCual() {
+        CompletableFuture<String> futuro = CompletableFuture.failedFuture(new IllegalArgumentException("Cursor inválido"));
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> Futuros.esperar(futuro));
+        assertEquals("Cursor inválido", error.getMessage());
+
+        CompletableFuture<String> conIo = CompletableFuture.failedFuture(new IOException("red"));
+        assertThrows(ExecutionException.class, () -> Futuros.esperar(conIo));
+    }
+
+    @Test
+    void causaQuitaLosEnvoltorios() {
+        IllegalStateException original = new IllegalStateException("x");
+        Throwable envuelta = new CompletionException(new ExecutionException(original));
+        assertSame(original, Futuros.causa(envuelta));
+    }
+
+    @Test
+    void detectaLaFaltaDeIndice() {
+        assertTrue(Futuros.esFaltaDeIndice(new CompletionException(
+                new RuntimeException("FAILED_PRECONDITION: The query requires an index"))));
+        assertFalse(Futuros.esFaltaDeIndice(new RuntimeException("NOT_FOUND")));
+        assertFalse(Futuros.esFaltaDeIndice(new RuntimeException()));
+    }
+}
@@ -0,0 +1,124 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GrafoSocialTest {
+
+    private GrafoSocial grafo;
+    private CollectionGroup aristas;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        // select/orderBy/limit devuelven la propia consulta
+        aristas = mock(CollectionGroup.class, RETURNS_SELF);
+        when(firestore.collectionGroup("following")).thenReturn(aristas);
+
+        grafo = new GrafoSocial();
+        ReflectionTestUtils.setField(grafo, "firestore", firestore);
+        ReflectionTestUtils.setField(grafo, "habilitado", true);
+        ReflectionTestUtils.setField(grafo, "recargaMinutos", 0L);
+    }
+
+    @Test
+    void altasBajasYConsultas() {
+        grafo.registrarSeguimiento("a", "b");
+        grafo.registrarSeguimiento("a", "c");
+        grafo.registrarSeguimiento("b", "a");
+        grafo.registrarSeguimiento("a", "b"); // Repetida: sin efecto
+
+        assertTrue(grafo.sigueA("a", "b"));
+        assertTrue(grafo.sigueA("b", "a"));
+        assertFalse(grafo.sigueA("c", "a"));
+        assertFalse(grafo.sigueA("a", "desconocido"));
+        assertEquals(2, grafo.contarSiguiendo("a"));
+        assertEquals(1, grafo.contarSeguidores("a"));
+        assertEquals(1, grafo.contarSeguidores("b"));
+        assertEquals(3L, grafo.estadisticas().get("aristas"));
+
+        grafo.registrarDejarDeSeguir("a", "b");
+        grafo.registrarDejarDeSeguir("a", "b");
+        grafo.registrarDejarDeSeguir("c", "desconocido");
+
+        assertFalse(grafo.sigueA("a", "b"));
+        assertTrue(grafo.sigueA("b", "a"));
+        assertEquals(1, grafo.contarSiguiendo("a"));
+        assertEquals(0, grafo.contarSeguidores("b"));
+        assertEquals(0, grafo.contarSeguidores("desconocido"));
+        assertEquals(2L, grafo.estadisticas().get("aristas"));
+    }
+
+    @Test
+    void mutuosEsLaInterseccionEnOrdenDeId() {
+        // Alta en orden distinto al de los IDs: los números internos no siguen ese orden
+        grafo.registrarSeguimiento("e", "a");
+        grafo.registrarSeguimiento("a", "e");
+        grafo.registrarSeguimiento("d", "a");
+        grafo.registrarSeguimiento("a", "d");
+        grafo.registrarSeguimiento("a", "c"); // Solo en un sentido
+        grafo.registrarSeguimiento("f", "a"); // Solo en el otro
+        grafo.registrarSeguimiento("a", "b");
+        grafo.registrarSeguimiento("b", "a");
+
+        assertEquals(List.of("b", "d", "e"), grafo.mutuos("a", null, 10));
+        assertEquals(List.of("d", "e"), grafo.mutuos("a", "b", 10));
+        assertEquals(List.of("b", "d"), grafo.mutuos("a", null, 2));
+        assertEquals(List.of("a"), grafo.mutuos("e", null, 10));
+        assertTrue(grafo.mutuos("c", null, 10).isEmpty());
+        assertTrue(grafo.mutuos("desconocido", null, 10).isEmpty());
+    }
+
+    @Test
+    void laRecargaReaplicaLosCambiosHechosMientrasCarga() throws Exception {
+        // Arista anterior a la recarga que ya no está en Firestore
+        grafo.registrarSeguimiento("viejo", "a");
+
+        QuerySnapshot pagina = mock(QuerySnapshot.class);
+        List<QueryDocumentSnapshot> documentos = List.of(arista("a", "b"), arista("b", "a"), arista("c", "a"));
+        when(pagina.getDocuments()).thenReturn(documentos);
+        when(aristas.get()).thenAnswer(invocacion -> {
+            // Seguimientos confirmados mientras se lee la colección
+            grafo.registrarSeguimiento("nuevo", "a");
+            grafo.registrarDejarDeSeguir("c", "a");
+            return ApiFutures.immediateFuture(pagina);
+        });
+
+        ReflectionTestUtils.invokeMethod(grafo, "recargar");
+
+        assertTrue(grafo.estaListo());
+        assertFalse(grafo.sigueA("viejo", "a"));
+        assertTrue(grafo.sigueA("a", "b"));
+        assertTrue(grafo.sigueA("nuevo", "a"));
+        assertFalse(grafo.sigueA("c", "a"));
+        assertEquals(2, grafo.contarSeguidores("a"));
+        assertEquals(List.of("b"), grafo.mutuos("a", null, 10));
+        assertEquals(3L, grafo.estadisticas().get("aristas"));
+
+        // Terminada la recarga, los cambios ya no se acumulan para reaplicar
+        assertNull(ReflectionTestUtils.getField(grafo, "cambiosDuranteRecarga"));
+    }
+
+    // users/{origen}/following/{destino}
+    private static QueryDocumentSnapshot arista(String origen, String destino) {
+        DocumentReference usuario = mock(DocumentReference.class);
+        when(usuario.getId()).thenReturn(origen);
+        CollectionReference following = mock(CollectionReference.class);
+        when(following.getParent()).thenReturn(usuario);
+        DocumentReference referencia = mock(DocumentReference.class);
+        when(referencia.getParent()).thenReturn(following);
+
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(destino);
+        when(doc.getReference()).thenReturn(referencia);
+        return doc;
+    }
+}
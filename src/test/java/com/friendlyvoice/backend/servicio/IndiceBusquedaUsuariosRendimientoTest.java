@@ -0,0 +1,111 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.friendlyvoice.backend.dto.UsuarioResumenDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Búsqueda por nombre con 100k usuarios: índice de prefijos frente a recorrer todos los nombres
+// (lo que haría un filtro en memoria sin índice). Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class IndiceBusquedaUsuariosRendimientoTest {
+
+    private static final int USUARIOS = 100_000;
+    private static final int TAMANO_PAGINA = 20;
+    private static final int REPETICIONES_INDICE = 1_000;
+    // Cada recorrido visita los 100k usuarios: menos repeticiones
+    private static final int REPETICIONES_RECORRIDO = 50;
+
+    private static final String[] NOMBRES = {"María", "José", "Ana", "Juan", "Lucía", "Carlos", "Marta", "Jorge",
+            "Sofía", "Manuel", "Paula", "Javier", "Elena", "Miguel", "Laura", "Andrés", "Belén", "Óscar"};
+    private static final String[] APELLIDOS = {"García", "Pérez", "López", "Martínez", "Sánchez", "Gómez", "Fernández",
+            "Ruiz", "Díaz", "Hernández", "Muñoz", "Álvarez", "Romero", "Navarro", "Torres", "Ramírez"};
+    // De muy frecuentes (una letra) a muy selectivas (nombre y apellido) y sin resultados
+    private static final String[] CONSULTAS = {"m", "mar", "maria", "maria g", "jose perez", "alvarez", "zzz"};
+
+    private final IndiceBusquedaUsuarios indice = new IndiceBusquedaUsuarios();
+    private final List<IndiceBusquedaUsuarios.Entrada> todos = new ArrayList<>(USUARIOS);
+
+    @BeforeEach
+    void setUp() {
+        indice.reconstruir(List.of());
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < USUARIOS; i++) {
+            String nombre = NOMBRES[aleatorio.nextInt(NOMBRES.length)] + " "
+                    + APELLIDOS[aleatorio.nextInt(APELLIDOS.length)] + " "
+                    + APELLIDOS[aleatorio.nextInt(APELLIDOS.length)] + " " + i;
+            String id = String.format("u%06d", i);
+            indice.indexar(id, nombre, null);
+            todos.add(new IndiceBusquedaUsuarios.Entrada(id, nombre, null));
+        }
+    }
+
+    @Test
+    void buscarEnCienMilUsuarios() {
+        System.out.printf("%-12s %10s %14s %14s %14s%n", "consulta", "resultados", "índice p50 µs", "índice p99 µs", "recorrido p50 µs");
+        for (String consulta : CONSULTAS) {
+            List<String> tokensConsulta = NormalizadorTexto.tokenizar(consulta);
+            int esperados = recorrer(tokensConsulta);
+
+            PaginaDTO<UsuarioResumenDTO> pagina = indice.buscar(consulta, TAMANO_PAGINA, null);
+            assertEquals(Math.min(esperados, TAMANO_PAGINA), pagina.getItems().size(), consulta);
+            assertEquals(esperados > TAMANO_PAGINA, pagina.getNextCursor() != null, consulta);
+
+            long[] conIndice = medir(() -> indice.buscar(consulta, TAMANO_PAGINA, null), REPETICIONES_INDICE);
+            long[] sinIndice = medir(() -> recorrer(tokensConsulta), REPETICIONES_RECORRIDO);
+            System.out.printf("%-12s %10d %14.1f %14.1f %14.1f%n", consulta, esperados,
+                    percentil(conIndice, 0.5), percentil(conIndice, 0.99), percentil(sinIndice, 0.5));
+
+            // Una consulta selectiva solo visita sus postings: debe ganar con holgura al recorrido
+            if (esperados < USUARIOS / 100) {
+                assertTrue(percentil(conIndice, 0.5) < percentil(sinIndice, 0.5),
+                        "El índice debería ser más rápido que recorrer todo para '" + consulta + "'");
+            }
+        }
+    }
+
+    // Coincidencias recorriendo todos los usuarios (mismo criterio de prefijos que el índice)
+    private int recorrer(List<String> tokensConsulta) {
+        if (tokensConsulta.isEmpty()) {
+            return 0;
+        }
+        int coincidencias = 0;
+        for (IndiceBusquedaUsuarios.Entrada entrada : todos) {
+            boolean todas = true;
+            for (String prefijo : tokensConsulta) {
+                if (entrada.tokens.stream().noneMatch(token -> token.startsWith(prefijo))) {
+                    todas = false;
+                    break;
+                }
+            }
+            if (todas) {
+                coincidencias++;
+            }
+        }
+        return coincidencias;
+    }
+
+    // Con calentamiento previo de una quinta parte de las repeticiones
+    private static long[] medir(Runnable operacion, int repeticiones) {
+        for (int i = 0; i < repeticiones / 5; i++) {
+            operacion.run();
+        }
+        long[] tiempos = new long[repeticiones];
+        for (int i = 0; i < repeticiones; i++) {
+            long inicio = System.nanoTime();
+            operacion.run();
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(tiempos);
+        return tiempos;
+    }
+
+    private static double percentil(long[] ordenados, double p) {
+        return ordenados[Math.min(ordenados.length - 1, (int) (ordenados.length * p))] / 1e3;
+    }
+}
@@ -0,0 +1,131 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.friendlyvoice.backend.dto.UsuarioResumenDTO;
+import com.friendlyvoice.backend.dto.VistaUsuario;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IndiceBusquedaUsuariosTest {
+
+    private IndiceBusquedaUsuarios indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceBusquedaUsuarios();
+        ReflectionTestUtils.setField(indice, "habilitado", true);
+
+        // Primera instantánea del listener compartido: la colección completa
+        indice.reconstruir(List.of(
+                documento("1", "José Pérez"),
+                documento("2", "Jorge"),
+                documento("3", "Ana"),
+                documento("4", "Ana Belén"),
+                documento("5", "Belén Ana"),
+                documento("6", "Anabel")));
+    }
+
+    @Test
+    void dejaDeEstarListoSiElListenerCae() {
+        assertTrue(indice.estaListo());
+        indice.detenido();
+        assertFalse(indice.estaListo());
+    }
+
+    @Test
+    void buscaPorPrefijoDeCualquierPalabraSinTildes() {
+        assertTrue(indice.estaListo());
+        assertEquals(List.of("2", "1"), ids(buscar("JO")));
+        assertEquals(List.of("1"), ids(buscar("pér")));
+        assertEquals(List.of("1"), ids(buscar("jose p")));
+    }
+
+    @Test
+    void noCoincideDentroDeUnaPalabra() {
+        assertTrue(buscar("ose").isEmpty());
+        assertTrue(buscar("jose ana").isEmpty());
+        assertTrue(buscar("  ").isEmpty());
+    }
+
+    @Test
+    void ordenaPorRelevancia() {
+        // Nombre exacto, prefijo del nombre (desempate por nombre) y por último palabra exacta
+        assertEquals(List.of("3", "4", "6", "5"), ids(buscar("ana")));
+    }
+
+    @Test
+    void paginaConCursor() {
+        PaginaDTO<UsuarioResumenDTO> primera = indice.buscar("ana", 3, null);
+        assertEquals(List.of("3", "4", "6"), ids(primera.getItems()));
+        assertNotNull(primera.getNextCursor());
+
+        PaginaDTO<UsuarioResumenDTO> segunda = indice.buscar("ana", 3, primera.getNextCursor());
+        assertEquals(List.of("5"), ids(segunda.getItems()));
+        assertNull(segunda.getNextCursor());
+    }
+
+    @Test
+    void aplicaLosCambiosIncrementales() {
+        List<DocumentChange> cambios = new ArrayList<>();
+        cambios.add(cambio(DocumentChange.Type.MODIFIED, documento("2", "Marta")));
+        cambios.add(cambio(DocumentChange.Type.REMOVED, documento("1", "José Pérez")));
+        cambios.add(cambio(DocumentChange.Type.ADDED, documento("7", "Joaquín")));
+        indice.aplicar(cambios);
+
+        assertEquals(List.of("7"), ids(buscar("jo")));
+        assertEquals(List.of("2"), ids(buscar("mar")));
+    }
+
+    @Test
+    void laBusquedaSinPaginarSeAcotaConCursorEnLasDosVistas() throws Exception {
+        UsuarioServicio servicio = new UsuarioServicio();
+        ReflectionTestUtils.setField(servicio, "indiceBusqueda", indice);
+        ReflectionTestUtils.setField(servicio, "tamanoPaginaDefecto", 20);
+        ReflectionTestUtils.setField(servicio, "maxTamanoPagina", 2);
+
+        PaginaDTO<?> primera = servicio.buscarUsuariosPorNombre("ana", VistaUsuario.SUMMARY);
+        assertEquals(List.of("3", "4"), ids(resumenes(primera)));
+        assertNotNull(primera.getNextCursor());
+
+        PaginaDTO<?> segunda = servicio.buscarUsuariosPaginados("ana", 2, primera.getNextCursor(), VistaUsuario.SUMMARY);
+        assertEquals(List.of("6", "5"), ids(resumenes(segunda)));
+        assertNull(segunda.getNextCursor());
+    }
+
+    private List<UsuarioResumenDTO> buscar(String consulta) {
+        return indice.buscar(consulta, 50, null).getItems();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<UsuarioResumenDTO> resumenes(PaginaDTO<?> pagina) {
+        return (List<UsuarioResumenDTO>) pagina.getItems();
+    }
+
+    private static QueryDocumentSnapshot documento(String id, String nombre) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getString("name")).thenReturn(nombre);
+        return doc;
+    }
+
+    private static DocumentChange cambio(DocumentChange.Type tipo, QueryDocumentSnapshot doc) {
+        DocumentChange cambio = mock(DocumentChange.class);
+        when(cambio.getType()).thenReturn(tipo);
+        when(cambio.getDocument()).thenReturn(doc);
+        return cambio;
+    }
+
+    private static List<String> ids(List<UsuarioResumenDTO> usuarios) {
+        return usuarios.stream().map(UsuarioResumenDTO::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,107 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IndiceEmailsTest {
+
+    private static final String EMAIL = "ana@example.com";
+
+    private IndiceEmails indice;
+    private DocumentReference entrada;
+    private DocumentSnapshot documento;
+    private DocumentSnapshot usuario;
+    private Transaction transaction;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference emails = mock(CollectionReference.class);
+        entrada = mock(DocumentReference.class);
+        documento = mock(DocumentSnapshot.class);
+        when(firestore.collection("emails")).thenReturn(emails);
+        when(emails.document(EMAIL)).thenReturn(entrada);
+        when(entrada.get()).thenReturn(ApiFutures.immediateFuture(documento));
+        when(documento.exists()).thenReturn(true);
+        when(documento.getString("userId")).thenReturn("u1");
+
+        // users/u1, que ahora tiene otro email
+        CollectionReference users = mock(CollectionReference.class);
+        DocumentReference usuarioRef = mock(DocumentReference.class);
+        usuario = mock(DocumentSnapshot.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document("u1")).thenReturn(usuarioRef);
+        when(usuario.exists()).thenReturn(true);
+        when(usuario.getString("email")).thenReturn("ana.nueva@example.com");
+
+        transaction = mock(Transaction.class);
+        when(transaction.get(entrada)).thenAnswer(invocacion -> ApiFutures.immediateFuture(documento));
+        when(transaction.get(usuarioRef)).thenAnswer(invocacion -> ApiFutures.immediateFuture(usuario));
+        when(firestore.runTransaction(ArgumentMatchers.<Transaction.Function<Object>>any()))
+                .thenAnswer(invocacion -> ApiFutures.immediateFuture(
+                        invocacion.<Transaction.Function<Object>>getArgument(0).updateCallback(transaction)));
+
+        indice = new IndiceEmails();
+        ReflectionTestUtils.setField(indice, "firestore", firestore);
+        ReflectionTestUtils.setField(indice, "filtroEmails", mock(FiltroEmails.class));
+        ReflectionTestUtils.setField(indice, "ttlSegundos", 60L);
+    }
+
+    @Test
+    void unaResolucionVigenteNoVuelveALeer() throws Exception {
+        assertEquals("u1", indice.resolverUserId(EMAIL, false));
+        assertEquals("u1", indice.resolverUserId(" Ana@Example.com", false));
+        verify(entrada, times(1)).get();
+    }
+
+    @Test
+    void unaResolucionCaducadaSeReleeDelIndice() throws Exception {
+        ReflectionTestUtils.setField(indice, "ttlSegundos", 0L);
+        assertEquals("u1", indice.resolverUserId(EMAIL, false));
+
+        // Otra instancia movió el email a otro usuario: sin caducidad se seguiría devolviendo u1
+        when(documento.getString("userId")).thenReturn("u2");
+        assertEquals("u2", indice.resolverUserId(EMAIL, false));
+        verify(entrada, times(2)).get();
+
+        indice.purgarCaducadas();
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(indice, "resueltos")).isEmpty());
+    }
+
+    @Test
+    void descartarBorraLaEntradaSiSigueApuntandoAlUsuarioEquivocado() throws Exception {
+        indice.recordar(EMAIL, "u1");
+        indice.descartar(EMAIL, "u1");
+
+        verify(transaction).delete(entrada);
+        verify(entrada, never()).delete();
+    }
+
+    @Test
+    void descartarSoloOlvidaLaMemoriaSiElIndiceYaSeCorrigio() throws Exception {
+        indice.recordar(EMAIL, "u1");
+        // Otra escritura ya movió emails/{email} al usuario correcto
+        when(documento.getString("userId")).thenReturn("u2");
+        indice.descartar(EMAIL, "u1");
+
+        verify(transaction, never()).delete(any(DocumentReference.class));
+        assertEquals("u2", indice.resolverUserId(EMAIL, false));
+    }
+
+    @Test
+    void descartarNoBorraSiElUsuarioRecuperoElEmail() throws Exception {
+        when(usuario.getString("email")).thenReturn("Ana@Example.com");
+        indice.descartar(EMAIL, "u1");
+
+        verify(transaction, never()).delete(any(DocumentReference.class));
+    }
+}
@@ -0,0 +1,125 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.UsuarioSugeridoDTO;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+// Top-K de /descubrir con 100k usuarios en el índice de intereses. Las etiquetas siguen una
+// distribución sesgada (unas pocas las tiene casi todo el mundo), que es el peor caso: el usuario
+// consultado comparte alguna etiqueta con gran parte del índice. Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class IndiceInteresesRendimientoTest {
+
+    private static final int USUARIOS = 100_000;
+    private static final int INTERESES = 60;
+    private static final int HOBBIES = 40;
+    private static final int LIMITE = 20;
+    private static final int CONSULTAS = 500;
+    // Como si el usuario ya siguiera a unos cientos de personas
+    private static final int EXCLUIDOS = 500;
+
+    private final IndiceIntereses indice = new IndiceIntereses();
+    private final Random aleatorio = new Random(42);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(indice, "habilitado", true);
+        ReflectionTestUtils.setField(indice, "pesoInteres", 2.0);
+        ReflectionTestUtils.setField(indice, "pesoHobby", 1.0);
+
+        List<QueryDocumentSnapshot> documentos = new ArrayList<>(USUARIOS);
+        for (int i = 0; i < USUARIOS; i++) {
+            documentos.add(documento("u" + i, etiquetas("interes", INTERESES, 3 + aleatorio.nextInt(3)),
+                    etiquetas("hobby", HOBBIES, 1 + aleatorio.nextInt(3))));
+        }
+        long inicio = System.nanoTime();
+        indice.reconstruir(documentos);
+        System.out.printf("Índice de %d usuarios construido en %.0f ms, %s entradas en listas%n",
+                USUARIOS, (System.nanoTime() - inicio) / 1e6, indice.estadisticas().get("entradasEnListas"));
+    }
+
+    @Test
+    void topKConCienMilUsuarios() {
+        Set<String> seguidos = new HashSet<>();
+        while (seguidos.size() < EXCLUIDOS) {
+            seguidos.add("u" + aleatorio.nextInt(USUARIOS));
+        }
+        medirYComprobar("sin exclusiones", id -> false);
+        medirYComprobar("excluyendo " + EXCLUIDOS, seguidos::contains);
+    }
+
+    private void medirYComprobar(String caso, Predicate<String> excluir) {
+        // Calentamiento
+        for (int i = 0; i < CONSULTAS / 5; i++) {
+            indice.sugerir("u" + aleatorio.nextInt(USUARIOS), LIMITE, excluir);
+        }
+        long[] tiempos = new long[CONSULTAS];
+        for (int i = 0; i < CONSULTAS; i++) {
+            String userId = "u" + aleatorio.nextInt(USUARIOS);
+            long inicio = System.nanoTime();
+            List<UsuarioSugeridoDTO> sugeridos = indice.sugerir(userId, LIMITE, excluir);
+            tiempos[i] = System.nanoTime() - inicio;
+
+            // Todos comparten las etiquetas más comunes: siempre hay K candidatos, ordenados y válidos
+            assertEquals(LIMITE, sugeridos.size(), userId);
+            for (int j = 0; j < sugeridos.size(); j++) {
+                UsuarioSugeridoDTO sugerido = sugeridos.get(j);
+                assertNotEquals(userId, sugerido.getId());
+                assertFalse(excluir.test(sugerido.getId()));
+                if (j > 0) {
+                    assertTrue(sugeridos.get(j - 1).getScore() >= sugerido.getScore());
+                }
+            }
+        }
+        Arrays.sort(tiempos);
+        double p50 = tiempos[CONSULTAS / 2] / 1e6;
+        double p99 = tiempos[(int) (CONSULTAS * 0.99)] / 1e6;
+        System.out.printf("sugerir top-%d, %s: p50 %.2f ms, p99 %.2f ms, máx %.2f ms%n",
+                LIMITE, caso, p50, p99, tiempos[CONSULTAS - 1] / 1e6);
+        // Cota holgada: recorre las listas de sus etiquetas (decenas de miles de entradas), no Firestore
+        assertTrue(p99 < 100, "p99 de sugerir: " + p99 + " ms");
+    }
+
+    // Índices sesgados hacia las primeras etiquetas (r² concentra la probabilidad cerca de 0)
+    private List<String> etiquetas(String prefijo, int distintas, int cuantas) {
+        Set<String> elegidas = new LinkedHashSet<>();
+        while (elegidas.size() < cuantas) {
+            double r = aleatorio.nextDouble();
+            elegidas.add(prefijo + (int) (distintas * r * r));
+        }
+        return new ArrayList<>(elegidas);
+    }
+
+    // Sin stubs por documento: 100k mocks con when(...) harían la preparación mucho más lenta
+    private static QueryDocumentSnapshot documento(String id, List<String> intereses, List<String> hobbies) {
+        return mock(QueryDocumentSnapshot.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("getId".equals(metodo)) {
+                return id;
+            }
+            if ("getString".equals(metodo) && "name".equals(invocacion.getArgument(0))) {
+                return "Usuario " + id;
+            }
+            if ("get".equals(metodo) && invocacion.getArguments().length == 1) {
+                Object campo = invocacion.getArgument(0);
+                if ("interests".equals(campo)) {
+                    return intereses;
+                }
+                if ("hobbies".equals(campo)) {
+                    return hobbies;
+                }
+            }
+            return null;
+        }));
+    }
+}
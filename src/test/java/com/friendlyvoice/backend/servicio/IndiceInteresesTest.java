@@ -0,0 +1,118 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.UsuarioSugeridoDTO;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IndiceInteresesTest {
+
+    private static final double PESO_INTERES = 2.0;
+    private static final double PESO_HOBBY = 1.0;
+
+    private IndiceIntereses indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceIntereses();
+        ReflectionTestUtils.setField(indice, "habilitado", true);
+        ReflectionTestUtils.setField(indice, "pesoInteres", PESO_INTERES);
+        ReflectionTestUtils.setField(indice, "pesoHobby", PESO_HOBBY);
+
+        // 9 usuarios: "música" la tienen 6, "cine" 3 y "ajedrez" (hobby) 2
+        indice.reconstruir(List.of(
+                documento("yo", List.of("Música", "Cine"), List.of("Ajedrez")),
+                documento("a", List.of("musica "), List.of()),
+                documento("b", List.of("Cine"), List.of()),
+                documento("c", List.of(), List.of("ajedrez")),
+                documento("d", List.of("Música", "Cine"), List.of()),
+                documento("e", List.of("Música"), List.of()),
+                documento("f", List.of("Música"), List.of()),
+                documento("g", List.of("Música"), List.of()),
+                documento("h", List.of("Cocina"), List.of())));
+    }
+
+    @Test
+    void puntuaPorEtiquetasCompartidasPonderadasPorRareza() {
+        assertTrue(indice.estaListo());
+        List<UsuarioSugeridoDTO> sugeridos = indice.sugerir("yo", 10, id -> false);
+
+        // Sin el propio usuario ni quien no comparte nada; a igualdad de puntos, orden de alta en el índice
+        assertEquals(List.of("d", "b", "a", "e", "f", "g", "c"), ids(sugeridos));
+        assertEquals(valor(PESO_INTERES, 6) + valor(PESO_INTERES, 3), sugeridos.get(0).getScore(), 1e-9);
+        assertEquals(List.of("musica", "cine"), sugeridos.get(0).getSharedInterests());
+        assertEquals(valor(PESO_HOBBY, 2), sugeridos.get(6).getScore(), 1e-9);
+        assertEquals(List.of("ajedrez"), sugeridos.get(6).getSharedHobbies());
+    }
+
+    @Test
+    void unaEtiquetaRaraPesaMasQueUnaComun() {
+        List<UsuarioSugeridoDTO> sugeridos = indice.sugerir("yo", 10, id -> false);
+        UsuarioSugeridoDTO cine = sugeridos.get(1);
+        UsuarioSugeridoDTO musica = sugeridos.get(2);
+
+        // Mismo peso de interés: solo cambia cuántos usuarios comparten la etiqueta
+        assertEquals(valor(PESO_INTERES, 3), cine.getScore(), 1e-9);
+        assertEquals(valor(PESO_INTERES, 6), musica.getScore(), 1e-9);
+        assertTrue(cine.getScore() > musica.getScore());
+    }
+
+    @Test
+    void limitaYExcluyeSinPerderElOrden() {
+        assertEquals(List.of("d", "b", "a"), ids(indice.sugerir("yo", 3, id -> false)));
+        assertEquals(List.of("b", "a", "f"), ids(indice.sugerir("yo", 3, id -> id.equals("d") || id.equals("e"))));
+        assertTrue(indice.sugerir("desconocido", 3, id -> false).isEmpty());
+        assertTrue(indice.sugerir("yo", 0, id -> false).isEmpty());
+    }
+
+    @Test
+    void aplicaLosCambiosIncrementales() {
+        indice.aplicar(List.of(
+                cambio(DocumentChange.Type.MODIFIED, documento("h", List.of("Cine"), List.of())),
+                cambio(DocumentChange.Type.REMOVED, documento("d", List.of(), List.of()))));
+
+        List<UsuarioSugeridoDTO> sugeridos = indice.sugerir("yo", 10, id -> false);
+        assertFalse(ids(sugeridos).contains("d"));
+        // "cine" pasa a 3 usuarios entre 8
+        assertEquals(List.of("b", "h"), ids(sugeridos).subList(0, 2));
+        assertEquals(valor(PESO_INTERES, 3, 8), sugeridos.get(0).getScore(), 1e-9);
+    }
+
+    // Peso de una etiqueta compartida por n de los 9 usuarios del índice
+    private static double valor(double peso, int n) {
+        return valor(peso, n, 9);
+    }
+
+    private static double valor(double peso, int n, int total) {
+        return peso * Math.log(1.0 + (double) total / n);
+    }
+
+    private static QueryDocumentSnapshot documento(String id, List<String> intereses, List<String> hobbies) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getString("name")).thenReturn("Usuario " + id);
+        when(doc.get("interests")).thenReturn(intereses);
+        when(doc.get("hobbies")).thenReturn(hobbies);
+        return doc;
+    }
+
+    private static DocumentChange cambio(DocumentChange.Type tipo, QueryDocumentSnapshot doc) {
+        DocumentChange cambio = mock(DocumentChange.class);
+        when(cambio.getType()).thenReturn(tipo);
+        when(cambio.getDocument()).thenReturn(doc);
+        return cambio;
+    }
+
+    private static List<String> ids(List<UsuarioSugeridoDTO> sugeridos) {
+        return sugeridos.stream().map(UsuarioSugeridoDTO::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,126 @@
+package com.friendlyvoice.backend.servicio;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ráfaga de credential stuffing: ~10k fallos de login por segundo durante unos segundos, la mitad
+// contra una misma cuenta y el resto repartido entre unos cientos, mientras un volcado periódico
+// extrae los pendientes como el write-behind. Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class LimitadorIntentosLoginRendimientoTest {
+
+    private static final int HILOS = 32;
+    private static final int FALLOS_POR_SEGUNDO = 10_000;
+    private static final int SEGUNDOS = 3;
+    private static final int CUENTAS = 300;
+    private static final String CUENTA_ATACADA = "atacada";
+    private static final long VOLCADO_MS = 100;
+
+    @Test
+    void diezMilFallosPorSegundo() throws Exception {
+        LimitadorIntentosLogin limitador = new LimitadorIntentosLogin();
+        ReflectionTestUtils.setField(limitador, "ventanaMinutos", 15L);
+        List<String> cuentas = new ArrayList<>();
+        cuentas.add(CUENTA_ATACADA);
+        for (int i = 0; i < CUENTAS; i++) {
+            cuentas.add("u" + i);
+        }
+        for (String userId : cuentas) {
+            limitador.sembrar(userId, 0, false);
+        }
+
+        // Último valor volcado por cuenta (lo que quedaría en loginAttempts)
+        Map<String, Integer> volcados = new ConcurrentHashMap<>();
+        AtomicBoolean enCurso = new AtomicBoolean(true);
+        Thread volcado = new Thread(() -> {
+            while (enCurso.get()) {
+                volcados.putAll(limitador.extraerPendientes());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(VOLCADO_MS));
+            }
+        });
+        volcado.start();
+
+        int fallosPorHilo = FALLOS_POR_SEGUNDO * SEGUNDOS / HILOS;
+        long intervalo = TimeUnit.SECONDS.toNanos(1) * HILOS / FALLOS_POR_SEGUNDO;
+        ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<Ronda>> tareas = new ArrayList<>();
+        for (int h = 0; h < HILOS; h++) {
+            long semilla = h;
+            tareas.add(ejecutor.submit(() -> {
+                Random aleatorio = new Random(semilla);
+                Ronda ronda = new Ronda(fallosPorHilo);
+                salida.await();
+                long siguiente = System.nanoTime();
+                for (int i = 0; i < fallosPorHilo; i++) {
+                    // Ritmo fijo por hilo: HILOS x (1 / intervalo) = FALLOS_POR_SEGUNDO
+                    long espera = siguiente - System.nanoTime();
+                    if (espera > 0) {
+                        LockSupport.parkNanos(espera);
+                    }
+                    siguiente += intervalo;
+                    String userId = aleatorio.nextBoolean() ? CUENTA_ATACADA : cuentas.get(1 + aleatorio.nextInt(CUENTAS));
+                    long inicio = System.nanoTime();
+                    LimitadorIntentosLogin.Resultado resultado = limitador.registrarFallo(userId);
+                    ronda.latencias[i] = System.nanoTime() - inicio;
+                    if (resultado == LimitadorIntentosLogin.Resultado.BLOQUEADA) {
+                        ronda.bloqueos.merge(userId, 1, Integer::sum);
+                    }
+                }
+                return ronda;
+            }));
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+
+        Map<String, Integer> bloqueos = new HashMap<>();
+        long[] latencias = new long[fallosPorHilo * HILOS];
+        int posicion = 0;
+        for (Future<Ronda> tarea : tareas) {
+            Ronda ronda = tarea.get(2, TimeUnit.MINUTES);
+            ronda.bloqueos.forEach((userId, n) -> bloqueos.merge(userId, n, Integer::sum));
+            System.arraycopy(ronda.latencias, 0, latencias, posicion, ronda.latencias.length);
+            posicion += ronda.latencias.length;
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        ejecutor.shutdown();
+        enCurso.set(false);
+        volcado.join();
+        volcados.putAll(limitador.extraerPendientes());
+
+        Arrays.sort(latencias);
+        double porSegundo = latencias.length / segundos;
+        System.out.printf("%d fallos en %.2f s (%.0f/s) sobre %d cuentas: registrarFallo p50 %.2f µs, p99 %.2f µs, máx %.2f µs%n",
+                latencias.length, segundos, porSegundo, cuentas.size(),
+                latencias[latencias.length / 2] / 1e3, latencias[(int) (latencias.length * 0.99)] / 1e3,
+                latencias[latencias.length - 1] / 1e3);
+
+        // Cada cuenta se bloquea exactamente una vez y lo volcado es el umbral, ni más ni menos
+        for (String userId : cuentas) {
+            assertEquals(1, bloqueos.getOrDefault(userId, 0), "BLOQUEADA para " + userId);
+            assertEquals(LimitadorIntentosLogin.UMBRAL_BLOQUEO, volcados.get(userId), "Volcado de " + userId);
+            assertTrue(limitador.bloqueada(userId));
+        }
+        assertEquals((long) cuentas.size(), limitador.estadisticas().get("bloqueos"));
+        assertEquals((long) cuentas.size() * LimitadorIntentosLogin.UMBRAL_BLOQUEO, limitador.estadisticas().get("intentosRegistrados"));
+        // El limitador no debe ser el cuello de botella del ritmo pedido
+        assertTrue(porSegundo > FALLOS_POR_SEGUNDO * 0.8, "Ritmo alcanzado: " + porSegundo);
+    }
+
+    private static final class Ronda {
+        final long[] latencias;
+        final Map<String, Integer> bloqueos = new HashMap<>();
+
+        Ronda(int fallos) {
+            this.latencias = new long[fallos];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.friendlyvoice.backend.servicio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitadorIntentosLoginTest {
+
+    private LimitadorIntentosLogin limitador;
+
+    @BeforeEach
+    void setUp() {
+        limitador = new LimitadorIntentosLogin();
+        ReflectionTestUtils.setField(limitador, "ventanaMinutos", 15L);
+    }
+
+    @Test
+    void fallosConcurrentesBloqueanUnaSolaVez() throws Exception {
+        int hilos = 16;
+        int fallosPorHilo = 50;
+        for (int ronda = 0; ronda < 20; ronda++) {
+            String userId = "u" + ronda;
+            limitador.sembrar(userId, 0, false);
+
+            ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+            CountDownLatch salida = new CountDownLatch(1);
+            List<Future<List<LimitadorIntentosLogin.Resultado>>> tareas = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) {
+                tareas.add(ejecutor.submit(() -> {
+                    salida.await();
+                    List<LimitadorIntentosLogin.Resultado> resultados = new ArrayList<>();
+                    for (int i = 0; i < fallosPorHilo; i++) {
+                        resultados.add(limitador.registrarFallo(userId));
+                    }
+                    return resultados;
+                }));
+            }
+            salida.countDown();
+
+            Map<LimitadorIntentosLogin.Resultado, Integer> conteo = new EnumMap<>(LimitadorIntentosLogin.Resultado.class);
+            for (Future<List<LimitadorIntentosLogin.Resultado>> tarea : tareas) {
+                for (LimitadorIntentosLogin.Resultado resultado : tarea.get(30, TimeUnit.SECONDS)) {
+                    conteo.merge(resultado, 1, Integer::sum);
+                }
+            }
+            ejecutor.shutdown();
+
+            assertEquals(1, conteo.getOrDefault(LimitadorIntentosLogin.Resultado.BLOQUEADA, 0));
+            assertEquals(LimitadorIntentosLogin.UMBRAL_BLOQUEO - 1, conteo.getOrDefault(LimitadorIntentosLogin.Resultado.REGISTRADO, 0));
+            assertEquals(hilos * fallosPorHilo - LimitadorIntentosLogin.UMBRAL_BLOQUEO,
+                    conteo.getOrDefault(LimitadorIntentosLogin.Resultado.YA_BLOQUEADA, 0));
+            assertTrue(limitador.bloqueada(userId));
+            assertEquals(LimitadorIntentosLogin.UMBRAL_BLOQUEO, limitador.intentos(userId));
+            assertEquals(Map.of(userId, LimitadorIntentosLogin.UMBRAL_BLOQUEO), limitador.extraerPendientes());
+        }
+    }
+
+    @Test
+    void laCuentaBloqueadaConservaSusIntentos() {
+        limitador.sembrar("u1", 3, true);
+
+        assertEquals(LimitadorIntentosLogin.Resultado.YA_BLOQUEADA, limitador.registrarFallo("u1"));
+        assertEquals(3, limitador.intentos("u1"));
+        // Nada nuevo que persistir: el intento sobre una cuenta bloqueada no cambia el estado
+        assertTrue(limitador.extraerPendientes().isEmpty());
+    }
+
+    @Test
+    void olvidarDesbloquea() {
+        limitador.sembrar("u1", 0, false);
+        for (int i = 0; i < LimitadorIntentosLogin.UMBRAL_BLOQUEO; i++) {
+            limitador.registrarFallo("u1");
+        }
+        assertTrue(limitador.bloqueada("u1"));
+
+        limitador.olvidar("u1");
+        assertNull(limitador.bloqueada("u1"));
+        assertEquals(0, limitador.intentos("u1"));
+    }
+
+    @Test
+    void sinSembrarEsUnError() {
+        assertThrows(IllegalStateException.class, () -> limitador.registrarFallo("desconocido"));
+    }
+}
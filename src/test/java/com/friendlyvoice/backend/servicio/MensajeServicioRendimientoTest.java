@@ -0,0 +1,141 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Rendimiento de obtenerResumenChat con el mismo pool fijo de hilos de petición (200, como Tomcat):
+// la variante síncrona ocupa el hilo durante todo el viaje a Firestore; la asíncrona lo libera al
+// lanzar las lecturas. Firestore simulado: cada lectura responde tras una latencia fija desde otro
+// hilo, como el transporte gRPC. Chat sin resumen: lectura de chats/{chatId} y después, a la vez,
+// el último mensaje y el count() de no leídos. Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class MensajeServicioRendimientoTest {
+
+    private static final int HILOS_PETICION = 200;
+    private static final int PETICIONES = 5_000;
+    private static final long LATENCIA_FIRESTORE_MS = 50;
+
+    private final ScheduledExecutorService transporte = Executors.newScheduledThreadPool(4);
+    private MensajeServicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        DocumentSnapshot sinResumen = mock(DocumentSnapshot.class, withSettings().stubOnly());
+        when(sinResumen.exists()).thenReturn(false);
+        QuerySnapshot sinMensajes = mock(QuerySnapshot.class, withSettings().stubOnly());
+        when(sinMensajes.isEmpty()).thenReturn(true);
+        AggregateQuerySnapshot conteo = mock(AggregateQuerySnapshot.class, withSettings().stubOnly());
+        when(conteo.getCount()).thenReturn(0L);
+
+        AggregateQuery agregacion = simulado(AggregateQuery.class, Map.of("get", conteo));
+        CollectionReference mensajes = simulado(CollectionReference.class, Map.of("get", sinMensajes, "count", agregacion));
+        DocumentReference resumen = simulado(DocumentReference.class, Map.of("get", sinResumen));
+        CollectionReference chats = simulado(CollectionReference.class, Map.of("document", resumen));
+
+        Firestore firestore = mock(Firestore.class, withSettings().stubOnly());
+        when(firestore.collection("messages")).thenReturn(mensajes);
+        when(firestore.collection("chats")).thenReturn(chats);
+
+        servicio = new MensajeServicio();
+        ReflectionTestUtils.setField(servicio, "firestore", firestore);
+        ReflectionTestUtils.setField(servicio, "planificador", new PlanificadorConsultas());
+    }
+
+    @AfterEach
+    void cerrar() {
+        transporte.shutdownNow();
+    }
+
+    @Test
+    void sincronoFrenteAAsincronoConPoolFijo() throws Exception {
+        // Calentamiento
+        medirSincrono(500);
+        medirAsincrono(500);
+
+        double sincrono = medirSincrono(PETICIONES);
+        double asincrono = medirAsincrono(PETICIONES);
+        System.out.printf("%d peticiones, %d hilos, lecturas de %d ms: síncrono %.0f peticiones/s, asíncrono %.0f peticiones/s%n",
+                PETICIONES, HILOS_PETICION, LATENCIA_FIRESTORE_MS, sincrono, asincrono);
+
+        // Síncrono: como mucho 200 / (2 x 50 ms) = 2000 peticiones/s; el asíncrono no tiene ese techo
+        assertTrue(asincrono > sincrono, "La variante asíncrona debería atender más peticiones por segundo");
+    }
+
+    // Peticiones por segundo con cada hilo del pool bloqueado hasta tener la respuesta
+    private double medirSincrono(int peticiones) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS_PETICION);
+        List<Future<Map<String, Object>>> respuestas = new ArrayList<>(peticiones);
+        long inicio = System.nanoTime();
+        try {
+            for (int i = 0; i < peticiones; i++) {
+                String otro = "u" + i;
+                respuestas.add(pool.submit(() -> servicio.obtenerResumenChat("yo", otro)));
+            }
+            for (Future<Map<String, Object>> respuesta : respuestas) {
+                assertEquals(0, respuesta.get(2, TimeUnit.MINUTES).get("unreadCount"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return peticiones / ((System.nanoTime() - inicio) / 1e9);
+    }
+
+    // Mismo pool, pero el hilo solo lanza la petición: la respuesta llega por el CompletableFuture
+    private double medirAsincrono(int peticiones) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS_PETICION);
+        List<CompletableFuture<Map<String, Object>>> respuestas = Collections.synchronizedList(new ArrayList<>(peticiones));
+        CountDownLatch lanzadas = new CountDownLatch(peticiones);
+        long inicio = System.nanoTime();
+        try {
+            for (int i = 0; i < peticiones; i++) {
+                String otro = "u" + i;
+                pool.execute(() -> {
+                    respuestas.add(servicio.obtenerResumenChatAsync("yo", otro));
+                    lanzadas.countDown();
+                });
+            }
+            assertTrue(lanzadas.await(2, TimeUnit.MINUTES));
+            for (CompletableFuture<Map<String, Object>> respuesta : respuestas) {
+                assertEquals(0, respuesta.get(2, TimeUnit.MINUTES).get("unreadCount"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return peticiones / ((System.nanoTime() - inicio) / 1e9);
+    }
+
+    // Mock de consulta/referencia: get() responde tras la latencia, los métodos de respuestas
+    // devuelven lo indicado y el resto de encadenados (where, orderBy, limit...) la propia consulta
+    private <T> T simulado(Class<T> tipo, Map<String, Object> respuestas) {
+        return mock(tipo, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("get".equals(metodo)) {
+                return lectura(respuestas.get("get"));
+            }
+            if (respuestas.containsKey(metodo)) {
+                return respuestas.get(metodo);
+            }
+            return invocacion.getMethod().getReturnType().isInstance(invocacion.getMock()) ? invocacion.getMock() : null;
+        }));
+    }
+
+    private ApiFuture<Object> lectura(Object resultado) {
+        SettableApiFuture<Object> futuro = SettableApiFuture.create();
+        transporte.schedule(() -> futuro.set(resultado), LATENCIA_FIRESTORE_MS, TimeUnit.MILLISECONDS);
+        return futuro;
+    }
+}
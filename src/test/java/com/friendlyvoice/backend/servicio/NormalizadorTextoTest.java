@@ -0,0 +1,26 @@
+package com.friendlyvoice.backend.servicio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NormalizadorTextoTest {
+
+    @Test
+    void quitaTildesYMayusculas() {
+        assertEquals("jose", NormalizadorTexto.normalizar("José"));
+        assertEquals("nunez", NormalizadorTexto.normalizar("  NÚÑEZ "));
+        assertEquals("muller", NormalizadorTexto.normalizar("Müller"));
+        assertEquals("", NormalizadorTexto.normalizar(null));
+    }
+
+    @Test
+    void tokenizaPorCualquierSeparadorSinRepetir() {
+        assertEquals(List.of("maria", "jose", "perez"), NormalizadorTexto.tokenizar("María-José  Pérez"));
+        assertEquals(List.of("ana", "ana2"), NormalizadorTexto.tokenizar("Ana, ana ANA2!"));
+        assertTrue(NormalizadorTexto.tokenizar("  --  ").isEmpty());
+        assertTrue(NormalizadorTexto.tokenizar(null).isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.modelo.Mensaje;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumenesChatTest {
+
+    @Test
+    void comparaCreatedAtComoInstantes() {
+        // Como texto "05Z" > "05.120Z"; como instantes es al revés
+        assertTrue(ResumenesChat.comparar("2024-05-01T10:00:05Z", "m1", "2024-05-01T10:00:05.120Z", "m0") < 0);
+        assertTrue(ResumenesChat.comparar("2024-05-01T10:00:05.120Z", "m0", "2024-05-01T10:00:05Z", "m1") > 0);
+        // Mismo instante con distinta precisión: decide el ID
+        assertTrue(ResumenesChat.comparar("2024-05-01T10:00:05.100Z", "a", "2024-05-01T10:00:05.100000Z", "b") < 0);
+        assertEquals(0, ResumenesChat.comparar("2024-05-01T10:00:05.1Z", "a", "2024-05-01T10:00:05.100Z", "a"));
+    }
+
+    @Test
+    void sinInstanteValidoComparaTextos() {
+        assertTrue(ResumenesChat.comparar("ayer", "a", "hoy", "a") < 0);
+        assertTrue(ResumenesChat.comparar(null, "a", "2024-05-01T10:00:05Z", "a") < 0);
+        assertNull(ResumenesChat.instante("ayer"));
+        assertNull(ResumenesChat.instante(null));
+    }
+
+    @Test
+    void cubiertoPorCursorConPrecisionDistinta() {
+        String[] cursor = {"2024-05-01T10:00:05.120Z", "m5"};
+
+        assertTrue(ResumenesChat.cubiertoPorCursor(mensaje("m4", "2024-05-01T10:00:05Z"), cursor));
+        assertTrue(ResumenesChat.cubiertoPorCursor(mensaje("m5", "2024-05-01T10:00:05.120Z"), cursor));
+        assertFalse(ResumenesChat.cubiertoPorCursor(mensaje("m6", "2024-05-01T10:00:05.120001Z"), cursor));
+        assertFalse(ResumenesChat.cubiertoPorCursor(mensaje("m7", "2024-05-01T10:00:06Z"), cursor));
+        assertFalse(ResumenesChat.cubiertoPorCursor(mensaje("m1", "2024-05-01T10:00:00Z"), null));
+    }
+
+    @Test
+    void prefijoSegundoAcotaComoTexto() {
+        String prefijo = ResumenesChat.prefijoSegundo(Instant.parse("2024-05-01T10:00:05.120Z"));
+        assertEquals("2024-05-01T10:00:05", prefijo);
+
+        assertTrue("2024-05-01T10:00:04.999Z".compareTo(prefijo) < 0);
+        assertTrue("2024-05-01T10:00:05Z".compareTo(prefijo) > 0);
+        assertTrue("2024-05-01T10:00:05.5Z".compareTo(prefijo) > 0);
+        assertTrue("2024-05-01T10:00:05.999Z".compareTo(ResumenesChat.prefijoSegundo(Instant.parse("2024-05-01T10:00:06Z"))) < 0);
+    }
+
+    @Test
+    void marcaDeTiempoDeAnchoFijoOrdenaComoTexto() {
+        String segundoExacto = ResumenesChat.marcaDeTiempo(Instant.parse("2024-05-01T10:00:05Z"));
+        String medio = ResumenesChat.marcaDeTiempo(Instant.parse("2024-05-01T10:00:05.5Z"));
+        String despues = ResumenesChat.marcaDeTiempo(Instant.parse("2024-05-01T10:00:05.500001Z"));
+
+        assertEquals("2024-05-01T10:00:05.000000000Z", segundoExacto);
+        assertEquals("2024-05-01T10:00:05.500000000Z", medio);
+        // El orden de texto (el de Firestore) es el cronológico, a diferencia de Instant.toString()
+        assertTrue(segundoExacto.compareTo(medio) < 0);
+        assertTrue(medio.compareTo(despues) < 0);
+        assertTrue("2024-05-01T10:00:05Z".compareTo("2024-05-01T10:00:05.5Z") > 0);
+        // Sigue siendo un instante válido y dentro de su prefijo de segundo
+        assertEquals(Instant.parse("2024-05-01T10:00:05.5Z"), ResumenesChat.instante(medio));
+        assertTrue(medio.startsWith(ResumenesChat.prefijoSegundo(Instant.parse("2024-05-01T10:00:05.5Z"))));
+    }
+
+    private static Mensaje mensaje(String id, String createdAt) {
+        Mensaje mensaje = new Mensaje();
+        mensaje.setId(id);
+        mensaje.setCreatedAt(createdAt);
+        return mensaje;
+    }
+}
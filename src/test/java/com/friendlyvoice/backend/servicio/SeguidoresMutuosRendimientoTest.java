@@ -0,0 +1,229 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.PaginaDTO;
+import com.friendlyvoice.backend.dto.UsuarioDTO;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Latencia de obtenerSeguidoresMutuosPaginados sin el grafo en memoria (following por lotes de 100
+// y un getAll sobre followers por lote) según cuántos de los seguidos son mutuos. Cada llamada a
+// Firestore responde tras LATENCIA_MS desde otro hilo. Cuantos menos mutuos, más lotes hay que
+// recorrer para llenar una página. Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class SeguidoresMutuosRendimientoTest {
+
+    private static final long LATENCIA_MS = 10;
+    private static final int SIGUIENDO = 2_000;
+    private static final int LOTE = 100;
+    private static final int LIMITE = 20;
+    private static final int[] MUTUOS = {0, 20, 200, 2_000};
+    private static final int REPETICIONES = 5;
+    private static final String USUARIO = "yo";
+
+    private final ScheduledExecutorService transporte = Executors.newScheduledThreadPool(4);
+    // Ruta de la subcolección -> IDs de sus aristas
+    private final Map<String, TreeSet<String>> aristas = new HashMap<>();
+    private final AtomicInteger llamadas = new AtomicInteger();
+    private UsuarioServicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("collection".equals(metodo)) {
+                return coleccion(invocacion.getArgument(0));
+            }
+            if ("getAll".equals(metodo)) {
+                DocumentReference[] refs = invocacion.getArgument(0);
+                List<DocumentSnapshot> documentos = new ArrayList<>(refs.length);
+                for (DocumentReference ref : refs) {
+                    documentos.add(instantanea(ref.getPath()));
+                }
+                return lectura(documentos);
+            }
+            return null;
+        }));
+
+        UsuarioDTO propio = new UsuarioDTO();
+        propio.setId(USUARIO);
+        CacheUsuarios cacheUsuarios = mock(CacheUsuarios.class, withSettings().stubOnly());
+        when(cacheUsuarios.obtenerVersionado(USUARIO)).thenReturn(new Versionado<>(propio, "v1"));
+
+        servicio = new UsuarioServicio();
+        ReflectionTestUtils.setField(servicio, "firestore", firestore);
+        ReflectionTestUtils.setField(servicio, "cacheUsuarios", cacheUsuarios);
+        ReflectionTestUtils.setField(servicio, "grafoSocial", mock(GrafoSocial.class, withSettings().stubOnly()));
+        ReflectionTestUtils.setField(servicio, "limitadorIntentos", mock(LimitadorIntentosLogin.class, withSettings().stubOnly()));
+        ReflectionTestUtils.setField(servicio, "tamanoPaginaDefecto", LIMITE);
+        ReflectionTestUtils.setField(servicio, "maxTamanoPagina", 100);
+    }
+
+    @AfterEach
+    void cerrar() {
+        transporte.shutdownNow();
+    }
+
+    @Test
+    void latenciaSegunMutuos() throws Exception {
+        System.out.printf("%d seguidos, página de %d, llamadas de %d ms%n", SIGUIENDO, LIMITE, LATENCIA_MS);
+        System.out.printf("%8s %14s %14s %16s %16s%n", "mutuos", "1ª página ms", "llamadas", "todos ms", "llamadas");
+        Map<Integer, Integer> llamadasPrimeraPagina = new HashMap<>();
+        for (int mutuos : MUTUOS) {
+            preparar(mutuos);
+
+            int[] primera = new int[1];
+            double primeraMs = medir(() -> {
+                PaginaDTO<?> pagina = servicio.obtenerSeguidoresMutuosPaginados(USUARIO, LIMITE, null, VistaUsuario.SUMMARY);
+                assertEquals(Math.min(mutuos, LIMITE), pagina.getItems().size());
+                assertEquals(mutuos > LIMITE, pagina.getNextCursor() != null);
+            }, primera);
+            int[] todas = new int[1];
+            double todosMs = medir(() -> assertEquals(mutuos, servicio.obtenerSeguidoresMutuos(USUARIO, VistaUsuario.SUMMARY).size()), todas);
+            System.out.printf("%8d %14.0f %14d %16.0f %16d%n", mutuos, primeraMs, primera[0], todosMs, todas[0]);
+            llamadasPrimeraPagina.put(mutuos, primera[0]);
+        }
+
+        // Con todos mutuos basta un lote: following + getAll de followers + getAll de perfiles
+        assertEquals(3, llamadasPrimeraPagina.get(SIGUIENDO));
+        // Sin mutuos se recorre todo following: dos llamadas por lote más la lectura vacía que cierra
+        // el recorrido (el último lote venía lleno), ninguna de perfiles
+        assertEquals(2 * SIGUIENDO / LOTE + 1, llamadasPrimeraPagina.get(0));
+    }
+
+    // "yo" sigue a SIGUIENDO usuarios; de ellos, los mutuos (repartidos a lo largo de la lista) le siguen
+    private void preparar(int mutuos) {
+        TreeSet<String> siguiendo = new TreeSet<>();
+        TreeSet<String> seguidores = new TreeSet<>();
+        for (int i = 0; i < SIGUIENDO; i++) {
+            String id = String.format("u%05d", i);
+            siguiendo.add(id);
+            if (mutuos > 0 && i % (SIGUIENDO / mutuos) == 0) {
+                seguidores.add(id);
+            }
+        }
+        // Seguidores que no son seguidos: no deben aparecer
+        for (int i = 0; i < 500; i++) {
+            seguidores.add(String.format("z%05d", i));
+        }
+        aristas.put("users/" + USUARIO + "/following", siguiendo);
+        aristas.put("users/" + USUARIO + "/followers", seguidores);
+    }
+
+    // Mediana de REPETICIONES en ms; llamadas a Firestore por ejecución en llamadasPorEjecucion[0]
+    private double medir(Operacion operacion, int[] llamadasPorEjecucion) throws Exception {
+        operacion.ejecutar();
+        long[] tiempos = new long[REPETICIONES];
+        llamadas.set(0);
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            operacion.ejecutar();
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        llamadasPorEjecucion[0] = llamadas.get() / REPETICIONES;
+        Arrays.sort(tiempos);
+        return tiempos[REPETICIONES / 2] / 1e6;
+    }
+
+    private CollectionReference coleccion(String ruta) {
+        return mock(CollectionReference.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("document".equals(metodo)) {
+                return referencia(ruta + "/" + invocacion.getArgument(0));
+            }
+            if ("select".equals(metodo)) {
+                return consulta(ruta);
+            }
+            return null;
+        }));
+    }
+
+    private DocumentReference referencia(String ruta) {
+        return mock(DocumentReference.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("getPath".equals(metodo)) {
+                return ruta;
+            }
+            if ("getId".equals(metodo)) {
+                return ruta.substring(ruta.lastIndexOf('/') + 1);
+            }
+            if ("collection".equals(metodo)) {
+                return coleccion(ruta + "/" + invocacion.getArgument(0));
+            }
+            return null;
+        }));
+    }
+
+    // select(...).orderBy(documentId).limit(n)[.startAfter(id)].get() sobre las aristas de la ruta
+    private Query consulta(String ruta) {
+        int[] limite = {Integer.MAX_VALUE};
+        String[] desde = {null};
+        return mock(Query.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            String metodo = invocacion.getMethod().getName();
+            if ("limit".equals(metodo)) {
+                limite[0] = invocacion.getArgument(0);
+            } else if ("startAfter".equals(metodo)) {
+                desde[0] = invocacion.getArgument(0);
+            } else if ("get".equals(metodo)) {
+                TreeSet<String> ids = aristas.getOrDefault(ruta, new TreeSet<>());
+                List<QueryDocumentSnapshot> documentos = new ArrayList<>();
+                for (String id : desde[0] == null ? ids : ids.tailSet(desde[0], false)) {
+                    if (documentos.size() == limite[0]) {
+                        break;
+                    }
+                    documentos.add(instantanea(ruta + "/" + id));
+                }
+                QuerySnapshot resultado = mock(QuerySnapshot.class, withSettings().stubOnly());
+                when(resultado.getDocuments()).thenReturn(documentos);
+                return lectura(resultado);
+            }
+            return invocacion.getMock();
+        }));
+    }
+
+    // Una arista existe si está en su subcolección; cualquier perfil users/{id} existe
+    private QueryDocumentSnapshot instantanea(String ruta) {
+        int corte = ruta.lastIndexOf('/');
+        String id = ruta.substring(corte + 1);
+        String padre = ruta.substring(0, corte);
+        boolean existe = "users".equals(padre) || aristas.getOrDefault(padre, new TreeSet<>()).contains(id);
+        return mock(QueryDocumentSnapshot.class, withSettings().stubOnly().defaultAnswer(invocacion -> {
+            switch (invocacion.getMethod().getName()) {
+                case "getId":
+                    return id;
+                case "exists":
+                    return existe;
+                case "getString":
+                    return "name".equals(invocacion.getArgument(0)) ? "Usuario " + id : null;
+                default:
+                    return null;
+            }
+        }));
+    }
+
+    private <T> ApiFuture<T> lectura(T resultado) {
+        llamadas.incrementAndGet();
+        SettableApiFuture<T> futuro = SettableApiFuture.create();
+        transporte.schedule(() -> futuro.set(resultado), LATENCIA_MS, TimeUnit.MILLISECONDS);
+        return futuro;
+    }
+
+    @FunctionalInterface
+    private interface Operacion {
+        void ejecutar() throws Exception;
+    }
+}
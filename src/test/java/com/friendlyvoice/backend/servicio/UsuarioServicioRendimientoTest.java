@@ -0,0 +1,157 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.friendlyvoice.backend.dto.ActualizarPerfilDTO;
+import com.friendlyvoice.backend.dto.UsuarioDTO;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Latencia de actualizarPerfil: escribirEnTransaccion (BeginTransaction + lectura + commit, sin releer
+// para responder) frente al camino anterior (update y después obtenerUsuarioPorId, con una lectura
+// previa si venía loginAttempts). Cada llamada a Firestore cuesta un viaje de LATENCIA_MS en el hilo
+// de la petición; el camino anterior ya no existe y se reproduce con su secuencia de llamadas.
+// La relectura en segundo plano de cachearTrasEscritura no bloquea la respuesta y no se cuenta.
+// Se ejecuta con mvn test -Prendimiento
+@Tag("rendimiento")
+class UsuarioServicioRendimientoTest {
+
+    private static final long LATENCIA_MS = 20;
+    private static final int REPETICIONES = 100;
+    private static final String USUARIO = "u1";
+
+    private final AtomicInteger viajes = new AtomicInteger();
+    private UsuarioServicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("name", "Ana");
+        datos.put("email", "ana@example.com");
+        datos.put("isBlocked", false);
+        datos.put("loginAttempts", 0L);
+        datos.put("onboardingComplete", true);
+
+        DocumentReference docRef = mock(DocumentReference.class, withSettings().stubOnly());
+        // Relectura en segundo plano: no llega a completarse, queda fuera de la respuesta
+        when(docRef.get()).thenReturn(SettableApiFuture.create());
+        DocumentSnapshot actual = mock(DocumentSnapshot.class, withSettings().stubOnly());
+        when(actual.exists()).thenReturn(true);
+        when(actual.getData()).thenReturn(datos);
+        when(actual.getReference()).thenReturn(docRef);
+        when(actual.getBoolean("isBlocked")).thenReturn(false);
+        when(actual.getString("email")).thenReturn("ana@example.com");
+
+        CollectionReference usuarios = mock(CollectionReference.class, withSettings().stubOnly());
+        when(usuarios.document(USUARIO)).thenReturn(docRef);
+        Firestore firestore = mock(Firestore.class, withSettings().stubOnly());
+        when(firestore.collection("users")).thenReturn(usuarios);
+        when(firestore.runTransaction(ArgumentMatchers.<Transaction.Function<Object>>any())).thenAnswer(invocacion -> {
+            Transaction.Function<Object> funcion = invocacion.getArgument(0);
+            Transaction transaction = mock(Transaction.class, withSettings().stubOnly());
+            when(transaction.get(docRef)).thenAnswer(lectura -> {
+                viaje();
+                return ApiFutures.immediateFuture(actual);
+            });
+            // El SDK de Java abre la transacción con su propia llamada antes de la primera lectura
+            viaje();
+            Object resultado = funcion.updateCallback(transaction);
+            viaje();
+            return ApiFutures.immediateFuture(resultado);
+        });
+
+        servicio = new UsuarioServicio();
+        ReflectionTestUtils.setField(servicio, "firestore", firestore);
+        ReflectionTestUtils.setField(servicio, "cacheUsuarios", mock(CacheUsuarios.class));
+        ReflectionTestUtils.setField(servicio, "indiceEmails", mock(IndiceEmails.class));
+        ReflectionTestUtils.setField(servicio, "limitadorIntentos", mock(LimitadorIntentosLogin.class));
+        ReflectionTestUtils.setField(servicio, "filtroEmails", mock(FiltroEmails.class));
+        ReflectionTestUtils.setField(servicio, "indiceIntereses", mock(IndiceIntereses.class));
+    }
+
+    @Test
+    void transaccionFrenteAEscribirYReleer() throws Exception {
+        System.out.printf("%-22s %8s %10s %10s%n", "actualizarPerfil", "viajes", "p50 ms", "p99 ms");
+        for (boolean conIntentos : new boolean[]{false, true}) {
+            ActualizarPerfilDTO dto = new ActualizarPerfilDTO();
+            dto.setName("Ana María");
+            if (conIntentos) {
+                dto.setLoginAttempts(0);
+            }
+
+            UsuarioDTO respuesta = servicio.actualizarPerfil(USUARIO, dto);
+            // La respuesta refleja lo escrito sin volver a leer
+            assertEquals("Ana María", respuesta.getName());
+
+            Medicion transaccion = medir(() -> servicio.actualizarPerfil(USUARIO, dto));
+            // Camino anterior: [get si venía loginAttempts] + update(...).get() + obtenerUsuarioPorId
+            Medicion anterior = medir(() -> {
+                if (conIntentos) {
+                    viaje();
+                }
+                viaje();
+                viaje();
+            });
+            String caso = conIntentos ? "con loginAttempts" : "solo perfil";
+            informar("transacción, " + caso, transaccion);
+            informar("update+releer, " + caso, anterior);
+
+            assertEquals(3, transaccion.viajes);
+            assertEquals(conIntentos ? 3 : 2, anterior.viajes);
+        }
+    }
+
+    private Medicion medir(Operacion operacion) throws Exception {
+        for (int i = 0; i < REPETICIONES / 10; i++) {
+            operacion.ejecutar();
+        }
+        long[] tiempos = new long[REPETICIONES];
+        viajes.set(0);
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            operacion.ejecutar();
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(tiempos);
+        return new Medicion(tiempos, viajes.get() / REPETICIONES);
+    }
+
+    private static void informar(String caso, Medicion medicion) {
+        System.out.printf("%-22s %8d %10.1f %10.1f%n", caso, medicion.viajes,
+                medicion.tiempos[REPETICIONES / 2] / 1e6, medicion.tiempos[(int) (REPETICIONES * 0.99)] / 1e6);
+    }
+
+    // Un viaje de ida y vuelta a Firestore en el hilo que llama
+    private void viaje() throws InterruptedException {
+        viajes.incrementAndGet();
+        TimeUnit.MILLISECONDS.sleep(LATENCIA_MS);
+    }
+
+    @FunctionalInterface
+    private interface Operacion {
+        void ejecutar() throws Exception;
+    }
+
+    private static final class Medicion {
+        final long[] tiempos;
+        final int viajes;
+
+        Medicion(long[] tiempos, int viajes) {
+            this.tiempos = tiempos;
+            this.viajes = viajes;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.friendlyvoice.backend.servicio;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Seguir/dejar de seguir contra un Firestore en memoria con transacciones optimistas:
+// cada transacción recuerda la versión de lo que lee y al confirmar se reintenta si algo cambió,
+// como hace el SDK. Muchos seguidores a la vez sobre un mismo usuario no deben perder ningún incremento
+class UsuarioServicioTest {
+
+    private static final int SEGUIDORES = 64;
+    private static final String POPULAR = "popular";
+
+    private final Map<String, Map<String, Object>> documentos = new HashMap<>();
+    private final Map<String, Long> versiones = new HashMap<>();
+    private final Map<String, DocumentReference> referencias = new ConcurrentHashMap<>();
+    private final AtomicInteger reintentos = new AtomicInteger();
+
+    private UsuarioServicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        when(firestore.collection(anyString())).thenAnswer(invocacion -> coleccion(invocacion.getArgument(0)));
+        when(firestore.runTransaction(ArgumentMatchers.<Transaction.Function<Object>>any()))
+                .thenAnswer(invocacion -> ejecutarTransaccion(invocacion.getArgument(0)));
+
+        servicio = new UsuarioServicio();
+        ReflectionTestUtils.setField(servicio, "firestore", firestore);
+        ReflectionTestUtils.setField(servicio, "cacheUsuarios", mock(CacheUsuarios.class));
+        ReflectionTestUtils.setField(servicio, "grafoSocial", mock(GrafoSocial.class));
+
+        // Usuarios ya migrados: contadores y sin arrays heredados
+        crearUsuario(POPULAR);
+        for (int i = 0; i < SEGUIDORES; i++) {
+            crearUsuario(seguidor(i));
+        }
+    }
+
+    @Test
+    void muchosSiguenAlMismoUsuarioALaVez() throws Exception {
+        long[] latencias = enParalelo(i -> servicio.seguirUsuario(seguidor(i), POPULAR));
+
+        assertEquals(SEGUIDORES, contador(POPULAR, "followerCount"));
+        assertEquals(SEGUIDORES, relaciones(POPULAR, "followers").size());
+        for (int i = 0; i < SEGUIDORES; i++) {
+            assertEquals(1, contador(seguidor(i), "followingCount"), "followingCount de " + seguidor(i));
+            assertEquals(Set.of(POPULAR), relaciones(seguidor(i), "following"));
+        }
+        // Cada transacción solo lee la arista de su seguidor: el documento del usuario popular
+        // se escribe con increment y no provoca conflictos entre ellas
+        assertEquals(0, reintentos.get(), "Reintentos por contención");
+        informar("seguir", latencias);
+    }
+
+    @Test
+    void seguirYDejarDeSeguirAlMismoUsuarioALaVez() throws Exception {
+        enParalelo(i -> servicio.seguirUsuario(seguidor(i), POPULAR));
+
+        // La mitad deja de seguir mientras la otra mitad repite el seguimiento (idempotente)
+        long[] latencias = enParalelo(i -> {
+            if (i % 2 == 0) {
+                servicio.dejarDeSeguir(seguidor(i), POPULAR);
+            } else {
+                servicio.seguirUsuario(seguidor(i), POPULAR);
+            }
+        });
+
+        assertEquals(SEGUIDORES / 2, contador(POPULAR, "followerCount"));
+        assertEquals(SEGUIDORES / 2, relaciones(POPULAR, "followers").size());
+        for (int i = 0; i < SEGUIDORES; i++) {
+            assertEquals(i % 2, contador(seguidor(i), "followingCount"), "followingCount de " + seguidor(i));
+        }
+        assertEquals(0, reintentos.get(), "Reintentos por contención");
+        informar("seguir/dejar de seguir", latencias);
+    }
+
+    private interface Operacion {
+        void ejecutar(int i) throws Exception;
+    }
+
+    // Lanza una operación por seguidor, todas liberadas a la vez; devuelve la latencia de cada una (ns)
+    private long[] enParalelo(Operacion operacion) throws Exception {
+        ExecutorService hilos = Executors.newFixedThreadPool(SEGUIDORES);
+        CountDownLatch salida = new CountDownLatch(1);
+        long[] latencias = new long[SEGUIDORES];
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int h = 0; h < SEGUIDORES; h++) {
+            int i = h;
+            tareas.add(hilos.submit(() -> {
+                salida.await();
+                long inicio = System.nanoTime();
+                operacion.ejecutar(i);
+                latencias[i] = System.nanoTime() - inicio;
+                return null;
+            }));
+        }
+        salida.countDown();
+        try {
+            for (Future<?> tarea : tareas) {
+                tarea.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        return latencias;
+    }
+
+    private void informar(String operacion, long[] latencias) {
+        long[] ordenadas = latencias.clone();
+        Arrays.sort(ordenadas);
+        System.out.printf("%s: %d hilos sobre un mismo usuario, %d reintentos, p50 %.2f ms, p99 %.2f ms%n",
+                operacion, SEGUIDORES, reintentos.get(),
+                ordenadas[ordenadas.length / 2] / 1e6, ordenadas[(int) (ordenadas.length * 0.99)] / 1e6);
+    }
+
+    private static String seguidor(int i) {
+        return "f" + i;
+    }
+
+    private void crearUsuario(String id) {
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("followerCount", 0L);
+        datos.put("followingCount", 0L);
+        documentos.put("users/" + id, datos);
+    }
+
+    // --- Firestore en memoria ---
+
+    // Aristas de un lado: users/{id}/{lado}/{otro}
+    private Set<String> relaciones(String userId, String lado) {
+        Set<String> ids = new HashSet<>();
+        String prefijo = "users/" + userId + "/" + lado + "/";
+        synchronized (documentos) {
+            for (String ruta : documentos.keySet()) {
+                if (ruta.startsWith(prefijo)) {
+                    ids.add(ruta.substring(prefijo.length()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private int contador(String userId, String campo) {
+        synchronized (documentos) {
+            return ((Number) documentos.get("users/" + userId).get(campo)).intValue();
+        }
+    }
+
+    private CollectionReference coleccion(String ruta) {
+        return mock(CollectionReference.class, invocacion -> {
+            if ("document".equals(invocacion.getMethod().getName())) {
+                return referencia(ruta + "/" + invocacion.getArgument(0));
+            }
+            return null;
+        });
+    }
+
+    private DocumentReference referencia(String ruta) {
+        return referencias.computeIfAbsent(ruta, r -> mock(DocumentReference.class, invocacion -> {
+            switch (invocacion.getMethod().getName()) {
+                case "getPath":
+                case "toString":
+                    return r;
+                case "collection":
+                    return coleccion(r + "/" + invocacion.getArgument(0));
+                default:
+                    return null;
+            }
+        }));
+    }
+
+    private ApiFuture<Object> ejecutarTransaccion(Transaction.Function<Object> funcion) {
+        while (true) {
+            Map<String, Long> leidas = new HashMap<>();
+            List<Runnable> escrituras = new ArrayList<>();
+            Transaction transaccion = mock(Transaction.class, invocacion -> {
+                switch (invocacion.getMethod().getName()) {
+                    case "get":
+                        return ApiFutures.immediateFuture(
+                                leer(new DocumentReference[]{invocacion.getArgument(0)}, leidas).get(0));
+                    case "set": {
+                        String ruta = ((DocumentReference) invocacion.getArgument(0)).getPath();
+                        Map<String, Object> datos = new HashMap<>(invocacion.<Map<String, Object>>getArgument(1));
+                        escrituras.add(() -> escribir(ruta, datos));
+                        return invocacion.getMock();
+                    }
+                    case "update": {
+                        String ruta = ((DocumentReference) invocacion.getArgument(0)).getPath();
+                        // update(ref, campo, valor): el único que usan seguir/dejar de seguir
+                        Map<String, Object> cambios = Map.of(invocacion.getArgument(1), invocacion.getArgument(2));
+                        escrituras.add(() -> actualizar(ruta, cambios));
+                        return invocacion.getMock();
+                    }
+                    case "delete": {
+                        String ruta = ((DocumentReference) invocacion.getArgument(0)).getPath();
+                        escrituras.add(() -> escribir(ruta, null));
+                        return invocacion.getMock();
+                    }
+                    default:
+                        return null;
+                }
+            });
+            Object resultado;
+            try {
+                resultado = funcion.updateCallback(transaccion);
+            } catch (Exception e) {
+                return ApiFutures.immediateFailedFuture(e);
+            }
+            synchronized (documentos) {
+                boolean vigente = leidas.entrySet().stream()
+                        .allMatch(leida -> versiones.getOrDefault(leida.getKey(), 0L).equals(leida.getValue()));
+                if (vigente) {
+                    escrituras.forEach(Runnable::run);
+                    return ApiFutures.immediateFuture(resultado);
+                }
+            }
+            reintentos.incrementAndGet();
+        }
+    }
+
+    private List<DocumentSnapshot> leer(DocumentReference[] refs, Map<String, Long> leidas) throws InterruptedException {
+        List<DocumentSnapshot> snapshots = new ArrayList<>();
+        synchronized (documentos) {
+            for (DocumentReference ref : refs) {
+                String ruta = ref.getPath();
+                leidas.put(ruta, versiones.getOrDefault(ruta, 0L));
+                Map<String, Object> datos = documentos.get(ruta);
+                Map<String, Object> copia = datos == null ? null : copiar(datos);
+                DocumentSnapshot snapshot = mock(DocumentSnapshot.class, invocacion -> {
+                    switch (invocacion.getMethod().getName()) {
+                        case "exists":
+                            return copia != null;
+                        case "getData":
+                            return copia;
+                        default:
+                            return null;
+                    }
+                });
+                snapshots.add(snapshot);
+            }
+        }
+        // Entre la lectura y la confirmación otra transacción puede colarse
+        Thread.sleep(1);
+        return snapshots;
+    }
+
+    private void escribir(String ruta, Map<String, Object> datos) {
+        if (datos == null) {
+            documentos.remove(ruta);
+        } else {
+            documentos.put(ruta, datos);
+        }
+        versiones.merge(ruta, 1L, Long::sum);
+    }
+
+    private void actualizar(String ruta, Map<String, Object> cambios) {
+        Map<String, Object> datos = documentos.get(ruta);
+        assertNotNull(datos, "update sobre un documento inexistente: " + ruta);
+        for (Map.Entry<String, Object> cambio : cambios.entrySet()) {
+            String campo = cambio.getKey();
+            Object valor = cambio.getValue();
+            if (FieldValue.increment(1).equals(valor) || FieldValue.increment(-1).equals(valor)) {
+                long delta = FieldValue.increment(1).equals(valor) ? 1 : -1;
+                datos.merge(campo, delta, (actual, d) -> ((Number) actual).longValue() + (Long) d);
+            } else if (valor instanceof FieldValue) {
+                // arrayRemove: sin el campo no hace nada, como en Firestore
+                List<?> array = (List<?>) datos.get(campo);
+                if (array == null) {
+                    continue;
+                }
+                List<Object> restantes = new ArrayList<>();
+                for (Object id : array) {
+                    if (!FieldValue.arrayRemove(id).equals(valor)) {
+                        restantes.add(id);
+                    }
+                }
+                datos.put(campo, restantes);
+            } else {
+                datos.put(campo, valor);
+            }
+        }
+        versiones.merge(ruta, 1L, Long::sum);
+    }
+
+    private static Map<String, Object> copiar(Map<String, Object> datos) {
+        Map<String, Object> copia = new HashMap<>();
+        for (Map.Entry<String, Object> entrada : datos.entrySet()) {
+            Object valor = entrada.getValue();
+            copia.put(entrada.getKey(), valor instanceof List ? new ArrayList<>((List<?>) valor) : valor);
+        }
+        return copia;
+    }
+}